@@ -10,11 +10,31 @@ public class DefaultConfiguration implements KadConfiguration {
 
     private final static long RESTORE_INTERVAL = 60 * 1000; // in milliseconds
     private final static long RESPONSE_TIMEOUT = 2000;
+    private final static long MIN_RESPONSE_TIMEOUT = 250;
+    private final static long MAX_RESPONSE_TIMEOUT = 10000;
     private final static long OPERATION_TIMEOUT = 2000;
     private final static int CONCURRENCY = 10;
     private final static int K = 5;
     private final static int RCSIZE = 3;
     private final static int STALE = 1;
+    private final static int ASYNC_STORE_THREADS = 4;
+    private final static int BACKGROUND_LOOKUPS = 8;
+    private final static int LOOKUP_CACHE_SIZE = 64;
+    private final static long LOOKUP_CACHE_TIMEOUT = 5000;  // in milliseconds
+    private final static boolean PATH_CACHING = true;
+    private final static long PATH_CACHE_TIMEOUT = 60 * 1000;   // in milliseconds
+    private final static boolean REPLICA_READS = true;
+    private final static int REPLICA_READ_PARALLELISM = 2;
+    private final static double REPLICA_READ_HEDGE_PERCENTILE = 95;
+    private final static boolean KEY_HANDOFF = true;
+    private final static long HANDOFF_DELAY = 100;  // in milliseconds
+    private final static int HANDOFF_BATCH_SIZE = 16;
+    private final static long STORAGE_QUOTA = 1024L * 1024 * 1024;  // in bytes
+    private final static boolean PROXIMITY_NEIGHBOR_SELECTION = true;
+    private final static long COALESCING_WINDOW = 0;       // in microseconds; off, as not all nodes can read coalesced datagrams
+    private final static int MAX_DATAGRAM_SIZE = 1400;     // in bytes
+    private final static int RECEIVE_SOCKETS = 1;
+    private final static int RECEIVE_BUFFER_SIZE = 1024 * 1024;  // in bytes
     private final static String LOCAL_FOLDER = "kademlia";
 
     private final static boolean IS_TESTING = true;
@@ -36,6 +56,16 @@ public class DefaultConfiguration implements KadConfiguration {
         return RESPONSE_TIMEOUT;
     }
 
+    @Override
+    public long minResponseTimeout() {
+        return MIN_RESPONSE_TIMEOUT;
+    }
+
+    @Override
+    public long maxResponseTimeout() {
+        return MAX_RESPONSE_TIMEOUT;
+    }
+
     @Override
     public long operationTimeout() {
         return OPERATION_TIMEOUT;
@@ -61,6 +91,96 @@ public class DefaultConfiguration implements KadConfiguration {
         return STALE;
     }
 
+    @Override
+    public int asyncStoreThreads() {
+        return ASYNC_STORE_THREADS;
+    }
+
+    @Override
+    public int backgroundLookups() {
+        return BACKGROUND_LOOKUPS;
+    }
+
+    @Override
+    public int lookupCacheSize() {
+        return LOOKUP_CACHE_SIZE;
+    }
+
+    @Override
+    public long lookupCacheTimeout() {
+        return LOOKUP_CACHE_TIMEOUT;
+    }
+
+    @Override
+    public boolean isPathCaching() {
+        return PATH_CACHING;
+    }
+
+    @Override
+    public long pathCacheTimeout() {
+        return PATH_CACHE_TIMEOUT;
+    }
+
+    @Override
+    public boolean isReplicaReads() {
+        return REPLICA_READS;
+    }
+
+    @Override
+    public int replicaReadParallelism() {
+        return REPLICA_READ_PARALLELISM;
+    }
+
+    @Override
+    public double replicaReadHedgePercentile() {
+        return REPLICA_READ_HEDGE_PERCENTILE;
+    }
+
+    @Override
+    public boolean isKeyHandoff() {
+        return KEY_HANDOFF;
+    }
+
+    @Override
+    public long handoffDelay() {
+        return HANDOFF_DELAY;
+    }
+
+    @Override
+    public int handoffBatchSize() {
+        return HANDOFF_BATCH_SIZE;
+    }
+
+    @Override
+    public long storageQuota() {
+        return STORAGE_QUOTA;
+    }
+
+    @Override
+    public boolean isProximityNeighborSelection() {
+        return PROXIMITY_NEIGHBOR_SELECTION;
+    }
+
+    @Override
+    public long coalescingWindow() {
+        return COALESCING_WINDOW;
+    }
+
+    @Override
+    public int maxDatagramSize() {
+        return MAX_DATAGRAM_SIZE;
+    }
+
+    @Override
+    public int receiveSockets() {
+        return RECEIVE_SOCKETS;
+    }
+
+    @Override
+    public int receiveBufferSize() {
+        return RECEIVE_BUFFER_SIZE;
+    }
+
     @Override
     public String getNodeDataFolder(String ownerId) {
         /* Setup the main storage folder if it doesn't exist */
@@ -9,15 +9,33 @@ import kademlia.node.Node;
 import kademlia.operation.*;
 import kademlia.routing.JKademliaRoutingTable;
 import kademlia.routing.KademliaRoutingTable;
+import kademlia.transport.Transport;
+import kademlia.transport.UdpTransport;
+import kademlia.util.Clock;
+import kademlia.util.LatencyWindow;
 import kademlia.util.serializer.JsonDHTSerializer;
 import kademlia.util.serializer.JsonRoutingTableSerializer;
 import kademlia.util.serializer.JsonSerializer;
+import kademlia.util.serializer.NodeStateSnapshot;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The main Kademlia Node on the network, this node manages everything for this local system.
@@ -29,6 +47,8 @@ import java.util.TimerTask;
  */
 public class JKademliaNode implements KademliaNode {
 
+    private static final int REPLICA_READ_LATENCY_SAMPLES = 128;
+
     /* Kademlia Attributes */
     private final String ownerId;
 
@@ -43,12 +63,28 @@ public class JKademliaNode implements KademliaNode {
     private final transient KadStatistician statistician;
     private transient KademliaRoutingTable routingTable;
     private transient KadConfiguration config;
-    /* Timer used to execute refresh operations */
-    private transient Timer refreshOperationTimer;
-    private transient TimerTask refreshOperationTTask;
+    /* The next refresh operation, scheduled on the clock of the server */
+    private final transient Object refreshLock;
+    private transient Clock.Task refreshTask;
+    private transient boolean isRefreshing;
+    /* Content lookups currently running, so concurrent gets for the same content can share them */
+    private final transient Map<GetParameter, CompletableFuture<JKademliaStorageEntry>> pendingLookups;
+    private final transient RecentLookupCache recentLookups;
+    /* Latencies of recent direct reads from replicas, used to decide when to hedge */
+    private final transient LatencyWindow replicaReadLatencies;
+    /* New contacts we still need to hand content over to */
+    private final transient Set<Node> pendingHandoffs;
+    /* Runs the refresh and key handoff operations, so they don't hold up the clock of the server */
+    private final transient ExecutorService maintenanceExecutor;
+    /* Runs the store operations started by putAsync */
+    private final transient ExecutorService storeExecutor;
 
     {
         statistician = new Statistician();
+        pendingLookups = new ConcurrentHashMap<>();
+        replicaReadLatencies = new LatencyWindow(REPLICA_READ_LATENCY_SAMPLES);
+        pendingHandoffs = new HashSet<>();
+        refreshLock = new Object();
     }
 
     /**
@@ -68,14 +104,39 @@ public class JKademliaNode implements KademliaNode {
      *                     attempting to bootstrap to the network
      */
     public JKademliaNode(String ownerId, Node localNode, int udpPort, KademliaDHT dht, KademliaRoutingTable routingTable, KadConfiguration config) throws IOException {
+        this(ownerId, localNode, udpPort, new UdpTransport(udpPort, config), dht, routingTable, config);
+    }
+
+    /**
+     * Creates a Kademlia node that sends and receives its messages over the given transport,
+     * e.g. a SimulatedTransport to run many nodes in a single JVM.
+     *
+     * @param ownerId      The Name of this node used for storage
+     * @param localNode    The Local Node for this Kad instance
+     * @param udpPort      The port the local node can be reached on
+     * @param transport    The transport to send and receive messages over
+     * @param dht          The DHT for this instance
+     * @param routingTable
+     * @param config
+     */
+    public JKademliaNode(String ownerId, Node localNode, int udpPort, Transport transport, KademliaDHT dht, KademliaRoutingTable routingTable, KadConfiguration config) {
         this.ownerId = ownerId;
         this.udpPort = udpPort;
         this.localNode = localNode;
         this.dht = dht;
         this.config = config;
         this.routingTable = routingTable;
+        this.statistician.setRoutingTable(routingTable);
         this.messageFactory = new MessageFactory(this, this.dht, this.config);
-        this.server = new KadServer(udpPort, this.messageFactory, this.localNode, this.config, this.statistician);
+        this.server = new KadServer(transport, this.messageFactory, this.localNode, this.routingTable, this.config, this.statistician);
+        this.routingTable.setClock(this.server.getClock());
+        this.dht.setClock(this.server.getClock());
+        this.recentLookups = new RecentLookupCache(config.lookupCacheSize(), config.lookupCacheTimeout(), this.server.getClock());
+        this.maintenanceExecutor = this.server.getClock().newExecutor("KademliaNode-maintenance", 1);
+        this.storeExecutor = this.server.getClock().newExecutor("KademliaNode-store", config.asyncStoreThreads());
+        if (config.isKeyHandoff()) {
+            this.routingTable.setContactListener(this::scheduleHandoff);
+        }
         this.startRefreshOperation();
     }
 
@@ -131,6 +192,13 @@ public class JKademliaNode implements KademliaNode {
      * @throws ClassNotFoundException
      */
     public static JKademliaNode loadFromFile(String ownerId, KadConfiguration iconfig) throws FileNotFoundException, IOException, ClassNotFoundException {
+        /* Prefer the binary snapshot; the JSON files are only there for state saved by older versions */
+        Path snapshotFile = Paths.get(getStateStorageFolderName(ownerId, iconfig), NodeStateSnapshot.FILE_NAME);
+        if (Files.exists(snapshotFile)) {
+            NodeStateSnapshot snapshot = NodeStateSnapshot.read(snapshotFile, iconfig);
+            return new JKademliaNode(ownerId, snapshot.getLocalNode(), snapshot.getUdpPort(), snapshot.getDht(), snapshot.getRoutingTable(), iconfig);
+        }
+
         DataInputStream din;
 
         /**
@@ -178,27 +246,94 @@ public class JKademliaNode implements KademliaNode {
 
     @Override
     public final void startRefreshOperation() {
-        this.refreshOperationTimer = new Timer(true);
-        refreshOperationTTask = new TimerTask() {
-            @Override
-            public void run() {
+        synchronized (this.refreshLock) {
+            this.isRefreshing = true;
+            this.scheduleRefresh();
+        }
+    }
+
+    /**
+     * Schedule the next refresh operation, config.restoreInterval() from now
+     */
+    private void scheduleRefresh() {
+        synchronized (this.refreshLock) {
+            if (!this.isRefreshing) {
+                return;
+            }
+
+            try {
+                this.refreshTask = this.server.getClock().schedule(() -> {
+                    this.scheduleRefresh();
+                    this.runMaintenance(() -> {
+                        try {
+                            /* Runs a DHT RefreshOperation  */
+                            this.refresh();
+                        } catch (IOException e) {
+                            System.err.println("KademliaNode: Refresh Operation Failed; Message: " + e.getMessage());
+                        }
+                    });
+                }, this.config.restoreInterval());
+            } catch (IllegalStateException e) {
+                /* The node has been shut down */
+            }
+        }
+    }
+
+    /**
+     * Run a maintenance operation on the maintenance thread, unless the node has been shut down
+     *
+     * @param operation The operation to run
+     */
+    private void runMaintenance(Runnable operation) {
+        try {
+            this.maintenanceExecutor.execute(operation);
+        } catch (RejectedExecutionException e) {
+            /* The node has been shut down */
+        }
+    }
+
+    /**
+     * Hand the content we store over to a new contact, if it is closer to some of its keys than we are.
+     * Contacts learned shortly after each other, e.g. during the same lookup, are handled together.
+     *
+     * @param n The new contact
+     */
+    private void scheduleHandoff(Node n) {
+        synchronized (this.pendingHandoffs) {
+            if (!this.pendingHandoffs.add(n) || this.pendingHandoffs.size() > 1) {
+                return;
+            }
+        }
+
+        try {
+            this.server.getClock().schedule(() -> this.runMaintenance(() -> {
+                List<Node> newNodes;
+                synchronized (this.pendingHandoffs) {
+                    newNodes = new ArrayList<>(this.pendingHandoffs);
+                    this.pendingHandoffs.clear();
+                }
+
                 try {
-                    /* Runs a DHT RefreshOperation  */
-                    JKademliaNode.this.refresh();
+                    new KeyHandoffOperation(this.server, this, this.dht, newNodes, this.config).execute();
                 } catch (IOException e) {
-                    System.err.println("KademliaNode: Refresh Operation Failed; Message: " + e.getMessage());
+                    System.err.println("KademliaNode: Key Handoff Operation Failed; Message: " + e.getMessage());
                 }
-            }
-        };
-        refreshOperationTimer.schedule(refreshOperationTTask, this.config.restoreInterval(), this.config.restoreInterval());
+            }), this.config.handoffDelay());
+        } catch (IllegalStateException e) {
+            /* The node has been shut down */
+        }
     }
 
     @Override
     public final void stopRefreshOperation() {
         /* Close off the timer tasks */
-        this.refreshOperationTTask.cancel();
-        this.refreshOperationTimer.cancel();
-        this.refreshOperationTimer.purge();
+        synchronized (this.refreshLock) {
+            this.isRefreshing = false;
+            if (this.refreshTask != null) {
+                this.refreshTask.cancel();
+                this.refreshTask = null;
+            }
+        }
     }
 
     @Override
@@ -222,12 +357,25 @@ public class JKademliaNode implements KademliaNode {
     }
 
     @Override
-    public synchronized final void bootstrap(Node n) throws IOException, RoutingException {
+    public final void bootstrap(Node n) throws IOException, RoutingException {
+        this.bootstrap(Collections.singleton(n));
+    }
+
+    @Override
+    public synchronized final void bootstrap(Collection<Node> nodes) throws IOException, RoutingException {
         long startTime = System.nanoTime();
-        Operation op = new ConnectOperation(this.server, this, n, this.config);
-        op.execute();
-        long endTime = System.nanoTime();
-        this.statistician.setBootstrapTime(endTime - startTime);
+        boolean isSuccessful = false;
+        try {
+            Operation op = new ConnectOperation(this.server, this, nodes, this.config);
+            op.execute();
+            isSuccessful = true;
+        } finally {
+            long endTime = System.nanoTime();
+            if (isSuccessful) {
+                this.statistician.setBootstrapTime(endTime - startTime);
+            }
+            this.statistician.addOperation("bootstrap", endTime - startTime, isSuccessful);
+        }
     }
 
     @Override
@@ -237,32 +385,210 @@ public class JKademliaNode implements KademliaNode {
 
     @Override
     public int put(JKademliaStorageEntry entry) throws IOException {
-        StoreOperation sop = new StoreOperation(this.server, this, entry, this.dht, this.config);
-        sop.execute();
+        /* Make sure we don't keep serving an older version of this content from the lookup cache */
+        this.recentLookups.invalidate(entry.getContentMetadata().getKey());
+
+        long startTime = System.nanoTime();
+        boolean isSuccessful = false;
+        try {
+            StoreOperation sop = new StoreOperation(this.server, this, entry, this.dht, this.config);
+            sop.execute();
+            int numNodesStoredAt = sop.awaitAcknowledgements();
+            isSuccessful = numNodesStoredAt > 0;
+
+            /* Return how many nodes the content was stored on */
+            return numNodesStoredAt;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the store acknowledgements.", e);
+        } finally {
+            this.statistician.addOperation("put", System.nanoTime() - startTime, isSuccessful);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> putAsync(KadContent content, int writeQuorum) {
+        return this.putAsync(new JKademliaStorageEntry(content), writeQuorum);
+    }
+
+    @Override
+    public CompletableFuture<Integer> putAsync(JKademliaStorageEntry entry, int writeQuorum) {
+        this.recentLookups.invalidate(entry.getContentMetadata().getKey());
+
+        final StoreOperation sop = new StoreOperation(this.server, this, entry, this.dht, this.config, writeQuorum);
+
+        /* Run the operation in a different thread, the quorum future tells the caller when enough nodes stored the content */
+        try {
+            this.storeExecutor.execute(() -> {
+                try {
+                    sop.execute();
+                } catch (IOException e) {
+                    /* The quorum future is already completed with this exception */
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            /* The node has been shut down */
+            sop.getQuorumFuture().completeExceptionally(new IOException("The node has been shut down.", e));
+        }
 
-        /* Return how many nodes the content was stored on */
-        return sop.numNodesStoredAt();
+        return sop.getQuorumFuture();
     }
 
     @Override
     public void putLocally(KadContent content) throws IOException {
-        this.dht.store(new JKademliaStorageEntry(content));
+        this.dht.store(new JKademliaStorageEntry(content), true);
     }
 
     @Override
     public JKademliaStorageEntry get(GetParameter param) throws NoSuchElementException, IOException, ContentNotFoundException {
+        return this.get(param, true);
+    }
+
+    @Override
+    public JKademliaStorageEntry getLatest(GetParameter param) throws NoSuchElementException, IOException, ContentNotFoundException {
+        return this.get(param, false);
+    }
+
+    private JKademliaStorageEntry get(GetParameter param, boolean useRecentLookups) throws NoSuchElementException, IOException, ContentNotFoundException {
+        /* Keep track of how long gets take and how many of them fail, for whatever reason */
+        long startTime = System.nanoTime();
+        boolean isSuccessful = false;
+        try {
+            JKademliaStorageEntry entry = this.getContent(param, useRecentLookups);
+            isSuccessful = true;
+            return entry;
+        } finally {
+            this.statistician.addOperation("get", System.nanoTime() - startTime, isSuccessful);
+        }
+    }
+
+    /**
+     * Get some content from our own DHT, a recent lookup or the network
+     *
+     * @param param            The parameters used to search for the content
+     * @param useRecentLookups Whether the content may be taken from a recent lookup
+     * @return The content
+     */
+    private JKademliaStorageEntry getContent(GetParameter param, boolean useRecentLookups) throws NoSuchElementException, IOException, ContentNotFoundException {
         if (this.dht.contains(param)) {
-            /* If the content exist in our own DHT, then return it. */
-            return this.dht.get(param);
+            /* If the content exist in our own DHT, then return it; unless it's a cached copy and the latest version is asked */
+            JKademliaStorageEntry local = this.dht.get(param);
+            if (useRecentLookups || !local.getContentMetadata().isCachedCopy()) {
+                return local;
+            }
         }
 
-        /* Seems like it doesn't exist in our DHT, get it from other Nodes */
-        long startTime = System.nanoTime();
-        ContentLookupOperation clo = new ContentLookupOperation(server, this, param, this.config);
-        clo.execute();
-        long endTime = System.nanoTime();
-        this.statistician.addContentLookup(endTime - startTime, clo.routeLength(), clo.isContentFound());
-        return clo.getContentFound();
+        /* We might have looked up this content only moments ago */
+        JKademliaStorageEntry cached = useRecentLookups ? this.recentLookups.get(param) : null;
+        if (cached != null) {
+            return cached;
+        }
+
+        /**
+         * If another thread is already looking up this content, wait for its result instead of starting a new lookup.
+         * We use a copy of the parameters as key, since GetParameter objects can still be modified by the caller.
+         */
+        GetParameter lookupKey = new GetParameter(param.getKey(), param.getType(), param.getOwnerId());
+        CompletableFuture<JKademliaStorageEntry> lookup = new CompletableFuture<>();
+        CompletableFuture<JKademliaStorageEntry> pending = this.pendingLookups.putIfAbsent(lookupKey, lookup);
+        if (pending != null) {
+            /* Don't share the entry found with the thread that started the lookup */
+            return this.awaitLookup(pending).copy();
+        }
+
+        try {
+            /* Seems like it doesn't exist in our DHT; the closest nodes we know of are likely to store it, unless they recently didn't */
+            long startTime = System.nanoTime();
+            if (this.config.isReplicaReads() && !this.recentLookups.isRecentMiss(lookupKey)) {
+                JKademliaStorageEntry fromReplica = this.readFromReplicas(param);
+                if (fromReplica != null) {
+                    this.statistician.addContentLookup(System.nanoTime() - startTime, 1, true);
+                    this.recentLookups.put(lookupKey, fromReplica);
+                    lookup.complete(fromReplica);
+                    return this.awaitLookup(lookup);
+                }
+                this.recentLookups.putMiss(lookupKey);
+            }
+
+            /* Get it from other Nodes; the time spent asking the replicas counts towards this lookup */
+            ContentLookupOperation clo = new ContentLookupOperation(server, this, param, this.config);
+            clo.execute();
+            long endTime = System.nanoTime();
+            this.statistician.addContentLookup(endTime - startTime, clo.routeLength(), clo.isContentFound());
+
+            if (clo.isContentFound()) {
+                this.recentLookups.put(lookupKey, clo.getContentFound());
+                lookup.complete(clo.getContentFound());
+            } else {
+                lookup.completeExceptionally(new ContentNotFoundException("No Value was found for the given key."));
+            }
+        } catch (IOException | RuntimeException e) {
+            lookup.completeExceptionally(e);
+        } finally {
+            this.pendingLookups.remove(lookupKey, lookup);
+            synchronized (lookup) {
+                this.server.getClock().wakeUp(lookup);
+            }
+        }
+
+        return this.awaitLookup(lookup);
+    }
+
+    /**
+     * Read content directly from the K closest nodes to its key in our routing table
+     *
+     * @param param The parameters of the content to read
+     * @return The content found, or null if none of these nodes returned it
+     */
+    private JKademliaStorageEntry readFromReplicas(GetParameter param) throws IOException {
+        List<Node> replicas = new ArrayList<>(this.routingTable.findClosest(param.getKey(), this.config.k()));
+        replicas.remove(this.localNode);
+        if (replicas.isEmpty()) {
+            return null;
+        }
+
+        ReplicaReadOperation rro = new ReplicaReadOperation(this.server, this, param, replicas, this.replicaReadLatencies, this.config);
+        rro.execute();
+        if (!rro.isContentFound()) {
+            return null;
+        }
+
+        try {
+            return rro.getContentFound();
+        } catch (ContentNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wait for a content lookup to finish and unwrap its result
+     *
+     * @param lookup The lookup to wait for
+     * @return The content found
+     */
+    private JKademliaStorageEntry awaitLookup(CompletableFuture<JKademliaStorageEntry> lookup) throws IOException, ContentNotFoundException {
+        try {
+            /* Wait on the clock, the thread doing the lookup wakes us up when it is done */
+            synchronized (lookup) {
+                while (!lookup.isDone()) {
+                    this.server.getClock().waitOn(lookup, this.config.operationTimeout());
+                }
+            }
+            return lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a content lookup.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ContentNotFoundException) {
+                throw new ContentNotFoundException(cause.getMessage());
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
     @Override
@@ -286,6 +612,8 @@ public class JKademliaNode implements KademliaNode {
         this.server.shutdown();
 
         this.stopRefreshOperation();
+        this.maintenanceExecutor.shutdown();
+        this.storeExecutor.shutdown();
 
         /* Save this Kademlia instance's state if required */
         if (saveState) {
@@ -296,34 +624,12 @@ public class JKademliaNode implements KademliaNode {
 
     @Override
     public void saveKadState() throws IOException {
-        DataOutputStream dout;
-
-        /**
-         * @section Store Basic Kad data
-         */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "kad.kns"));
-        new JsonSerializer<JKademliaNode>().write(this, dout);
-
         /**
-         * @section Save the node state
+         * The routing table and the index of the stored content are saved together in a single binary snapshot;
+         * the content itself is already stored on disk by the DHT.
          */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "node.kns"));
-        new JsonSerializer<Node>().write(this.localNode, dout);
-
-        /**
-         * @section Save the routing table
-         * We need to save the routing table separate from the node since the routing table will contain the node and the node will contain the routing table
-         * This will cause a serialization recursion, and in turn a Stack Overflow
-         */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "routingtable.kns"));
-        new JsonRoutingTableSerializer(this.config).write(this.getRoutingTable(), dout);
-
-        /**
-         * @section Save the DHT
-         */
-        dout = new DataOutputStream(new FileOutputStream(getStateStorageFolderName(this.ownerId, this.config) + File.separator + "dht.kns"));
-        new JsonDHTSerializer().write(this.dht, dout);
-
+        Path snapshotFile = Paths.get(getStateStorageFolderName(this.ownerId, this.config), NodeStateSnapshot.FILE_NAME);
+        NodeStateSnapshot.write(snapshotFile, this.ownerId, this.udpPort, this.localNode, this.getRoutingTable(), this.dht);
     }
 
     @Override
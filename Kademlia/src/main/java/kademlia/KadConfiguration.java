@@ -14,13 +14,28 @@ public interface KadConfiguration {
     public long restoreInterval();
 
     /**
-     * If no reply received from a node in this period (in milliseconds)
-     * consider the node unresponsive.
+     * If no reply received from a node we have not measured a round trip time for in this period
+     * (in milliseconds) consider the node unresponsive.
      *
      * @return The time it takes to consider a node unresponsive
      */
     public long responseTimeout();
 
+    /**
+     * Response timeouts are derived from the measured round trip time of each contact,
+     * but never drop below this value nor exceed maxResponseTimeout().
+     *
+     * @return The minimum time in milliseconds to wait for a reply
+     */
+    public long minResponseTimeout();
+
+    /**
+     * Response timeouts of slow contacts may exceed responseTimeout(), but never this value.
+     *
+     * @return The maximum time in milliseconds to wait for a reply
+     */
+    public long maxResponseTimeout();
+
     /**
      * @return Maximum number of milliseconds for performing an operation.
      */
@@ -46,6 +61,111 @@ public interface KadConfiguration {
      */
     public int stale();
 
+    /**
+     * @return Number of threads that run the store operations started by putAsync.
+     */
+    public int asyncStoreThreads();
+
+    /**
+     * @return Number of lookups run in the background at the same time, like the lookups of a bucket refresh.
+     */
+    public int backgroundLookups();
+
+    /**
+     * @return Maximum number of recent content lookup results kept in memory; 0 disables caching.
+     */
+    public int lookupCacheSize();
+
+    /**
+     * @return Time in milliseconds a cached content lookup result stays valid.
+     */
+    public long lookupCacheTimeout();
+
+    /**
+     * Only content with an update timestamp is cached, since a cached copy can only be replaced by a newer version.
+     *
+     * @return Whether found content should be cached on the closest node along the lookup path that did not have it.
+     */
+    public boolean isPathCaching();
+
+    /**
+     * The expiry time of a cached copy is halved for every node between the caching node and the K closest nodes.
+     *
+     * @return Maximum time in milliseconds content cached along a lookup path is kept.
+     */
+    public long pathCacheTimeout();
+
+    /**
+     * @return Whether content should first be read directly from the K closest nodes in the routing table, before falling back to a content lookup.
+     */
+    public boolean isReplicaReads();
+
+    /**
+     * @return Number of replicas asked in parallel when reading content directly from them.
+     */
+    public int replicaReadParallelism();
+
+    /**
+     * Another replica is asked when none of the replicas asked so far responded within this percentile of previous replica read latencies.
+     *
+     * @return The latency percentile, between 0 and 100.
+     */
+    public double replicaReadHedgePercentile();
+
+    /**
+     * @return Whether stored content should be handed over right away to new contacts that are closer to its key.
+     */
+    public boolean isKeyHandoff();
+
+    /**
+     * New contacts learned within this time are handed content in one go.
+     *
+     * @return Time in milliseconds between learning about a new contact and handing content over to it.
+     */
+    public long handoffDelay();
+
+    /**
+     * @return Maximum number of entries handed over before waiting for their acknowledgements.
+     */
+    public int handoffBatchSize();
+
+    /**
+     * When the quota is reached, content this node did not put itself is evicted, least recently read first.
+     *
+     * @return Maximum number of bytes of content a node stores; 0 for no limit.
+     */
+    public long storageQuota();
+
+    /**
+     * @return Whether buckets should prefer contacts with a lower round trip time over other contacts in the same range.
+     */
+    public boolean isProximityNeighborSelection();
+
+    /**
+     * Messages sent to the same node within this window are packed into a single datagram.
+     * Nodes that don't coalesce can't read such datagrams, so all nodes of a network should use the same setting.
+     *
+     * @return The window in microseconds; 0 to send every message in its own datagram.
+     */
+    public long coalescingWindow();
+
+    /**
+     * @return Maximum size in bytes of a datagram packing several messages; should stay below the path MTU.
+     */
+    public int maxDatagramSize();
+
+    /**
+     * When more than one, that many UDP sockets are bound to the same port with SO_REUSEPORT, each with its own reader thread.
+     *
+     * @return Number of sockets (and threads) receiving messages.
+     */
+    public int receiveSockets();
+
+    /**
+     * @return Size in bytes of the receive buffer (SO_RCVBUF) of each socket; 0 for the platform default.
+     */
+    public int receiveBufferSize();
+
     /**
      * Creates the folder in which this node data is to be stored.
      *
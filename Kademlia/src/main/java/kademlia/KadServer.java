@@ -5,12 +5,18 @@ import kademlia.message.KademliaMessageFactory;
 import kademlia.message.Message;
 import kademlia.message.Receiver;
 import kademlia.node.Node;
+import kademlia.routing.Contact;
+import kademlia.routing.KademliaRoutingTable;
+import kademlia.routing.RoundTripTimeEstimator;
+import kademlia.transport.CoalescingTransport;
+import kademlia.transport.Transport;
+import kademlia.transport.UdpTransport;
+import kademlia.util.Clock;
 
 import java.io.*;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.SocketException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The server that handles sending and receiving messages between nodes on the Kad Network
@@ -23,15 +29,23 @@ public class KadServer {
     /* Maximum size of a Datagram Packet */
     private static final int DATAGRAM_BUFFER_SIZE = 64 * 1024;      // 64KB
 
+    /* A peer gets this many times its retransmission timeout to reply before the request times out */
+    private static final int RTO_TIMEOUT_FACTOR = 2;
+
     /* Basic Kad Objects */
     private final transient KadConfiguration config;
 
     /* Server Objects */
-    private final DatagramSocket socket;
+    private final Transport transport;
     private final Map<Integer, Receiver> receivers;
-    private final Timer timer;      // Schedule future tasks
-    private final Map<Integer, TimerTask> tasks;    // Keep track of scheduled tasks
+    private final Clock clock;      // Schedule future tasks and measure round trip times
+    private final Map<Integer, Clock.Task> tasks;   // Keep track of scheduled tasks
+    private final Map<Integer, Node> destinations;  // Where messages awaiting a reply were sent to
+    private final Map<Integer, Long> sendTimes;     // When messages awaiting a reply were sent
+    private final Map<Integer, String> messageTypes;    // The types of messages awaiting a reply, for the statistics
+    private final ExecutorService lookupExecutor;   // Runs lookups in the background, a bounded number at a time
     private final Node localNode;
+    private final KademliaRoutingTable routingTable;
     /* Factories */
     private final KademliaMessageFactory messageFactory;
     private final KadStatistician statistician;
@@ -41,7 +55,9 @@ public class KadServer {
         isRunning = true;
         this.tasks = new HashMap<>();
         this.receivers = new HashMap<>();
-        this.timer = new Timer(true);
+        this.destinations = new HashMap<>();
+        this.sendTimes = new HashMap<>();
+        this.messageTypes = new HashMap<>();
     }
 
     /**
@@ -50,14 +66,35 @@ public class KadServer {
      * @param udpPort      The port to listen on
      * @param mFactory     Factory used to create messages
      * @param localNode    Local node on which this server runs on
+     * @param routingTable The routing table of the local node, used to keep track of round trip times
      * @param config
      * @param statistician A statistician to manage the server statistics
      * @throws SocketException
      */
-    public KadServer(int udpPort, KademliaMessageFactory mFactory, Node localNode, KadConfiguration config, KadStatistician statistician) throws SocketException {
+    public KadServer(int udpPort, KademliaMessageFactory mFactory, Node localNode, KademliaRoutingTable routingTable, KadConfiguration config, KadStatistician statistician) throws SocketException {
+        this(new UdpTransport(udpPort, config), mFactory, localNode, routingTable, config, statistician);
+    }
+
+    /**
+     * Initialize our KadServer on a given transport
+     *
+     * @param transport    The transport to send and receive messages over
+     * @param mFactory     Factory used to create messages
+     * @param localNode    Local node on which this server runs on
+     * @param routingTable The routing table of the local node, used to keep track of round trip times
+     * @param config
+     * @param statistician A statistician to manage the server statistics
+     */
+    public KadServer(Transport transport, KademliaMessageFactory mFactory, Node localNode, KademliaRoutingTable routingTable, KadConfiguration config, KadStatistician statistician) {
         this.config = config;
-        this.socket = new DatagramSocket(udpPort);
+        /* Messages sent to the same node at about the same time share a datagram */
+        this.transport = config.coalescingWindow() > 0
+                ? new CoalescingTransport(transport, config.maxDatagramSize(), config.coalescingWindow())
+                : transport;
+        this.clock = this.transport.getClock();
+        this.lookupExecutor = this.clock.newExecutor("KadServer-lookup", config.backgroundLookups());
         this.localNode = localNode;
+        this.routingTable = routingTable;
         this.messageFactory = mFactory;
         this.statistician = statistician;
 
@@ -66,15 +103,17 @@ public class KadServer {
     }
 
     /**
-     * Starts the listener to listen for incoming messages
+     * Starts the listeners to listen for incoming messages, one for every receiving socket
      */
     private void startListener() {
-        new Thread() {
-            @Override
-            public void run() {
-                listen();
-            }
-        }.start();
+        for (int i = 0; i < Math.max(1, this.config.receiveSockets()); i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    listen();
+                }
+            }.start();
+        }
     }
 
     /**
@@ -100,11 +139,13 @@ public class KadServer {
             try {
                 /* Setup the receiver to handle message response */
                 receivers.put(comm, recv);
-                TimerTask task = new TimeoutTask(comm, recv);
-                timer.schedule(task, this.config.responseTimeout());
+                Clock.Task task = this.clock.schedule(new TimeoutTask(comm, recv), this.responseTimeout(to));
                 tasks.put(comm, task);
+                destinations.put(comm, to);
+                sendTimes.put(comm, this.clock.nanoTime());
+                messageTypes.put(comm, msg.getClass().getSimpleName());
             } catch (IllegalStateException ex) {
-                /* The timer is already cancelled so we cannot do anything here really */
+                /* The clock is already shut down so we cannot do anything here really */
             }
         }
 
@@ -114,6 +155,66 @@ public class KadServer {
         return comm;
     }
 
+    /**
+     * The retransmission timeout of a node, derived from the round trip times measured for it.
+     * If we don't have any measurements for the node, the conservative initial timeout responseTimeout() is used.
+     * <p>
+     * Operations can use this to decide when a reply is late, e.g. to hedge a request by asking another node.
+     *
+     * @param to The node
+     * @return The retransmission timeout in milliseconds
+     */
+    public long retransmissionTimeout(Node to) {
+        return retransmissionTimeout(this.getRttEstimator(to), this.config);
+    }
+
+    /**
+     * @param to The node
+     * @return How long we wait for a reply of the given node before the request times out, in milliseconds
+     */
+    private long responseTimeout(Node to) {
+        return responseTimeout(this.getRttEstimator(to), this.config);
+    }
+
+    /**
+     * The retransmission timeout (RTO) for a node, as RFC 6298 describes it: the RTO of its estimator,
+     * or the initial RTO responseTimeout() while there are no samples, kept between minResponseTimeout()
+     * and maxResponseTimeout().
+     *
+     * @param estimator The estimator of the node, or null if the node is not in our routing table
+     * @param config    The configuration holding the timeout bounds
+     * @return The retransmission timeout in milliseconds
+     */
+    static long retransmissionTimeout(RoundTripTimeEstimator estimator, KadConfiguration config) {
+        long rto = (estimator == null) ? config.responseTimeout() : estimator.getRetransmissionTimeout(config.responseTimeout());
+        return Math.min(config.maxResponseTimeout(), Math.max(config.minResponseTimeout(), rto));
+    }
+
+    /**
+     * How long we wait for a reply before the request times out: a few times the measured RTO,
+     * or just the initial RTO for a node without measurements, which is conservative already.
+     *
+     * @param estimator The estimator of the node, or null if the node is not in our routing table
+     * @param config    The configuration holding the timeout bounds
+     * @return The response timeout in milliseconds
+     */
+    static long responseTimeout(RoundTripTimeEstimator estimator, KadConfiguration config) {
+        long rto = retransmissionTimeout(estimator, config);
+        if (estimator == null || !estimator.hasEstimate()) {
+            return rto;
+        }
+        return Math.min(config.maxResponseTimeout(), RTO_TIMEOUT_FACTOR * rto);
+    }
+
+    /**
+     * @param n The node
+     * @return The estimator of the node's contact, or null if the node is not in our routing table
+     */
+    private RoundTripTimeEstimator getRttEstimator(Node n) {
+        Contact c = this.routingTable.getKnownContact(n);
+        return (c == null) ? null : c.getRttEstimator();
+    }
+
     /**
      * Method called to reply to a message received
      *
@@ -148,10 +249,8 @@ public class KadServer {
                 throw new IOException("Message is too big");
             }
 
-            /* Everything is good, now create the packet and send it */
-            DatagramPacket pkt = new DatagramPacket(data, 0, data.length);
-            pkt.setSocketAddress(to.getSocketAddress());
-            socket.send(pkt);
+            /* Everything is good, now send the packet */
+            this.transport.send(data, data.length, to.getSocketAddress());
 
             /* Lets inform the statistician that we've sent some data */
             this.statistician.sentData(data.length);
@@ -167,27 +266,13 @@ public class KadServer {
                 try {
                     /* Wait for a packet */
                     byte[] buffer = new byte[DATAGRAM_BUFFER_SIZE];
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(packet);
+                    int length = this.transport.receive(buffer);
 
                     /* Lets inform the statistician that we've received some data */
-                    this.statistician.receivedData(packet.getLength());
-
-                    if (this.config.isTesting()) {
-                        /**
-                         * Simulating network latency
-                         * We pause for 1 millisecond/100 bytes
-                         */
-                        int pause = packet.getLength() / 100;
-                        try {
-                            Thread.sleep(pause);
-                        } catch (InterruptedException ex) {
-
-                        }
-                    }
+                    this.statistician.receivedData(length);
 
                     /* We've received a packet, now handle it */
-                    try (ByteArrayInputStream bin = new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength());
+                    try (ByteArrayInputStream bin = new ByteArrayInputStream(buffer, 0, length);
                          DataInputStream din = new DataInputStream(bin);) {
 
                         /* Read in the conversation Id to know which handler to handle this response */
@@ -197,16 +282,30 @@ public class KadServer {
                         Message msg = messageFactory.createMessage(messCode, din);
                         din.close();
 
-                        /* Get a receiver for this message */
+                        /* Get a receiver for this message; several listener threads may be handling replies at once */
                         Receiver receiver;
-                        if (this.receivers.containsKey(comm)) {
-                            /* If there is a reciever in the receivers to handle this */
-                            synchronized (this) {
-                                receiver = this.receivers.remove(comm);
-                                TimerTask task = (TimerTask) tasks.remove(comm);
+                        Node sentTo = null;
+                        Long sentAt = null;
+                        String sentType = null;
+                        synchronized (this) {
+                            receiver = this.receivers.remove(comm);
+                            if (receiver != null) {
+                                Clock.Task task = tasks.remove(comm);
                                 if (task != null) {
                                     task.cancel();
                                 }
+                                sentTo = this.destinations.remove(comm);
+                                sentAt = this.sendTimes.remove(comm);
+                                sentType = this.messageTypes.remove(comm);
+                            }
+                        }
+
+                        if (receiver != null) {
+                            /* We got a reply, update the round trip time estimates */
+                            if (sentTo != null && sentAt != null) {
+                                long rtt = this.clock.nanoTime() - sentAt;
+                                this.addRttSample(sentTo, rtt / 1000000L);
+                                this.statistician.addMessageRoundTrip(sentType, rtt);
                             }
                         } else {
                             /* There is currently no receivers, try to get one */
@@ -221,24 +320,47 @@ public class KadServer {
                 } catch (IOException e) {
                     //this.isRunning = false;
                     System.err.println("Server ran into a problem in listener method. Message: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    /* An unknown or malformed message, drop it and keep listening */
+                    System.err.println("Server dropped a message it could not handle. Message: " + e.getMessage());
                 }
             }
         } finally {
-            if (!socket.isClosed()) {
-                socket.close();
+            if (!this.transport.isClosed()) {
+                this.transport.close();
             }
             this.isRunning = false;
         }
     }
 
     /**
-     * Remove a conversation receiver
+     * Update the round trip time estimate of a node
+     *
+     * @param n   The node that replied
+     * @param rtt The round trip time in milliseconds
+     */
+    private void addRttSample(Node n, long rtt) {
+        Contact c = this.routingTable.getKnownContact(n);
+        if (c != null) {
+            c.getRttEstimator().addSample(rtt);
+        }
+    }
+
+    /**
+     * Remove a conversation receiver whose request timed out
      *
      * @param comm The id of this conversation
+     * @return The node the message of this conversation was sent to
      */
-    private synchronized void unregister(int comm) {
+    private synchronized Node unregister(int comm) {
         receivers.remove(comm);
         this.tasks.remove(comm);
+        this.sendTimes.remove(comm);
+        String type = this.messageTypes.remove(comm);
+        if (type != null) {
+            this.statistician.addMessageTimeout(type);
+        }
+        return this.destinations.remove(comm);
     }
 
     /**
@@ -246,8 +368,26 @@ public class KadServer {
      */
     public synchronized void shutdown() {
         this.isRunning = false;
-        this.socket.close();
-        timer.cancel();
+        for (Clock.Task task : this.tasks.values()) {
+            task.cancel();
+        }
+        this.tasks.clear();
+        this.lookupExecutor.shutdownNow();
+        this.transport.close();
+    }
+
+    /**
+     * @return The clock timeouts are measured with; operations running on this server should use it as well
+     */
+    public Clock getClock() {
+        return this.clock;
+    }
+
+    /**
+     * @return The executor to run lookups in the background on, at most config.backgroundLookups() at a time
+     */
+    public ExecutorService getLookupExecutor() {
+        return this.lookupExecutor;
     }
 
     public void printReceivers() {
@@ -261,12 +401,12 @@ public class KadServer {
     }
 
     /**
-     * Task that gets called by a separate thread if a timeout for a receiver occurs.
+     * Task that gets called by the clock if a timeout for a receiver occurs.
      * When a reply arrives this task must be canceled using the <code>cancel()</code>
-     * method inherited from <code>TimerTask</code>. In this case the caller is
+     * method of the <code>Clock.Task</code> it was scheduled as. In this case the caller is
      * responsible for removing the task from the <code>tasks</code> map.
      */
-    class TimeoutTask extends TimerTask {
+    class TimeoutTask implements Runnable {
 
         private final int comm;
         private final Receiver recv;
@@ -283,7 +423,14 @@ public class KadServer {
             }
 
             try {
-                unregister(comm);
+                /* Back off the retransmission timeout of the node that did not reply */
+                Node n = unregister(comm);
+                if (n != null) {
+                    Contact c = KadServer.this.routingTable.getKnownContact(n);
+                    if (c != null) {
+                        c.getRttEstimator().backOff();
+                    }
+                }
                 recv.timeout(comm);
             } catch (IOException e) {
                 System.err.println("Cannot unregister a receiver. Message: " + e.getMessage());
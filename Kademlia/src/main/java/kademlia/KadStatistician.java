@@ -1,5 +1,7 @@
 package kademlia;
 
+import kademlia.routing.KademliaRoutingTable;
+
 /**
  * Specification for class that keeps statistics for a Kademlia instance.
  * <p>
@@ -83,4 +85,74 @@ public interface KadStatistician {
      * @return The average route length
      */
     public double averageContentLookupRouteLength();
+
+    /**
+     * Add the round trip time of a request that was replied to
+     *
+     * @param messageType The type of the request message
+     * @param time        The time between sending the request and receiving the reply, in nanoseconds
+     */
+    public void addMessageRoundTrip(String messageType, long time);
+
+    /**
+     * Used to indicate a request was not replied to in time
+     *
+     * @param messageType The type of the request message
+     */
+    public void addMessageTimeout(String messageType);
+
+    /**
+     * Add the timing and outcome of an operation that took place, e.g. a get, put or bootstrap
+     *
+     * @param operation    The name of the operation
+     * @param time         The time the operation took in nanoseconds
+     * @param isSuccessful Whether the operation was successful or not
+     */
+    public void addOperation(String operation, long time, boolean isSuccessful);
+
+    /**
+     * Used to indicate an operation had to send a request again, or to another node, because a reply was missing or late
+     *
+     * @param operation The name of the operation
+     */
+    public void addRetry(String operation);
+
+    /**
+     * @param operation The name of the operation
+     * @return How many of these operations have failed, e.g. the number of failed get requests
+     */
+    public long numFailedOperations(String operation);
+
+    /**
+     * @param operation  The name of the operation
+     * @param percentile The percentile, between 0 and 100
+     * @return The time (in microseconds) within which the given percentage of these operations completed, or 0 if unknown
+     */
+    public long operationLatencyPercentile(String operation, double percentile);
+
+    /**
+     * @return A snapshot of all statistics in JSON, including p50, p99 and p999 latencies per message type and operation
+     */
+    public String exportJson();
+
+    /**
+     * @return A snapshot of all statistics as text, one statistic or message type or operation per line
+     */
+    public String exportText();
+
+    /**
+     * @param routingTable The routing table of which to report the round trip times of the contacts
+     */
+    public void setRoutingTable(KademliaRoutingTable routingTable);
+
+    /**
+     * @return The smoothed round trip times (in milliseconds) of the contacts in the routing table, in ascending order
+     */
+    public double[] getRttDistribution();
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The round trip time (in milliseconds) below which the given percentage of contacts respond, or 0 if unknown
+     */
+    public double rttPercentile(double percentile);
 }
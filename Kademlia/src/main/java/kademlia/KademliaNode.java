@@ -10,7 +10,9 @@ import kademlia.node.Node;
 import kademlia.routing.KademliaRoutingTable;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The main Kademlia Node on the network, this node manages everything for this local system.
@@ -60,6 +62,17 @@ public interface KademliaNode {
      */
     public void bootstrap(Node n) throws IOException, RoutingException;
 
+    /**
+     * Connect to an existing peer-to-peer network using several known nodes.
+     * All of them are contacted at once; connecting succeeds as soon as any of them responds.
+     *
+     * @param nodes The known nodes in the peer-to-peer network
+     * @throws RoutingException      If none of the bootstrap nodes could be contacted
+     * @throws IOException           If a network error occurred
+     * @throws IllegalStateException If this object is closed
+     */
+    public void bootstrap(Collection<Node> nodes) throws IOException, RoutingException;
+
     /**
      * Stores the specified value under the given key
      * This value is stored on K nodes on the network, or all nodes if there are > K total nodes in the network
@@ -80,6 +93,27 @@ public interface KademliaNode {
      */
     public int put(JKademliaStorageEntry entry) throws IOException;
 
+    /**
+     * Stores the specified value under the given key without waiting for the store to finish.
+     * The returned future completes as soon as writeQuorum nodes acknowledged storing the content;
+     * the content keeps being stored on the remaining nodes in the background.
+     *
+     * @param content     The content to put onto the DHT
+     * @param writeQuorum The number of nodes that need to acknowledge the store
+     * @return A future with the number of nodes the content was stored on when the quorum was reached;
+     * it completes exceptionally if the quorum can't be reached
+     */
+    public CompletableFuture<Integer> putAsync(KadContent content, int writeQuorum);
+
+    /**
+     * Cf. putAsync(KadContent, int)
+     *
+     * @param entry       The StorageEntry with the content to put onto the DHT
+     * @param writeQuorum The number of nodes that need to acknowledge the store
+     * @return A future with the number of nodes the content was stored on when the quorum was reached
+     */
+    public CompletableFuture<Integer> putAsync(JKademliaStorageEntry entry, int writeQuorum);
+
     /**
      * Store a content on the local node's DHT
      *
@@ -98,6 +132,17 @@ public interface KademliaNode {
      */
     public JKademliaStorageEntry get(GetParameter param) throws NoSuchElementException, IOException, ContentNotFoundException;
 
+    /**
+     * Get some content stored on the DHT, without using the results of recent lookups.
+     * Use this to read content that is about to be modified and stored again, so no concurrent updates are lost.
+     *
+     * @param param The parameters used to search for the content
+     * @return DHTContent The content
+     * @throws IOException
+     * @throws ContentNotFoundException
+     */
+    public JKademliaStorageEntry getLatest(GetParameter param) throws NoSuchElementException, IOException, ContentNotFoundException;
+
     /**
      * Allow the user of the System to call refresh even out of the normal Kad refresh timing
      *
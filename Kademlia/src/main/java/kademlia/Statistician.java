@@ -1,11 +1,24 @@
 package kademlia;
 
+import com.google.gson.GsonBuilder;
+import kademlia.routing.KademliaRoutingTable;
+import kademlia.util.LatencyHistogram;
+
 import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Class that keeps statistics for this Kademlia instance.
  * <p>
  * These statistics are temporary and will be lost when Kad is shut down.
+ * <p>
+ * The server threads, operations and callers all update the statistics concurrently, so counters are LongAdders and
+ * latencies are kept in lock-free histograms, one per message type and one per operation.
  *
  * @author Joshua Kissoon
  * @since 20140505
@@ -13,54 +26,58 @@ import java.text.DecimalFormat;
 public class Statistician implements KadStatistician {
 
     /* How much data was sent and received by the server over the network */
-    private long totalDataSent, totalDataReceived;
-    private long numDataSent, numDataReceived;
+    private final LongAdder totalDataSent, totalDataReceived;
+    private final LongAdder numDataSent, numDataReceived;
 
     /* Bootstrap timings */
-    private long bootstrapTime;
+    private volatile long bootstrapTime;
 
     /* Content lookup operation timing & route length */
-    private int numContentLookups, numFailedContentLookups;
-    private long totalContentLookupTime;
-    private long totalRouteLength;
+    private final LongAdder numContentLookups, numFailedContentLookups;
+    private final LongAdder totalContentLookupTime;
+    private final LongAdder totalRouteLength;
+
+    /* Round trip times & timeouts per message type, latencies & outcomes per operation */
+    private final ConcurrentMap<String, Metric> messages;
+    private final ConcurrentMap<String, Metric> operations;
 
+    /* The routing table whose contacts' round trip times we report */
+    private KademliaRoutingTable routingTable;
 
     {
-        this.totalDataSent = 0;
-        this.totalDataReceived = 0;
+        this.totalDataSent = new LongAdder();
+        this.totalDataReceived = new LongAdder();
+        this.numDataSent = new LongAdder();
+        this.numDataReceived = new LongAdder();
         this.bootstrapTime = 0;
-        this.numContentLookups = 0;
-        this.totalContentLookupTime = 0;
-        this.totalRouteLength = 0;
+        this.numContentLookups = new LongAdder();
+        this.numFailedContentLookups = new LongAdder();
+        this.totalContentLookupTime = new LongAdder();
+        this.totalRouteLength = new LongAdder();
+        this.messages = new ConcurrentHashMap<>();
+        this.operations = new ConcurrentHashMap<>();
     }
 
     @Override
     public void sentData(long size) {
-        this.totalDataSent += size;
-        this.numDataSent++;
+        this.totalDataSent.add(size);
+        this.numDataSent.increment();
     }
 
     @Override
     public long getTotalDataSent() {
-        if (this.totalDataSent == 0) {
-            return 0L;
-        }
-
-        return this.totalDataSent / 1000L;
+        return this.totalDataSent.sum() / 1000L;
     }
 
     @Override
     public void receivedData(long size) {
-        this.totalDataReceived += size;
-        this.numDataReceived++;
+        this.totalDataReceived.add(size);
+        this.numDataReceived.increment();
     }
 
     @Override
     public long getTotalDataReceived() {
-        if (this.totalDataReceived == 0) {
-            return 0L;
-        }
-        return this.totalDataReceived / 1000L;
+        return this.totalDataReceived.sum() / 1000L;
     }
 
     @Override
@@ -76,50 +93,211 @@ public class Statistician implements KadStatistician {
     @Override
     public void addContentLookup(long time, int routeLength, boolean isSuccessful) {
         if (isSuccessful) {
-            this.numContentLookups++;
-            this.totalContentLookupTime += time;
-            this.totalRouteLength += routeLength;
+            this.numContentLookups.increment();
+            this.totalContentLookupTime.add(time);
+            this.totalRouteLength.add(routeLength);
         } else {
-            this.numFailedContentLookups++;
+            this.numFailedContentLookups.increment();
         }
+        this.addOperation("contentLookup", time, isSuccessful);
     }
 
     @Override
     public int numContentLookups() {
-        return this.numContentLookups;
+        return this.numContentLookups.intValue();
     }
 
     @Override
     public int numFailedContentLookups() {
-        return this.numFailedContentLookups;
+        return this.numFailedContentLookups.intValue();
     }
 
     @Override
     public long totalContentLookupTime() {
-        return this.totalContentLookupTime;
+        return this.totalContentLookupTime.sum();
     }
 
     @Override
     public double averageContentLookupTime() {
-        if (this.numContentLookups == 0) {
+        long num = this.numContentLookups.sum();
+        if (num == 0) {
             return 0D;
         }
 
-        double avg = (double) ((double) this.totalContentLookupTime / (double) this.numContentLookups) / 1000000D;
+        double avg = (double) ((double) this.totalContentLookupTime.sum() / (double) num) / 1000000D;
         DecimalFormat df = new DecimalFormat("#.00");
         return new Double(df.format(avg));
     }
 
     @Override
     public double averageContentLookupRouteLength() {
-        if (this.numContentLookups == 0) {
+        long num = this.numContentLookups.sum();
+        if (num == 0) {
             return 0D;
         }
-        double avg = (double) ((double) this.totalRouteLength / (double) this.numContentLookups);
+        double avg = (double) ((double) this.totalRouteLength.sum() / (double) num);
         DecimalFormat df = new DecimalFormat("#.00");
         return new Double(df.format(avg));
     }
 
+    @Override
+    public void addMessageRoundTrip(String messageType, long time) {
+        metric(this.messages, messageType).latencies.record(time);
+    }
+
+    @Override
+    public void addMessageTimeout(String messageType) {
+        metric(this.messages, messageType).timeouts.increment();
+    }
+
+    @Override
+    public void addOperation(String operation, long time, boolean isSuccessful) {
+        Metric m = metric(this.operations, operation);
+        m.latencies.record(time);
+        if (!isSuccessful) {
+            m.failures.increment();
+        }
+    }
+
+    @Override
+    public void addRetry(String operation) {
+        metric(this.operations, operation).retries.increment();
+    }
+
+    @Override
+    public long numFailedOperations(String operation) {
+        Metric m = this.operations.get(operation);
+        return m == null ? 0L : m.failures.sum();
+    }
+
+    @Override
+    public long operationLatencyPercentile(String operation, double percentile) {
+        Metric m = this.operations.get(operation);
+        return m == null ? 0L : m.latencies.percentile(percentile);
+    }
+
+    private static Metric metric(ConcurrentMap<String, Metric> metrics, String name) {
+        Metric m = metrics.get(name);
+        return m != null ? m : metrics.computeIfAbsent(name, k -> new Metric());
+    }
+
+    @Override
+    public void setRoutingTable(KademliaRoutingTable routingTable) {
+        this.routingTable = routingTable;
+    }
+
+    @Override
+    public double[] getRttDistribution() {
+        if (this.routingTable == null) {
+            return new double[0];
+        }
+        return this.routingTable.getRttDistribution();
+    }
+
+    @Override
+    public double rttPercentile(double percentile) {
+        return percentile(this.getRttDistribution(), percentile);
+    }
+
+    /**
+     * @param sorted     Values in ascending order
+     * @param percentile The percentile, between 0 and 100
+     * @return The value below which the given percentage of values fall, or 0 if there are none
+     */
+    private static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0D;
+        }
+        int index = (int) Math.ceil(percentile / 100D * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    @Override
+    public String exportJson() {
+        return new GsonBuilder().setPrettyPrinting().create().toJson(this.snapshot());
+    }
+
+    @Override
+    public String exportText() {
+        Map<String, Object> snapshot = this.snapshot();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> e : snapshot.entrySet()) {
+            appendText(sb, e.getKey(), e.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append a statistic as a line "name value", or "name key=value ..." for a group of statistics.
+     * Groups of groups, such as the message types, get a line per group.
+     */
+    private static void appendText(StringBuilder sb, String name, Object value) {
+        if (!(value instanceof Map)) {
+            sb.append(name).append(' ').append(value).append('\n');
+            return;
+        }
+
+        Map<?, ?> group = (Map<?, ?>) value;
+        if (!group.isEmpty() && group.values().iterator().next() instanceof Map) {
+            for (Map.Entry<?, ?> e : group.entrySet()) {
+                appendText(sb, name + " " + e.getKey(), e.getValue());
+            }
+            return;
+        }
+
+        sb.append(name);
+        for (Map.Entry<?, ?> e : group.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Take a snapshot of the statistics; latencies are in microseconds
+     *
+     * @return The statistics by name, with the message types and operations as nested maps sorted by name
+     */
+    private Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("bootstrapTimeMs", this.getBootstrapTime());
+        snapshot.put("bytesSent", this.totalDataSent.sum());
+        snapshot.put("datagramsSent", this.numDataSent.sum());
+        snapshot.put("bytesReceived", this.totalDataReceived.sum());
+        snapshot.put("datagramsReceived", this.numDataReceived.sum());
+        snapshot.put("avgContentLookupRouteLength", this.averageContentLookupRouteLength());
+
+        double[] rtts = this.getRttDistribution();
+        Map<String, Object> contactRtt = new LinkedHashMap<>();
+        contactRtt.put("contacts", rtts.length);
+        contactRtt.put("p50Ms", percentile(rtts, 50));
+        contactRtt.put("p90Ms", percentile(rtts, 90));
+        contactRtt.put("p99Ms", percentile(rtts, 99));
+        snapshot.put("contactRtt", contactRtt);
+
+        Map<String, Object> messageStats = new TreeMap<>();
+        for (Map.Entry<String, Metric> e : this.messages.entrySet()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("replies", e.getValue().latencies.count());
+            m.put("timeouts", e.getValue().timeouts.sum());
+            e.getValue().putLatencies(m);
+            messageStats.put(e.getKey(), m);
+        }
+        snapshot.put("messages", messageStats);
+
+        Map<String, Object> operationStats = new TreeMap<>();
+        for (Map.Entry<String, Metric> e : this.operations.entrySet()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", e.getValue().latencies.count());
+            m.put("failures", e.getValue().failures.sum());
+            m.put("retries", e.getValue().retries.sum());
+            e.getValue().putLatencies(m);
+            operationStats.put(e.getKey(), m);
+        }
+        snapshot.put("operations", operationStats);
+
+        return snapshot;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("Statistician: [");
@@ -130,14 +308,14 @@ public class Statistician implements KadStatistician {
 
         sb.append("Data Sent: ");
         sb.append("(");
-        sb.append(this.numDataSent);
+        sb.append(this.numDataSent.sum());
         sb.append(") ");
         sb.append(this.getTotalDataSent());
         sb.append(" bytes; ");
 
         sb.append("Data Received: ");
         sb.append("(");
-        sb.append(this.numDataReceived);
+        sb.append(this.numDataReceived.sum());
         sb.append(") ");
         sb.append(this.getTotalDataReceived());
         sb.append(" bytes; ");
@@ -154,8 +332,44 @@ public class Statistician implements KadStatistician {
         sb.append(this.averageContentLookupRouteLength());
         sb.append("; ");
 
+        double[] rtts = this.getRttDistribution();
+        sb.append("Contact RTT: ");
+        sb.append("(");
+        sb.append(rtts.length);
+        sb.append(") p50 ");
+        sb.append(Math.round(percentile(rtts, 50)));
+        sb.append(" ms, p90 ");
+        sb.append(Math.round(percentile(rtts, 90)));
+        sb.append(" ms, p99 ");
+        sb.append(Math.round(percentile(rtts, 99)));
+        sb.append(" ms; ");
+
         sb.append("]");
 
         return sb.toString();
     }
+
+    /**
+     * Latencies and outcome counts of a message type or operation
+     */
+    private static class Metric {
+
+        private final LatencyHistogram latencies;
+        private final LongAdder timeouts, failures, retries;
+
+        private Metric() {
+            this.latencies = new LatencyHistogram();
+            this.timeouts = new LongAdder();
+            this.failures = new LongAdder();
+            this.retries = new LongAdder();
+        }
+
+        private void putLatencies(Map<String, Object> m) {
+            m.put("meanUs", Math.round(this.latencies.mean()));
+            m.put("p50Us", this.latencies.percentile(50));
+            m.put("p99Us", this.latencies.percentile(99));
+            m.put("p999Us", this.latencies.percentile(99.9));
+            m.put("maxUs", this.latencies.max());
+        }
+    }
 }
@@ -4,10 +4,13 @@ import kademlia.KadConfiguration;
 import kademlia.exceptions.ContentExistException;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
+import kademlia.util.Clock;
 import kademlia.util.serializer.JsonSerializer;
 import kademlia.util.serializer.KadSerializer;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -23,6 +26,9 @@ public class DHT implements KademliaDHT {
     private transient StoredContentManager contentManager;
     private transient KadSerializer<JKademliaStorageEntry> serializer = null;
     private transient KadConfiguration config;
+    private transient Clock clock;
+    /* Total size of the content stored, in bytes */
+    private transient long bytesStored;
 
     public DHT(String ownerId, KadConfiguration config) {
         this.ownerId = ownerId;
@@ -33,6 +39,8 @@ public class DHT implements KademliaDHT {
     @Override
     public final void initialize() {
         contentManager = new StoredContentManager();
+        contentManager.setClock(clock);
+        bytesStored = 0;
     }
 
     @Override
@@ -40,6 +48,19 @@ public class DHT implements KademliaDHT {
         this.config = con;
     }
 
+    @Override
+    public synchronized void setClock(Clock clock) {
+        this.clock = clock;
+        this.contentManager.setClock(clock);
+    }
+
+    /**
+     * @return The current time in milliseconds
+     */
+    private long now() {
+        return this.clock != null ? this.clock.currentTimeMillis() : System.currentTimeMillis();
+    }
+
     @Override
     public KadSerializer<JKademliaStorageEntry> getSerializer() {
         if (null == serializer) {
@@ -51,24 +72,59 @@ public class DHT implements KademliaDHT {
 
     @Override
     public boolean store(JKademliaStorageEntry content) throws IOException {
+        return this.store(content, false);
+    }
+
+    @Override
+    public synchronized boolean store(JKademliaStorageEntry content, boolean published) throws IOException {
+        KademliaStorageEntryMetadata current = null;
+
         /* Lets check if we have this content and it's the updated version */
         if (this.contentManager.contains(content.getContentMetadata())) {
-            KademliaStorageEntryMetadata current = this.contentManager.get(content.getContentMetadata());
+            current = this.contentManager.get(content.getContentMetadata());
 
             /* update the last republished time */
-            current.updateLastRepublished();
+            current.updateLastRepublished(this.now());
+
+            /* Whether we own some content only depends on whether we put it ourselves, never on what others send us */
+            published = published || current.isPublished();
+            current.setPublished(published);
+
+            /* A cached copy never replaces one of our own replicas, while a replica always replaces a cached copy */
+            if (!current.isCachedCopy() && content.getContentMetadata().isCachedCopy()) {
+                return false;
+            }
+            boolean replacesCachedCopy = current.isCachedCopy() && !content.getContentMetadata().isCachedCopy();
 
-            if (current.getLastUpdatedTimestamp() >= content.getContentMetadata().getLastUpdatedTimestamp()) {
+            if (!replacesCachedCopy && current.getLastUpdatedTimestamp() >= content.getContentMetadata().getLastUpdatedTimestamp()) {
                 /* We have the current content, no need to update it! just leave this method now */
                 return false;
-            } else {
-                /* We have this content, but not the latest version, lets delete it so the new version will be added below */
-                try {
-                    //System.out.println("Removing older content to update it");
-                    this.remove(content.getContentMetadata());
-                } catch (ContentNotFoundException ex) {
-                    /* This won't ever happen at this point since we only get here if the content is found, lets ignore it  */
-                }
+            }
+        }
+
+        /* An expired version of this content may still be around, remove it so its room and file are freed */
+        this.removeExpired(content.getContentMetadata());
+
+        /* Serialize the content first, so we know how much room it needs */
+        byte[] data;
+        try (ByteArrayOutputStream bout = new ByteArrayOutputStream();
+             DataOutputStream dout = new DataOutputStream(bout)) {
+            this.getSerializer().write(content, dout);
+            data = bout.toByteArray();
+        }
+
+        long freed = current == null ? 0 : current.getSize();
+        if (!this.makeRoom(data.length - freed, content.getContentMetadata(), published)) {
+            return false;
+        }
+
+        if (current != null) {
+            /* We have this content, but not the latest version, lets delete it so the new version will be added below */
+            try {
+                //System.out.println("Removing older content to update it");
+                this.remove(current);
+            } catch (ContentNotFoundException ex) {
+                /* This won't ever happen at this point since we only get here if the content is found, lets ignore it  */
             }
         }
 
@@ -80,13 +136,18 @@ public class DHT implements KademliaDHT {
             //System.out.println("Adding new content.");
             /* Keep track of this content in the entries manager */
             KademliaStorageEntryMetadata sEntry = this.contentManager.put(content.getContentMetadata());
+            sEntry.setSize(data.length);
+            sEntry.setPublished(published);
+            sEntry.startExpiry(this.now());
+            sEntry.updateLastRepublished(this.now());
+            sEntry.updateLastRead(this.now());
+            this.bytesStored += data.length;
 
             /* Now we store the content locally in a file */
             String contentStorageFolder = this.getContentStorageFolderName(content.getContentMetadata().getKey());
 
-            try (FileOutputStream fout = new FileOutputStream(contentStorageFolder + File.separator + sEntry.hashCode() + ".kct");
-                 DataOutputStream dout = new DataOutputStream(fout)) {
-                this.getSerializer().write(content, dout);
+            try (FileOutputStream fout = new FileOutputStream(contentStorageFolder + File.separator + sEntry.hashCode() + ".kct")) {
+                fout.write(data);
             }
             return true;
         } catch (ContentExistException e) {
@@ -99,6 +160,84 @@ public class DHT implements KademliaDHT {
         }
     }
 
+    /**
+     * Make sure there is room for some more bytes within our storage quota, by evicting content that
+     * we did not put ourselves: expired content first, then the content that was read least recently.
+     *
+     * @param needed    The number of extra bytes needed
+     * @param incoming  The content that needs the room
+     * @param published Whether we are putting the incoming content ourselves
+     * @return Whether the incoming content should be stored; content we put ourselves is always stored
+     */
+    private boolean makeRoom(long needed, KademliaStorageEntryMetadata incoming, boolean published) {
+        long quota = this.config.storageQuota();
+        if (quota <= 0 || this.bytesStored + needed <= quota) {
+            return true;
+        }
+
+        List<KademliaStorageEntryMetadata> candidates = new ArrayList<>();
+        for (KademliaStorageEntryMetadata e : this.contentManager.getAllEntries()) {
+            if (!e.isPublished() && !e.equals(incoming)) {
+                candidates.add(e);
+            }
+        }
+        long now = this.now();
+        candidates.sort(Comparator.comparing((KademliaStorageEntryMetadata e) -> e.isExpired(now)).reversed()
+                .thenComparingLong(KademliaStorageEntryMetadata::lastRead));
+
+        for (KademliaStorageEntryMetadata e : candidates) {
+            if (this.bytesStored + needed <= quota) {
+                break;
+            }
+            try {
+                this.remove(e);
+            } catch (ContentNotFoundException ex) {
+                /* The entry was tracked, but its file was gone already */
+            }
+        }
+
+        return this.bytesStored + needed <= quota || published;
+    }
+
+    /**
+     * Remove the stored version of some content if it has expired
+     *
+     * @param entry The metadata of the content
+     */
+    private void removeExpired(KademliaStorageEntryMetadata entry) {
+        KademliaStorageEntryMetadata expired = this.contentManager.getExpired(entry);
+        if (expired != null) {
+            try {
+                this.remove(expired);
+            } catch (ContentNotFoundException ex) {
+                /* The entry was tracked, but its file was gone already */
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean hasCurrentVersion(KademliaStorageEntryMetadata entry) {
+        if (!this.contentManager.contains(entry)) {
+            return false;
+        }
+
+        KademliaStorageEntryMetadata current = this.contentManager.get(entry);
+        if (current.isCachedCopy() && !entry.isCachedCopy()) {
+            return false;
+        }
+        if (current.getLastUpdatedTimestamp() != entry.getLastUpdatedTimestamp()) {
+            return current.getLastUpdatedTimestamp() > entry.getLastUpdatedTimestamp();
+        }
+
+        /* Different content with the same timestamp is a conflicting version, not the same one */
+        return current.getContentHash() == entry.getContentHash();
+    }
+
+    @Override
+    public synchronized long getBytesStored() {
+        return this.bytesStored;
+    }
+
     @Override
     public boolean store(KadContent content) throws IOException {
         return this.store(new JKademliaStorageEntry(content));
@@ -119,7 +258,8 @@ public class DHT implements KademliaDHT {
     @Override
     public JKademliaStorageEntry get(KademliaStorageEntryMetadata entry) throws IOException, NoSuchElementException {
         try {
-            return this.retrieve(entry.getKey(), entry.hashCode());
+            KademliaStorageEntryMetadata e = this.contentManager.get(entry);
+            return this.withRemainingTimeToLive(this.retrieve(e.getKey(), e.hashCode()), e);
         } catch (FileNotFoundException e) {
             System.err.println("Error while loading file for content. Message: " + e.getMessage());
         } catch (ClassNotFoundException e) {
@@ -135,7 +275,9 @@ public class DHT implements KademliaDHT {
         /* Load a KadContent if any exist for the given criteria */
         try {
             KademliaStorageEntryMetadata e = this.contentManager.get(param);
-            return this.retrieve(e.getKey(), e.hashCode());
+            JKademliaStorageEntry entry = this.retrieve(e.getKey(), e.hashCode());
+            e.updateLastRead(this.now());
+            return this.withRemainingTimeToLive(entry, e);
         } catch (FileNotFoundException e) {
             System.err.println("Error while loading file for content. Message: " + e.getMessage());
         } catch (ClassNotFoundException e) {
@@ -146,17 +288,33 @@ public class DHT implements KademliaDHT {
         throw new NoSuchElementException();
     }
 
+    /**
+     * The stored file holds the time to live the content was received with; whoever we hand the content to
+     * gets the time it has left on our clock instead.
+     *
+     * @param entry   The entry as read from its file
+     * @param tracked Our metadata of the entry
+     * @return The entry with the time it has left to live
+     */
+    private JKademliaStorageEntry withRemainingTimeToLive(JKademliaStorageEntry entry, KademliaStorageEntryMetadata tracked) {
+        if (tracked.getExpiryTime() == 0) {
+            return entry;
+        }
+        return entry.withTimeToLive(Math.max(1, tracked.getExpiryTime() - this.now()));
+    }
+
     @Override
     public void remove(KadContent content) throws ContentNotFoundException {
         this.remove(new StorageEntryMetadata(content));
     }
 
     @Override
-    public void remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException {
+    public synchronized void remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException {
         String folder = this.getContentStorageFolderName(entry.getKey());
         File file = new File(folder + File.separator + entry.hashCode() + ".kct");
 
-        contentManager.remove(entry);
+        KademliaStorageEntryMetadata removed = contentManager.remove(entry);
+        this.bytesStored -= removed.getSize();
 
         if (file.exists()) {
             file.delete();
@@ -194,10 +352,11 @@ public class DHT implements KademliaDHT {
     }
 
     @Override
-    public void putStorageEntries(List<KademliaStorageEntryMetadata> ientries) {
+    public synchronized void putStorageEntries(List<KademliaStorageEntryMetadata> ientries) {
         for (KademliaStorageEntryMetadata e : ientries) {
             try {
                 this.contentManager.put(e);
+                this.bytesStored += e.getSize();
             } catch (ContentExistException ex) {
                 /* Entry already exist, no need to store it again */
             }
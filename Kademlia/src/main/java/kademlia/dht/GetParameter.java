@@ -2,6 +2,8 @@ package kademlia.dht;
 
 import kademlia.node.KademliaId;
 
+import java.util.Objects;
+
 /**
  * A GET request can get content based on Key, Owner, Type, etc
  * <p>
@@ -95,6 +97,27 @@ public class GetParameter {
         this.type = type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof GetParameter) {
+            GetParameter p = (GetParameter) o;
+            return Objects.equals(this.key, p.key)
+                    && Objects.equals(this.ownerId, p.ownerId)
+                    && Objects.equals(this.type, p.type);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 5;
+        hash = 29 * hash + Objects.hashCode(this.key);
+        hash = 29 * hash + Objects.hashCode(this.ownerId);
+        hash = 29 * hash + Objects.hashCode(this.type);
+        return hash;
+    }
+
     @Override
     public String toString() {
         return "GetParameter - [Key: " + key + "][Owner: " + this.ownerId + "][Type: " + this.type + "]";
@@ -1,5 +1,7 @@
 package kademlia.dht;
 
+import java.util.Arrays;
+
 /**
  * A JKademliaStorageEntry class that is used to store a content on the DHT
  *
@@ -12,14 +14,64 @@ public class JKademliaStorageEntry implements KademliaStorageEntry {
     private byte[] content;
 
     public JKademliaStorageEntry(final KadContent content) {
-        this(content, new StorageEntryMetadata(content));
+        this(content, 0);
+    }
+
+    /**
+     * Create an entry that is dropped by the nodes storing it after some time
+     *
+     * @param content    The content
+     * @param timeToLive How long (in milliseconds) the nodes storing the content keep it
+     */
+    public JKademliaStorageEntry(final KadContent content, final long timeToLive) {
+        this(content, content.toSerializedForm(), timeToLive);
+    }
+
+    private JKademliaStorageEntry(final KadContent content, final byte[] data, final long timeToLive) {
+        this(data, new StorageEntryMetadata(content, Arrays.hashCode(data), timeToLive));
     }
 
     public JKademliaStorageEntry(final KadContent content, final StorageEntryMetadata metadata) {
-        this.setContent(content.toSerializedForm());
+        this(content.toSerializedForm(), metadata);
+    }
+
+    private JKademliaStorageEntry(final byte[] content, final StorageEntryMetadata metadata) {
+        this.setContent(content);
         this.metadata = metadata;
     }
 
+    /**
+     * Create a copy of this entry that can be cached on other nodes for a limited amount of time
+     *
+     * @param timeToLive How long (in milliseconds) the nodes caching the copy keep it
+     * @return The cached copy
+     */
+    public JKademliaStorageEntry cachedCopy(long timeToLive) {
+        return new JKademliaStorageEntry(this.content, new StorageEntryMetadata(this.metadata, timeToLive, true));
+    }
+
+    /**
+     * Create a copy of this entry to send on, with the time it has left to live
+     *
+     * @param timeToLive How long (in milliseconds) the receiving nodes keep the content
+     * @return The copy
+     */
+    JKademliaStorageEntry withTimeToLive(long timeToLive) {
+        return new JKademliaStorageEntry(this.content, new StorageEntryMetadata(this.metadata, timeToLive, this.metadata.isCachedCopy()));
+    }
+
+    /**
+     * Create a copy of this entry that can be handed out without sharing its state, e.g. from a cache
+     *
+     * @return The copy
+     */
+    public JKademliaStorageEntry copy() {
+        KademliaStorageEntryMetadata md = this.metadata;
+        return new JKademliaStorageEntry(this.content.clone(), new StorageEntryMetadata(md.getKey(), md.getOwnerId(), md.getType(),
+                md.getContentHash(), md.getLastUpdatedTimestamp(), md.lastRepublished(), md.getTimeToLive(), md.getExpiryTime(), md.isCachedCopy(),
+                md.getSize(), md.lastRead(), md.isPublished()));
+    }
+
     @Override
     public final byte[] getContent() {
         return this.content;
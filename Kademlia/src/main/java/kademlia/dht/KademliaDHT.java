@@ -3,6 +3,7 @@ package kademlia.dht;
 import kademlia.KadConfiguration;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
+import kademlia.util.Clock;
 import kademlia.util.serializer.KadSerializer;
 
 import java.io.FileNotFoundException;
@@ -30,6 +31,13 @@ public interface KademliaDHT {
      */
     public void setConfiguration(KadConfiguration con);
 
+    /**
+     * Set the clock content expires and is republished by; the system time is used until it is set
+     *
+     * @param clock The clock of the local node
+     */
+    public void setClock(Clock clock);
+
     /**
      * Creates a new Serializer or returns an existing serializer
      *
@@ -46,8 +54,27 @@ public interface KademliaDHT {
      */
     public boolean store(JKademliaStorageEntry content) throws IOException;
 
+    /**
+     * Handle storing content locally
+     *
+     * @param content   The DHT content to store
+     * @param published Whether this node is putting the content itself; such content is never evicted to make room
+     * @return boolean true if we stored the content, false if the content already exists and is up to date
+     * @throws IOException
+     */
+    public boolean store(JKademliaStorageEntry content, boolean published) throws IOException;
+
     public boolean store(KadContent content) throws IOException;
 
+    /**
+     * Check if we store the given content, at the same or a newer version.
+     * A version with the same timestamp only counts if its content hash is the same as well.
+     *
+     * @param entry The metadata of the content
+     * @return Whether the content is stored and up to date; an expired copy, or a cached copy when the original is checked, doesn't count
+     */
+    public boolean hasCurrentVersion(KademliaStorageEntryMetadata entry);
+
     /**
      * Retrieves a Content from local storage
      *
@@ -108,4 +135,9 @@ public interface KademliaDHT {
      */
     public void putStorageEntries(List<KademliaStorageEntryMetadata> ientries);
 
+    /**
+     * @return The total size of the content stored, in bytes
+     */
+    public long getBytesStored();
+
 }
@@ -46,12 +46,77 @@ public interface KademliaStorageEntryMetadata {
     public boolean satisfiesParameters(GetParameter params);
 
     /**
-     * @return The timestamp for the last time this content was republished
+     * @return The timestamp (in milliseconds, on the clock of this node) for the last time this content was republished
      */
     public long lastRepublished();
 
     /**
      * Whenever we republish a content or get this content from the network, we update the last republished time
+     *
+     * @param now The current time (in milliseconds) on the clock of this node
+     */
+    public void updateLastRepublished(long now);
+
+    /**
+     * @return How long (in milliseconds) the content is kept from the moment it was sent on, or 0 if it never expires
+     */
+    public long getTimeToLive();
+
+    /**
+     * @return The time (in milliseconds, on the clock of this node) after which this content is dropped, or 0 if it never expires
+     */
+    public long getExpiryTime();
+
+    /**
+     * Start counting down the time to live of the content, as this node stores it
+     *
+     * @param now The current time (in milliseconds) on the clock of this node
+     */
+    public void startExpiry(long now);
+
+    /**
+     * @param now The current time (in milliseconds) on the clock of this node
+     * @return Whether this content has expired and should no longer be served
+     */
+    public boolean isExpired(long now);
+
+    /**
+     * Content cached along a lookup path is not one of our own replicas;
+     * it is never republished and is dropped once it expires.
+     *
+     * @return Whether this entry is a cached copy of the content
+     */
+    public boolean isCachedCopy();
+
+    /**
+     * @return The number of bytes this content takes up in our storage
+     */
+    public long getSize();
+
+    /**
+     * @param size The number of bytes this content takes up in our storage
+     */
+    public void setSize(long size);
+
+    /**
+     * @return The timestamp (in milliseconds, on the clock of this node) this content was last read from our storage
+     */
+    public long lastRead();
+
+    /**
+     * Whenever this content is read from our storage, we update the last read time
+     *
+     * @param now The current time (in milliseconds) on the clock of this node
+     */
+    public void updateLastRead(long now);
+
+    /**
+     * @return Whether this node put the content itself, rather than storing it for another node
+     */
+    public boolean isPublished();
+
+    /**
+     * @param published Whether this node put the content itself
      */
-    public void updateLastRepublished();
+    public void setPublished(boolean published);
 }
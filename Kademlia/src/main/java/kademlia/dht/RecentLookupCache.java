@@ -0,0 +1,132 @@
+package kademlia.dht;
+
+import kademlia.node.KademliaId;
+import kademlia.util.Clock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small LRU cache of content recently retrieved from the network.
+ * <p>
+ * Hot keys are often requested by many threads within a short time span;
+ * keeping the last results around for a few seconds avoids running a new
+ * ContentLookupOperation for every single one of those requests.
+ * <p>
+ * Entries expire after a fixed time so that updated content is picked up again.
+ * The cache also remembers for which parameters the replicas did not return any content,
+ * so the next reads can skip asking them.
+ * Callers that are about to modify and store the content again should not read it from this cache.
+ * Every caller gets its own copy of a cached entry.
+ */
+public class RecentLookupCache {
+
+    private final int maxSize;
+    private final long timeout;
+    private final Clock clock;
+
+    /* Access ordered, so the eldest entry is always the least recently used one */
+    private final LinkedHashMap<GetParameter, CachedEntry> entries;
+
+    /**
+     * @param maxSize The maximum number of entries to keep; 0 disables the cache
+     * @param timeout How long (in milliseconds) an entry stays valid
+     * @param clock   The clock of the local node
+     */
+    public RecentLookupCache(final int maxSize, long timeout, Clock clock) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<GetParameter, CachedEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GetParameter, CachedEntry> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param param The parameters used to look up the content
+     * @return A copy of the cached entry, or null if there is no (valid) entry for these parameters
+     */
+    public synchronized JKademliaStorageEntry get(GetParameter param) {
+        CachedEntry e = this.entries.get(param);
+        if (e == null) {
+            return null;
+        }
+
+        if (this.clock.currentTimeMillis() - e.cachedAt > this.timeout) {
+            this.entries.remove(param);
+            return null;
+        }
+
+        return e.entry == null ? null : e.entry.copy();
+    }
+
+    /**
+     * @param param The parameters used to look up the content
+     * @return Whether the replicas recently did not return any content for these parameters
+     */
+    public synchronized boolean isRecentMiss(GetParameter param) {
+        CachedEntry e = this.entries.get(param);
+        return e != null && e.entry == null && this.clock.currentTimeMillis() - e.cachedAt <= this.timeout;
+    }
+
+    /**
+     * Cache the result of a lookup
+     *
+     * @param param The parameters used to look up the content
+     * @param entry The content found
+     */
+    public synchronized void put(GetParameter param, JKademliaStorageEntry entry) {
+        if (this.maxSize <= 0) {
+            return;
+        }
+
+        this.entries.put(param, new CachedEntry(entry.copy(), this.clock.currentTimeMillis()));
+    }
+
+    /**
+     * Remember that the replicas did not return any content for some parameters
+     *
+     * @param param The parameters used to look up the content
+     */
+    public synchronized void putMiss(GetParameter param) {
+        if (this.maxSize <= 0) {
+            return;
+        }
+
+        this.entries.put(param, new CachedEntry(null, this.clock.currentTimeMillis()));
+    }
+
+    /**
+     * Remove all cached entries for a given key, e.g. because newer content has been stored for it.
+     *
+     * @param key The key of the content
+     */
+    public synchronized void invalidate(KademliaId key) {
+        Iterator<GetParameter> it = this.entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (key.equals(it.next().getKey())) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    private static class CachedEntry {
+
+        /* Null if the replicas did not return any content */
+        private final JKademliaStorageEntry entry;
+        private final long cachedAt;
+
+        private CachedEntry(JKademliaStorageEntry entry, long cachedAt) {
+            this.entry = entry;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
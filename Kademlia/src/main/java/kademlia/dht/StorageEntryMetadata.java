@@ -19,17 +19,85 @@ public class StorageEntryMetadata implements KademliaStorageEntryMetadata {
     private final int contentHash;
     private final long updatedTs;
 
-    /* This value is the last time this content was last updated from the network */
-    private long lastRepublished;
+    /**
+     * How long (in milliseconds) the content is kept from the moment it is sent on; 0 means the content never expires.
+     * A duration rather than a point in time, so it doesn't matter whether the clocks of the nodes agree.
+     */
+    private final long timeToLive;
+    private final boolean cachedCopy;
+
+    /* Only relevant to the node storing the content, so they're not sent along with it; all on the clock of that node */
+    private transient long expiryTime;
+    private transient long lastRepublished;
+    private transient long size;
+    private transient long lastRead;
+    private transient boolean published;
 
     public StorageEntryMetadata(KadContent content) {
+        this(content, 0);
+    }
+
+    /**
+     * Create the metadata for content that is dropped by the nodes storing it after some time
+     *
+     * @param content    The content
+     * @param timeToLive How long (in milliseconds) the nodes storing the content keep it; 0 if it never expires
+     */
+    public StorageEntryMetadata(KadContent content, long timeToLive) {
+        this(content, content.hashCode(), timeToLive);
+    }
+
+    /**
+     * Create the metadata for content that is about to be stored
+     *
+     * @param content     The content
+     * @param contentHash A hash of the serialized content, which tells apart different contents with the same timestamp
+     * @param timeToLive  How long (in milliseconds) the nodes storing the content keep it; 0 if it never expires
+     */
+    public StorageEntryMetadata(KadContent content, int contentHash, long timeToLive) {
         this.key = content.getKey();
         this.ownerId = content.getOwnerId();
         this.type = content.getType();
-        this.contentHash = content.hashCode();
+        this.contentHash = contentHash;
         this.updatedTs = content.getLastUpdatedTimestamp();
+        this.timeToLive = timeToLive;
+        this.cachedCopy = false;
+    }
 
-        this.lastRepublished = System.currentTimeMillis() / 1000L;
+    /**
+     * Create the metadata to send some content on with, e.g. as a cached copy or with the time it has left to live
+     *
+     * @param original   The metadata of the original content
+     * @param timeToLive How long (in milliseconds) the nodes storing the content keep it; 0 if it never expires
+     * @param cachedCopy Whether the content is sent as a cached copy
+     */
+    public StorageEntryMetadata(KademliaStorageEntryMetadata original, long timeToLive, boolean cachedCopy) {
+        this.key = original.getKey();
+        this.ownerId = original.getOwnerId();
+        this.type = original.getType();
+        this.contentHash = original.getContentHash();
+        this.updatedTs = original.getLastUpdatedTimestamp();
+        this.timeToLive = timeToLive;
+        this.cachedCopy = cachedCopy;
+    }
+
+    /**
+     * Restore the metadata of some content from a saved state
+     */
+    public StorageEntryMetadata(KademliaId key, String ownerId, String type, int contentHash, long updatedTs, long lastRepublished,
+                                long timeToLive, long expiryTime, boolean cachedCopy, long size, long lastRead, boolean published) {
+        this.key = key;
+        this.ownerId = ownerId;
+        this.type = type;
+        this.contentHash = contentHash;
+        this.updatedTs = updatedTs;
+        this.lastRepublished = lastRepublished;
+        this.timeToLive = timeToLive;
+        this.expiryTime = expiryTime;
+        this.cachedCopy = cachedCopy;
+        this.size = size;
+        this.lastRead = lastRead;
+        this.published = published;
     }
 
     @Override
@@ -93,8 +161,63 @@ public class StorageEntryMetadata implements KademliaStorageEntryMetadata {
      * Whenever we republish a content or get this content from the network, we update the last republished time
      */
     @Override
-    public void updateLastRepublished() {
-        this.lastRepublished = System.currentTimeMillis() / 1000L;
+    public void updateLastRepublished(long now) {
+        this.lastRepublished = now;
+    }
+
+    @Override
+    public long getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    @Override
+    public long getExpiryTime() {
+        return this.expiryTime;
+    }
+
+    @Override
+    public void startExpiry(long now) {
+        this.expiryTime = this.timeToLive == 0 ? 0 : now + this.timeToLive;
+    }
+
+    @Override
+    public boolean isExpired(long now) {
+        return this.expiryTime != 0 && this.expiryTime <= now;
+    }
+
+    @Override
+    public boolean isCachedCopy() {
+        return this.cachedCopy;
+    }
+
+    @Override
+    public long getSize() {
+        return this.size;
+    }
+
+    @Override
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    @Override
+    public long lastRead() {
+        return this.lastRead;
+    }
+
+    @Override
+    public void updateLastRead(long now) {
+        this.lastRead = now;
+    }
+
+    @Override
+    public boolean isPublished() {
+        return this.published;
+    }
+
+    @Override
+    public void setPublished(boolean published) {
+        this.published = published;
     }
 
     @Override
@@ -3,6 +3,7 @@ package kademlia.dht;
 import kademlia.exceptions.ContentExistException;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
+import kademlia.util.Clock;
 
 import java.util.*;
 
@@ -17,7 +18,7 @@ import java.util.*;
 class StoredContentManager {
 
     private final Map<KademliaId, List<KademliaStorageEntryMetadata>> entries;
-
+    private Clock clock;    // The clock of the local node, which entries expire by
 
     {
         entries = new HashMap<>();
@@ -37,13 +38,13 @@ class StoredContentManager {
      *
      * @param entry The StorageEntry to store
      */
-    public KademliaStorageEntryMetadata put(KademliaStorageEntryMetadata entry) throws ContentExistException {
+    public synchronized KademliaStorageEntryMetadata put(KademliaStorageEntryMetadata entry) throws ContentExistException {
         if (!this.entries.containsKey(entry.getKey())) {
             this.entries.put(entry.getKey(), new ArrayList<>());
         }
 
-        /* If this entry doesn't already exist, then we add it */
-        if (!this.contains(entry)) {
+        /* If this entry doesn't already exist, then we add it; an expired copy has to be removed first */
+        if (!this.entries.get(entry.getKey()).contains(entry)) {
             this.entries.get(entry.getKey()).add(entry);
 
             return entry;
@@ -62,12 +63,11 @@ class StoredContentManager {
         if (this.entries.containsKey(param.getKey())) {
             /* Content with this key exist, check if any match the rest of the search criteria */
             for (KademliaStorageEntryMetadata e : this.entries.get(param.getKey())) {
-                /* If any entry satisfies the given parameters, return true */
-                if (e.satisfiesParameters(param)) {
+                /* If any entry satisfies the given parameters, return true; expired entries are ignored */
+                if (!e.isExpired(this.now()) && e.satisfiesParameters(param)) {
                     return true;
                 }
             }
-        } else {
         }
         return false;
     }
@@ -92,12 +92,12 @@ class StoredContentManager {
      * @param param The parameters used to search for a content
      * @return List of content for the specific search parameters
      */
-    public KademliaStorageEntryMetadata get(GetParameter param) throws NoSuchElementException {
+    public synchronized KademliaStorageEntryMetadata get(GetParameter param) throws NoSuchElementException {
         if (this.entries.containsKey(param.getKey())) {
             /* Content with this key exist, check if any match the rest of the search criteria */
             for (KademliaStorageEntryMetadata e : this.entries.get(param.getKey())) {
-                /* If any entry satisfies the given parameters, return true */
-                if (e.satisfiesParameters(param)) {
+                /* If any entry satisfies the given parameters, return true; expired entries are ignored */
+                if (!e.isExpired(this.now()) && e.satisfiesParameters(param)) {
                     return e;
                 }
             }
@@ -113,6 +113,19 @@ class StoredContentManager {
         return this.get(new GetParameter(md));
     }
 
+    /**
+     * @param md The metadata of some content
+     * @return Our entry for this content if it has expired, null if we don't have it or it hasn't expired
+     */
+    public synchronized KademliaStorageEntryMetadata getExpired(KademliaStorageEntryMetadata md) {
+        List<KademliaStorageEntryMetadata> entriesForKey = this.entries.get(md.getKey());
+        int index = entriesForKey == null ? -1 : entriesForKey.indexOf(md);
+        if (index < 0 || !entriesForKey.get(index).isExpired(this.now())) {
+            return null;
+        }
+        return entriesForKey.get(index);
+    }
+
     /**
      * @return A list of all storage entries
      */
@@ -128,16 +141,35 @@ class StoredContentManager {
         return entriesRet;
     }
 
-    public void remove(KadContent content) throws ContentNotFoundException {
-        this.remove(new StorageEntryMetadata(content));
+    public KademliaStorageEntryMetadata remove(KadContent content) throws ContentNotFoundException {
+        return this.remove(new StorageEntryMetadata(content));
     }
 
-    public void remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException {
-        if (contains(entry)) {
-            this.entries.get(entry.getKey()).remove(entry);
-        } else {
+    /**
+     * @return The entry that was removed
+     */
+    public synchronized KademliaStorageEntryMetadata remove(KademliaStorageEntryMetadata entry) throws ContentNotFoundException {
+        /* Don't use contains() here, expired entries must be removable as well */
+        List<KademliaStorageEntryMetadata> entriesForKey = this.entries.get(entry.getKey());
+        int index = entriesForKey == null ? -1 : entriesForKey.indexOf(entry);
+        if (index < 0) {
             throw new ContentNotFoundException("This content does not exist in the Storage Entries");
         }
+        return entriesForKey.remove(index);
+    }
+
+    /**
+     * @param clock The clock of the local node
+     */
+    public synchronized void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return The current time in milliseconds
+     */
+    private long now() {
+        return this.clock != null ? this.clock.currentTimeMillis() : System.currentTimeMillis();
     }
 
     @Override
@@ -45,6 +45,10 @@ public class MessageFactory implements KademliaMessageFactory {
                 return new SimpleMessage(in);
             case StoreContentMessage.CODE:
                 return new StoreContentMessage(in);
+            case StoreContentMessage.ACKNOWLEDGED_CODE:
+                return new StoreContentMessage(in, true);
+            case StoreAcknowledgeMessage.CODE:
+                return new StoreAcknowledgeMessage(in);
             default:
                 //System.out.println(this.localNode + " - No Message handler found for message. Code: " + code);
                 return new SimpleMessage(in);
@@ -62,6 +66,7 @@ public class MessageFactory implements KademliaMessageFactory {
             case NodeLookupMessage.CODE:
                 return new NodeLookupReceiver(server, this.localNode, this.config);
             case StoreContentMessage.CODE:
+            case StoreContentMessage.ACKNOWLEDGED_CODE:
                 return new StoreContentReceiver(server, this.localNode, this.dht);
             default:
                 //System.out.println("No receiver found for message. Code: " + code);
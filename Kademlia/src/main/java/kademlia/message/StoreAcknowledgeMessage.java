@@ -0,0 +1,48 @@
+package kademlia.message;
+
+import kademlia.node.Node;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A message used to acknowledge that a node has stored the content of a StoreContentMessage
+ */
+public class StoreAcknowledgeMessage implements Message {
+
+    public static final byte CODE = 0x09;
+    private Node origin;
+
+    public StoreAcknowledgeMessage(Node origin) {
+        this.origin = origin;
+    }
+
+    public StoreAcknowledgeMessage(DataInputStream in) throws IOException {
+        this.fromStream(in);
+    }
+
+    @Override
+    public final void fromStream(DataInputStream in) throws IOException {
+        this.origin = new Node(in);
+    }
+
+    @Override
+    public void toStream(DataOutputStream out) throws IOException {
+        origin.toStream(out);
+    }
+
+    public Node getOrigin() {
+        return this.origin;
+    }
+
+    @Override
+    public byte code() {
+        return CODE;
+    }
+
+    @Override
+    public String toString() {
+        return "StoreAcknowledgeMessage[origin=" + origin.getNodeId() + "]";
+    }
+}
@@ -17,20 +17,43 @@ import java.io.IOException;
 public class StoreContentMessage implements Message {
 
     public static final byte CODE = 0x08;
+    /* A store the receiver should acknowledge; a separate code keeps the message format the same for nodes that don't know it */
+    public static final byte ACKNOWLEDGED_CODE = 0x0A;
 
     private JKademliaStorageEntry content;
     private Node origin;
+    private boolean acknowledge;
 
     /**
      * @param origin  Where the message came from
      * @param content The content to be stored
      */
     public StoreContentMessage(Node origin, JKademliaStorageEntry content) {
+        this(origin, content, false);
+    }
+
+    /**
+     * @param origin      Where the message came from
+     * @param content     The content to be stored
+     * @param acknowledge Whether the receiver should reply with a StoreAcknowledgeMessage once the content is stored
+     */
+    public StoreContentMessage(Node origin, JKademliaStorageEntry content, boolean acknowledge) {
         this.content = content;
         this.origin = origin;
+        this.acknowledge = acknowledge;
     }
 
     public StoreContentMessage(DataInputStream in) throws IOException {
+        this(in, false);
+    }
+
+    /**
+     * @param in          The stream to read the message from
+     * @param acknowledge Whether the message was sent with the ACKNOWLEDGED_CODE
+     * @throws IOException
+     */
+    public StoreContentMessage(DataInputStream in, boolean acknowledge) throws IOException {
+        this.acknowledge = acknowledge;
         this.fromStream(in);
     }
 
@@ -60,9 +83,16 @@ public class StoreContentMessage implements Message {
         return this.content;
     }
 
+    /**
+     * @return Whether the sender wants a StoreAcknowledgeMessage once the content is stored
+     */
+    public boolean isAcknowledgeRequested() {
+        return this.acknowledge;
+    }
+
     @Override
     public byte code() {
-        return CODE;
+        return this.acknowledge ? ACKNOWLEDGED_CODE : CODE;
     }
 
     @Override
@@ -34,7 +34,12 @@ public class StoreContentReceiver implements Receiver {
 
         try {
             /* Store this Content into the DHT */
-            this.dht.store(msg.getContent());
+            boolean isStored = this.dht.store(msg.getContent()) || this.dht.hasCurrentVersion(msg.getContent().getContentMetadata());
+
+            /* Let the sender know the content is stored, whether we already had it or not; content we refused to store is not acknowledged */
+            if (isStored && msg.isAcknowledgeRequested() && this.server.isRunning()) {
+                this.server.reply(msg.getOrigin(), new StoreAcknowledgeMessage(this.localNode.getNode()), comm);
+            }
         } catch (IOException e) {
             System.err.println("Unable to store received content; Message: " + e.getMessage());
         }
@@ -6,6 +6,7 @@ import kademlia.KademliaNode;
 import kademlia.node.KademliaId;
 
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * At each time interval t, nodes need to refresh their K-Buckets
@@ -42,17 +43,19 @@ public class BucketRefreshOperation implements Operation {
             /* Construct a NodeId that is i bits away from the current node Id */
             final KademliaId current = this.localNode.getNode().getNodeId().generateNodeIdByDistance(i);
 
-            /* Run the Node Lookup Operation, each in a different thread to speed up things */
-            new Thread() {
-                @Override
-                public void run() {
+            /* Run the Node Lookup Operations in the background, a few at a time, to speed up things */
+            try {
+                this.server.getLookupExecutor().execute(() -> {
                     try {
-                        new NodeLookupOperation(server, localNode, current, BucketRefreshOperation.this.config).execute();
+                        new NodeLookupOperation(this.server, this.localNode, current, this.config).execute();
                     } catch (IOException e) {
                         //System.err.println("Bucket Refresh Operation Failed. Msg: " + e.getMessage());
                     }
-                }
-            }.start();
+                });
+            } catch (RejectedExecutionException e) {
+                /* The server is shutting down */
+                return;
+            }
         }
     }
 }
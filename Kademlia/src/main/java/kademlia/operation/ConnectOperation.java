@@ -1,7 +1,7 @@
 /**
  * @author Joshua Kissoon
  * @created 20140218
- * @desc Operation that handles connecting to an existing Kademlia network using a bootstrap node
+ * @desc Operation that handles connecting to an existing Kademlia network using one or more bootstrap nodes
  */
 package kademlia.operation;
 
@@ -14,20 +14,38 @@ import kademlia.message.ConnectMessage;
 import kademlia.message.Message;
 import kademlia.message.Receiver;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * All bootstrap nodes are contacted at once, and we continue as soon as any of them responds, so a bootstrap node
+ * that is down doesn't hold up the others. The lookup for our own ID and the refresh of the buckets then run in parallel.
+ */
 public class ConnectOperation implements Operation, Receiver {
 
     public static final int MAX_CONNECT_ATTEMPTS = 5;       // Try 5 times to connect to a node
 
     private final KadServer server;
     private final KademliaNode localNode;
-    private final Node bootstrapNode;
+    private final Set<Node> bootstrapNodes;
     private final KadConfiguration config;
 
+    /* The bootstrap node each connect message in transit was sent to, and how many times we tried each node */
+    private final Map<Integer, Node> messagesTransiting;
+    private final Map<Node, Integer> attempts;
     private boolean error;
-    private int attempts;
+
+    {
+        messagesTransiting = new HashMap<>();
+        attempts = new HashMap<>();
+    }
 
     /**
      * @param server    The message server used to send/receive messages
@@ -36,56 +54,73 @@ public class ConnectOperation implements Operation, Receiver {
      * @param config
      */
     public ConnectOperation(KadServer server, KademliaNode local, Node bootstrap, KadConfiguration config) {
+        this(server, local, Collections.singleton(bootstrap), config);
+    }
+
+    /**
+     * @param server     The message server used to send/receive messages
+     * @param local      The local node
+     * @param bootstraps Nodes to use to bootstrap the local node onto the network; any one of them responding suffices
+     * @param config
+     */
+    public ConnectOperation(KadServer server, KademliaNode local, Collection<Node> bootstraps, KadConfiguration config) {
         this.server = server;
         this.localNode = local;
-        this.bootstrapNode = bootstrap;
+        this.bootstrapNodes = new LinkedHashSet<>(bootstraps);
         this.config = config;
     }
 
     @Override
     public synchronized void execute() throws IOException {
         try {
-            /* Contact the bootstrap node */
+            /* Contact all bootstrap nodes at once */
             this.error = true;
-            this.attempts = 0;
-            Message m = new ConnectMessage(this.localNode.getNode());
-
-            /* Send a connect message to the bootstrap node */
-            server.sendMessage(this.bootstrapNode, m, this);
-
-            /* If we haven't finished as yet, wait for a maximum of config.operationTimeout() time */
-            int totalTimeWaited = 0;
-            int timeInterval = 50;     // We re-check every 300 milliseconds
-            while (totalTimeWaited < this.config.operationTimeout()) {
-                if (error) {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                } else {
-                    break;
-                }
+            this.attempts.clear();
+            for (Node n : this.bootstrapNodes) {
+                this.sendConnectMessage(n);
+            }
+
+            /* Wait until a bootstrap node responded, all of them gave up, or config.operationTimeout() has passed */
+            Clock clock = this.server.getClock();
+            long startTime = clock.currentTimeMillis();
+            long remaining = this.config.operationTimeout();
+            while (this.error && !this.messagesTransiting.isEmpty() && remaining > 0) {
+                clock.waitOn(this, remaining);
+                remaining = this.config.operationTimeout() - (clock.currentTimeMillis() - startTime);
             }
             if (error) {
                 /* If we still haven't received any responses by then, do a routing timeout */
-                throw new RoutingException("ConnectOperation: Bootstrap node did not respond: " + bootstrapNode);
+                throw new RoutingException("ConnectOperation: Bootstrap nodes did not respond: " + this.bootstrapNodes);
             }
 
-            /* Perform lookup for our own ID to get nodes close to us */
-            Operation lookup = new NodeLookupOperation(this.server, this.localNode, this.localNode.getNode().getNodeId(), this.config);
-            lookup.execute();
-
             /**
              * Refresh buckets to get a good routing table
-             * After the above lookup operation, K nodes will be in our routing table,
-             * Now we try to populate all of our buckets.
+             * The bucket refresh runs its lookups in the background, so they populate our buckets
+             * while we perform the lookup for our own ID to get nodes close to us.
              */
             new BucketRefreshOperation(this.server, this.localNode, this.config).execute();
+
+            Operation lookup = new NodeLookupOperation(this.server, this.localNode, this.localNode.getNode().getNodeId(), this.config);
+            lookup.execute();
         } catch (InterruptedException e) {
             System.err.println("Connect operation was interrupted. ");
         }
     }
 
     /**
-     * Receives an AcknowledgeMessage from the bootstrap node.
+     * Send a connect message to a bootstrap node
+     *
+     * @param n The bootstrap node
+     * @throws IOException
+     */
+    private void sendConnectMessage(Node n) throws IOException {
+        this.attempts.merge(n, 1, Integer::sum);
+        int comm = this.server.sendMessage(n, new ConnectMessage(this.localNode.getNode()), this);
+        this.messagesTransiting.put(comm, n);
+    }
+
+    /**
+     * Receives an AcknowledgeMessage from a bootstrap node.
      *
      * @param comm
      */
@@ -95,29 +130,34 @@ public class ConnectOperation implements Operation, Receiver {
         AcknowledgeMessage msg = (AcknowledgeMessage) incoming;
 
         /* The bootstrap node has responded, insert it into our space */
-        this.localNode.getRoutingTable().insert(this.bootstrapNode);
+        Node n = this.messagesTransiting.remove(comm);
+        this.localNode.getRoutingTable().insert(n != null ? n : msg.getOrigin());
 
         /* We got a response, so the error is false */
         error = false;
 
         /* Wake up any waiting thread */
-        notify();
+        this.server.getClock().wakeUp(this);
     }
 
     /**
-     * Resends a ConnectMessage to the boot strap node a maximum of MAX_ATTEMPTS
-     * times.
+     * Resends a ConnectMessage to a bootstrap node that did not respond, a maximum of MAX_ATTEMPTS times per node.
      *
      * @param comm
      * @throws IOException
      */
     @Override
     public synchronized void timeout(int comm) throws IOException {
-        if (++this.attempts < MAX_CONNECT_ATTEMPTS) {
-            this.server.sendMessage(this.bootstrapNode, new ConnectMessage(this.localNode.getNode()), this);
+        Node n = this.messagesTransiting.remove(comm);
+        if (n == null) {
+            return;
+        }
+
+        if (this.error && this.attempts.get(n) < MAX_CONNECT_ATTEMPTS) {
+            this.sendConnectMessage(n);
         } else {
-            /* We just exit, so notify all other threads that are possibly waiting */
-            notify();
+            /* We might have given up on all bootstrap nodes, so notify all other threads that are possibly waiting */
+            this.server.getClock().wakeUp(this);
         }
     }
 }
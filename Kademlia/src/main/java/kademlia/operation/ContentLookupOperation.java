@@ -11,6 +11,7 @@ import kademlia.exceptions.UnknownMessageException;
 import kademlia.message.*;
 import kademlia.node.KeyComparator;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 import kademlia.util.RouteLengthChecker;
 
 import java.io.IOException;
@@ -37,6 +38,8 @@ public class ContentLookupOperation implements Operation, Receiver {
     private final SortedMap<Node, Byte> nodes;
     /* Tracks messages in transit and awaiting reply */
     private final Map<Integer, Node> messagesTransiting;
+    /* When the messages in transit were sent, in nanoseconds */
+    private final Map<Integer, Long> sendTimes;
     /* Used to sort nodes */
     private final Comparator comparator;
     /* Statistical information */
@@ -46,6 +49,7 @@ public class ContentLookupOperation implements Operation, Receiver {
 
     {
         messagesTransiting = new HashMap<>();
+        sendTimes = new HashMap<>();
         isContentFound = false;
         routeLengthChecker = new RouteLengthChecker();
     }
@@ -96,15 +100,12 @@ public class ContentLookupOperation implements Operation, Receiver {
              * If we haven't found the requested amount of content as yet,
              * keey trying until config.operationTimeout() time has expired
              */
-            int totalTimeWaited = 0;
-            int timeInterval = 10;     // We re-check every n milliseconds
-            while (totalTimeWaited < this.config.operationTimeout()) {
-                if (!this.askNodesorFinish() && !isContentFound) {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                } else {
-                    break;
-                }
+            Clock clock = this.server.getClock();
+            long deadline = clock.currentTimeMillis() + this.config.operationTimeout();
+            long remaining;
+            while (!this.askNodesorFinish() && !isContentFound && (remaining = deadline - clock.currentTimeMillis()) > 0) {
+                /* Replies and timeouts wake us up once the content is found or the lookup is finished */
+                clock.waitOn(this, remaining);
             }
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
@@ -137,13 +138,21 @@ public class ContentLookupOperation implements Operation, Receiver {
      * @return <code>true</code> if finished OR <code>false</code> otherwise
      */
     private boolean askNodesorFinish() throws IOException {
+        /**
+         * Messages that did not get a reply within the retransmission timeout of their node are slow;
+         * they don't count towards the concurrency limit anymore, so the next closest node gets asked as well,
+         * while we still wait for the slow reply.
+         */
+        int numSlow = this.numSlowMessages();
+        int numInTransit = this.messagesTransiting.size() - numSlow;
+
         /* If >= CONCURRENCY nodes are in transit, don't do anything */
-        if (this.config.maxConcurrentMessagesTransiting() <= this.messagesTransiting.size()) {
+        if (this.config.maxConcurrentMessagesTransiting() <= numInTransit) {
             return false;
         }
 
-        /* Get unqueried nodes among the K closest seen that have not FAILED */
-        List<Node> unasked = this.closestNodesNotFailed(UNASKED);
+        /* Get unqueried nodes among the K closest seen that have not FAILED, looking one node further for every slow node */
+        List<Node> unasked = this.closestNodesNotFailed(UNASKED, numSlow);
 
         if (unasked.isEmpty() && this.messagesTransiting.isEmpty()) {
             /* We have no unasked nodes nor any messages in transit, we're finished! */
@@ -157,29 +166,47 @@ public class ContentLookupOperation implements Operation, Receiver {
          * Send messages to nodes in the list;
          * making sure than no more than CONCURRENCY messsages are in transit
          */
-        for (int i = 0; (this.messagesTransiting.size() < this.config.maxConcurrentMessagesTransiting()) && (i < unasked.size()); i++) {
+        for (int i = 0; (numInTransit < this.config.maxConcurrentMessagesTransiting()) && (i < unasked.size()); i++) {
             Node n = (Node) unasked.get(i);
 
             int comm = server.sendMessage(n, lookupMessage, this);
 
             this.nodes.put(n, AWAITING);
             this.messagesTransiting.put(comm, n);
+            this.sendTimes.put(comm, this.server.getClock().nanoTime());
+            numInTransit++;
         }
 
         /* We're not finished as yet, return false */
         return false;
     }
 
+    /**
+     * @return The number of messages in transit that have not been replied to within the retransmission timeout of their node
+     */
+    private int numSlowMessages() {
+        long now = this.server.getClock().nanoTime();
+        int numSlow = 0;
+        for (Map.Entry<Integer, Node> e : this.messagesTransiting.entrySet()) {
+            Long sentAt = this.sendTimes.get(e.getKey());
+            if (sentAt != null && now - sentAt > this.server.retransmissionTimeout(e.getValue()) * 1000000L) {
+                numSlow++;
+            }
+        }
+        return numSlow;
+    }
+
     /**
      * Find The K closest nodes to the target lookupId given that have not FAILED.
      * From those K, get those that have the specified status
      *
      * @param status The status of the nodes to return
+     * @param extra  The number of nodes to look beyond the K closest
      * @return A List of the closest nodes
      */
-    private List<Node> closestNodesNotFailed(Byte status) {
-        List<Node> closestNodes = new ArrayList<>(this.config.k());
-        int remainingSpaces = this.config.k();
+    private List<Node> closestNodesNotFailed(Byte status, int extra) {
+        List<Node> closestNodes = new ArrayList<>(this.config.k() + extra);
+        int remainingSpaces = this.config.k() + extra;
 
         for (Map.Entry e : this.nodes.entrySet()) {
             if (!FAILED.equals(e.getValue())) {
@@ -214,6 +241,15 @@ public class ContentLookupOperation implements Operation, Receiver {
             JKademliaStorageEntry content = msg.getContent();
             this.contentFound = content;
             this.isContentFound = true;
+
+            /**
+             * A cached copy can only be replaced by a newer version of the content,
+             * so content without an update timestamp is never cached along the path.
+             */
+            if (this.config.isPathCaching() && content.getContentMetadata().getLastUpdatedTimestamp() > 0) {
+                this.cacheAlongPath(content);
+            }
+            this.server.getClock().wakeUp(this);
         } else {
             /* The reply received is a NodeReplyMessage with nodes closest to the content needed */
             NodeReplyMessage msg = (NodeReplyMessage) incoming;
@@ -227,14 +263,56 @@ public class ContentLookupOperation implements Operation, Receiver {
 
             /* Remove this msg from messagesTransiting since it's completed now */
             this.messagesTransiting.remove(comm);
+            this.sendTimes.remove(comm);
 
             /* Add the received nodes to the routeLengthChecker */
             this.routeLengthChecker.addNodes(msg.getNodes(), origin);
 
             /* Add the received nodes to our nodes list to query */
             this.addNodes(msg.getNodes());
-            this.askNodesorFinish();
+            this.finishIfDone();
+        }
+    }
+
+    /**
+     * As described in the Kademlia paper, store a copy of the found content at the closest node
+     * we asked that did not have it. Popular content will then be found closer to the nodes looking for it.
+     * <p>
+     * To avoid over-caching, the expiry time of the copy is halved for every node
+     * that lies between the caching node and the K closest nodes to the key.
+     *
+     * @param content The content found
+     * @throws IOException
+     */
+    private void cacheAlongPath(JKademliaStorageEntry content) throws IOException {
+        Node cachingNode = null;
+        int closerNodes = 0;
+        for (Map.Entry<Node, Byte> e : this.nodes.entrySet()) {
+            if (FAILED.equals(e.getValue())) {
+                continue;
+            }
+
+            if (ASKED.equals(e.getValue()) && !e.getKey().equals(this.localNode.getNode())) {
+                /* The nodes are sorted by distance, so this is the closest node that replied without the content */
+                cachingNode = e.getKey();
+                break;
+            }
+            closerNodes++;
+        }
+
+        if (cachingNode == null) {
+            return;
+        }
+
+        int halvings = Math.min(Math.max(0, closerNodes - this.config.k()), 30);
+        long timeout = this.config.pathCacheTimeout() >> halvings;
+        if (timeout < 1000L) {
+            /* Not worth caching for less than a second */
+            return;
         }
+
+        Message msg = new StoreContentMessage(this.localNode.getNode(), content.cachedCopy(timeout));
+        this.server.sendMessage(cachingNode, msg, null);
     }
 
     /**
@@ -256,8 +334,20 @@ public class ContentLookupOperation implements Operation, Receiver {
         this.nodes.put(n, FAILED);
         this.localNode.getRoutingTable().setUnresponsiveContact(n);
         this.messagesTransiting.remove(comm);
+        this.sendTimes.remove(comm);
+
+        this.finishIfDone();
+    }
 
-        this.askNodesorFinish();
+    /**
+     * Ask the next nodes, and wake up the thread waiting for the lookup if it is finished
+     *
+     * @throws IOException
+     */
+    private void finishIfDone() throws IOException {
+        if (this.askNodesorFinish()) {
+            this.server.getClock().wakeUp(this);
+        }
     }
 
     /**
@@ -47,17 +47,33 @@ public class ContentRefreshOperation implements Operation {
         List<KademliaStorageEntryMetadata> entries = this.dht.getStorageEntries();
 
         /* If a content was last republished before this time, then we need to republish it */
-        final long minRepublishTime = (System.currentTimeMillis() / 1000L) - this.config.restoreInterval();
+        final long now = this.server.getClock().currentTimeMillis();
+        final long minRepublishTime = now - this.config.restoreInterval();
 
         /* For each storage entry, distribute it */
         for (KademliaStorageEntryMetadata e : entries) {
+            /* Drop content that has expired */
+            if (e.isExpired(now)) {
+                try {
+                    this.dht.remove(e);
+                } catch (ContentNotFoundException cnfe) {
+                    System.err.println("ContentRefreshOperation: Removing expired content, content not found... Message: " + cnfe.getMessage());
+                }
+                continue;
+            }
+
+            /* Cached copies are never republished, they are only kept until they expire */
+            if (e.isCachedCopy()) {
+                continue;
+            }
+
             /* Check last update time of this entry and only distribute it if it has been last updated > 1 hour ago */
             if (e.lastRepublished() > minRepublishTime) {
                 continue;
             }
 
             /* Set that this content is now republished */
-            e.updateLastRepublished();
+            e.updateLastRepublished(now);
 
             /* Get the K closest nodes to this entries */
             List<Node> closestNodes = this.localNode.getRoutingTable().findClosest(e.getKey(), this.config.k());
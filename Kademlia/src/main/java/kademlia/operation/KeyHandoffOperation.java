@@ -0,0 +1,178 @@
+package kademlia.operation;
+
+import kademlia.KadConfiguration;
+import kademlia.KadServer;
+import kademlia.KademliaNode;
+import kademlia.dht.KademliaDHT;
+import kademlia.dht.KademliaStorageEntryMetadata;
+import kademlia.message.Message;
+import kademlia.message.Receiver;
+import kademlia.message.StoreContentMessage;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
+import kademlia.node.Node;
+import kademlia.util.Clock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Hands content over to nodes that just joined the part of the key space the content belongs to.
+ * <p>
+ * A new node is responsible for the keys it is among the K closest nodes to, but holds none of that content
+ * until the next ContentRefreshOperation. This operation sends every entry we store, for which a new node is
+ * among the K closest nodes and closer to the key than we are, to that node right away.
+ * <p>
+ * Entries are sent in batches; the next batch is only sent once every node acknowledged (or timed out on)
+ * the previous one, so that a large handoff doesn't flood the new node. We keep our own copy; the
+ * ContentRefreshOperation decides when we're no longer responsible for it.
+ */
+public class KeyHandoffOperation implements Operation, Receiver {
+
+    private final KadServer server;
+    private final KademliaNode localNode;
+    private final KademliaDHT dht;
+    private final KadConfiguration config;
+    private final Set<Node> newNodes;
+
+    /* Store messages of the current batch awaiting an acknowledgement */
+    private final Set<Integer> messagesTransiting;
+    private int numHandedOff;
+
+    {
+        messagesTransiting = new HashSet<>();
+        numHandedOff = 0;
+    }
+
+    /**
+     * @param server
+     * @param localNode
+     * @param dht       The local DHT
+     * @param newNodes  The nodes that were just added to the routing table
+     * @param config
+     */
+    public KeyHandoffOperation(KadServer server, KademliaNode localNode, KademliaDHT dht, Collection<Node> newNodes, KadConfiguration config) {
+        this.server = server;
+        this.localNode = localNode;
+        this.dht = dht;
+        this.newNodes = new HashSet<>(newNodes);
+        this.config = config;
+    }
+
+    @Override
+    public synchronized void execute() throws IOException {
+        this.newNodes.remove(this.localNode.getNode());
+        if (this.newNodes.isEmpty()) {
+            return;
+        }
+
+        List<Handoff> batch = new ArrayList<>();
+        long now = this.server.getClock().currentTimeMillis();
+        for (KademliaStorageEntryMetadata e : this.dht.getStorageEntries()) {
+            /* Cached copies are not ours to hand over */
+            if (e.isCachedCopy() || e.isExpired(now)) {
+                continue;
+            }
+
+            for (Node n : this.nodesToHandOffTo(e.getKey())) {
+                batch.add(new Handoff(n, e));
+            }
+
+            if (batch.size() >= this.config.handoffBatchSize()) {
+                this.sendBatch(batch);
+                batch.clear();
+            }
+        }
+
+        this.sendBatch(batch);
+    }
+
+    /**
+     * @param key The key of some content we store
+     * @return The new nodes that are among the K closest nodes to the key, and closer to it than we are
+     */
+    private List<Node> nodesToHandOffTo(KademliaId key) {
+        List<Node> result = new ArrayList<>();
+        List<Node> closestNodes = null;
+        KeyComparator comparator = new KeyComparator(key);
+
+        for (Node n : this.newNodes) {
+            if (comparator.compare(n, this.localNode.getNode()) >= 0) {
+                continue;
+            }
+
+            if (closestNodes == null) {
+                closestNodes = this.localNode.getRoutingTable().findClosest(key, this.config.k());
+            }
+            if (closestNodes.contains(n)) {
+                result.add(n);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Send a batch of entries, and wait until they have all been acknowledged or timed out
+     */
+    private void sendBatch(List<Handoff> batch) throws IOException {
+        for (Handoff h : batch) {
+            try {
+                Message msg = new StoreContentMessage(this.localNode.getNode(), this.dht.get(h.entry), true);
+                this.messagesTransiting.add(this.server.sendMessage(h.to, msg, this));
+                this.numHandedOff++;
+            } catch (NoSuchElementException e) {
+                /* The content was removed in the meantime */
+            }
+        }
+
+        try {
+            Clock clock = this.server.getClock();
+            long deadline = clock.currentTimeMillis() + this.config.operationTimeout();
+            long remaining;
+            while (!this.messagesTransiting.isEmpty() && (remaining = deadline - clock.currentTimeMillis()) > 0) {
+                clock.waitOn(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.messagesTransiting.clear();
+    }
+
+    @Override
+    public synchronized void receive(Message incoming, int comm) {
+        if (this.messagesTransiting.remove(comm)) {
+            this.server.getClock().wakeUp(this);
+        }
+    }
+
+    @Override
+    public synchronized void timeout(int comm) {
+        if (this.messagesTransiting.remove(comm)) {
+            this.server.getClock().wakeUp(this);
+        }
+    }
+
+    /**
+     * @return The number of entries sent to new nodes
+     */
+    public synchronized int numHandedOff() {
+        return this.numHandedOff;
+    }
+
+    private static class Handoff {
+
+        private final Node to;
+        private final KademliaStorageEntryMetadata entry;
+
+        private Handoff(Node to, KademliaStorageEntryMetadata entry) {
+            this.to = to;
+            this.entry = entry;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import kademlia.message.Receiver;
 import kademlia.node.KademliaId;
 import kademlia.node.KeyComparator;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.io.IOException;
 import java.util.*;
@@ -40,6 +41,8 @@ public class NodeLookupOperation implements Operation, Receiver {
 
     /* Tracks messages in transit and awaiting reply */
     private final Map<Integer, Node> messagesTransiting;
+    /* When the messages in transit were sent, in nanoseconds */
+    private final Map<Integer, Long> sendTimes;
 
     /* Used to sort nodes */
     private final Comparator comparator;
@@ -47,6 +50,7 @@ public class NodeLookupOperation implements Operation, Receiver {
 
     {
         messagesTransiting = new HashMap<>();
+        sendTimes = new HashMap<>();
     }
 
     /**
@@ -87,15 +91,12 @@ public class NodeLookupOperation implements Operation, Receiver {
             this.addNodes(this.localNode.getRoutingTable().getAllNodes());
 
             /* If we haven't finished as yet, wait for a maximum of config.operationTimeout() time */
-            int totalTimeWaited = 0;
-            int timeInterval = 10;     // We re-check every n milliseconds
-            while (totalTimeWaited < this.config.operationTimeout()) {
-                if (!this.askNodesorFinish()) {
-                    wait(timeInterval);
-                    totalTimeWaited += timeInterval;
-                } else {
-                    break;
-                }
+            Clock clock = this.server.getClock();
+            long deadline = clock.currentTimeMillis() + this.config.operationTimeout();
+            long remaining;
+            while (!this.askNodesorFinish() && (remaining = deadline - clock.currentTimeMillis()) > 0) {
+                /* Replies and timeouts wake us up once the lookup is finished */
+                clock.waitOn(this, remaining);
             }
 
             /* Now after we've finished, we would have an idea of offline nodes, lets update our routing table */
@@ -136,13 +137,21 @@ public class NodeLookupOperation implements Operation, Receiver {
      * @return <code>true</code> if finished OR <code>false</code> otherwise
      */
     private boolean askNodesorFinish() throws IOException {
+        /**
+         * Messages that did not get a reply within the retransmission timeout of their node are slow;
+         * they don't count towards the concurrency limit anymore, so the next closest node gets asked as well,
+         * while we still wait for the slow reply.
+         */
+        int numSlow = this.numSlowMessages();
+        int numInTransit = this.messagesTransiting.size() - numSlow;
+
         /* If >= CONCURRENCY nodes are in transit, don't do anything */
-        if (this.config.maxConcurrentMessagesTransiting() <= this.messagesTransiting.size()) {
+        if (this.config.maxConcurrentMessagesTransiting() <= numInTransit) {
             return false;
         }
 
-        /* Get unqueried nodes among the K closest seen that have not FAILED */
-        List<Node> unasked = this.closestNodesNotFailed(UNASKED);
+        /* Get unqueried nodes among the K closest seen that have not FAILED, looking one node further for every slow node */
+        List<Node> unasked = this.closestNodesNotFailed(UNASKED, numSlow);
 
         if (unasked.isEmpty() && this.messagesTransiting.isEmpty()) {
             /* We have no unasked nodes nor any messages in transit, we're finished! */
@@ -153,13 +162,15 @@ public class NodeLookupOperation implements Operation, Receiver {
          * Send messages to nodes in the list;
          * making sure than no more than CONCURRENCY messsages are in transit
          */
-        for (int i = 0; (this.messagesTransiting.size() < this.config.maxConcurrentMessagesTransiting()) && (i < unasked.size()); i++) {
+        for (int i = 0; (numInTransit < this.config.maxConcurrentMessagesTransiting()) && (i < unasked.size()); i++) {
             Node n = (Node) unasked.get(i);
 
             int comm = server.sendMessage(n, lookupMessage, this);
 
             this.nodes.put(n, AWAITING);
             this.messagesTransiting.put(comm, n);
+            this.sendTimes.put(comm, this.server.getClock().nanoTime());
+            numInTransit++;
         }
 
         /* We're not finished as yet, return false */
@@ -187,16 +198,32 @@ public class NodeLookupOperation implements Operation, Receiver {
         return closestNodes;
     }
 
+    /**
+     * @return The number of messages in transit that have not been replied to within the retransmission timeout of their node
+     */
+    private int numSlowMessages() {
+        long now = this.server.getClock().nanoTime();
+        int numSlow = 0;
+        for (Map.Entry<Integer, Node> e : this.messagesTransiting.entrySet()) {
+            Long sentAt = this.sendTimes.get(e.getKey());
+            if (sentAt != null && now - sentAt > this.server.retransmissionTimeout(e.getValue()) * 1000000L) {
+                numSlow++;
+            }
+        }
+        return numSlow;
+    }
+
     /**
      * Find The K closest nodes to the target lookupId given that have not FAILED.
      * From those K, get those that have the specified status
      *
      * @param status The status of the nodes to return
+     * @param extra  The number of nodes to look beyond the K closest
      * @return A List of the closest nodes
      */
-    private List<Node> closestNodesNotFailed(String status) {
-        List<Node> closestNodes = new ArrayList<>(this.config.k());
-        int remainingSpaces = this.config.k();
+    private List<Node> closestNodesNotFailed(String status, int extra) {
+        List<Node> closestNodes = new ArrayList<>(this.config.k() + extra);
+        int remainingSpaces = this.config.k() + extra;
 
         for (Map.Entry<Node, String> e : this.nodes.entrySet()) {
             if (!FAILED.equals(e.getValue())) {
@@ -238,10 +265,11 @@ public class NodeLookupOperation implements Operation, Receiver {
 
         /* Remove this msg from messagesTransiting since it's completed now */
         this.messagesTransiting.remove(comm);
+        this.sendTimes.remove(comm);
 
         /* Add the received nodes to our nodes list to query */
         this.addNodes(msg.getNodes());
-        this.askNodesorFinish();
+        this.finishIfDone();
     }
 
     /**
@@ -263,8 +291,20 @@ public class NodeLookupOperation implements Operation, Receiver {
         this.nodes.put(n, FAILED);
         this.localNode.getRoutingTable().setUnresponsiveContact(n);
         this.messagesTransiting.remove(comm);
+        this.sendTimes.remove(comm);
+
+        this.finishIfDone();
+    }
 
-        this.askNodesorFinish();
+    /**
+     * Ask the next nodes, and wake up the thread waiting for the lookup if it is finished
+     *
+     * @throws IOException
+     */
+    private void finishIfDone() throws IOException {
+        if (this.askNodesorFinish()) {
+            this.server.getClock().wakeUp(this);
+        }
     }
 
     public List<Node> getFailedNodes() {
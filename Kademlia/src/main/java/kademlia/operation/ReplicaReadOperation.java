@@ -0,0 +1,214 @@
+package kademlia.operation;
+
+import kademlia.KadConfiguration;
+import kademlia.KadServer;
+import kademlia.KademliaNode;
+import kademlia.dht.GetParameter;
+import kademlia.dht.JKademliaStorageEntry;
+import kademlia.exceptions.ContentNotFoundException;
+import kademlia.message.ContentLookupMessage;
+import kademlia.message.ContentMessage;
+import kademlia.message.Message;
+import kademlia.message.NodeReplyMessage;
+import kademlia.message.Receiver;
+import kademlia.node.Node;
+import kademlia.util.Clock;
+import kademlia.util.LatencyWindow;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads content directly from the nodes that should be storing it, instead of routing towards them.
+ * <p>
+ * Once the K closest nodes to a key are known, there is no need for the iterative rounds of a ContentLookupOperation:
+ * this operation asks a number of those replicas in parallel and takes the first valid response.
+ * Another replica is only asked when one of them doesn't have the content, fails to respond, or when no response
+ * arrived within a percentile of the latencies of previous replica reads (hedging).
+ * <p>
+ * Since the closest replicas are asked first, the operation gives up as soon as as many replicas as are asked in parallel
+ * replied that they don't have the content. If none of the replicas returns the content, the caller should fall back
+ * to a ContentLookupOperation.
+ */
+public class ReplicaReadOperation implements Operation, Receiver {
+
+    private final KadServer server;
+    private final Clock clock;
+    private final KademliaNode localNode;
+    private final KadConfiguration config;
+    private final GetParameter params;
+    private final ContentLookupMessage lookupMessage;
+    private final List<Node> replicas;
+    private final LatencyWindow latencies;
+
+    /* Tracks messages in transit and awaiting reply */
+    private final Map<Integer, Node> messagesTransiting;
+    private int nextReplica;
+    private int misses;
+    private boolean isFinished;
+    private long lastSendTime;
+    private JKademliaStorageEntry contentFound = null;
+    private boolean isContentFound;
+
+    {
+        messagesTransiting = new HashMap<>();
+        nextReplica = 0;
+        misses = 0;
+        isFinished = false;
+        isContentFound = false;
+    }
+
+    /**
+     * @param server
+     * @param localNode
+     * @param params    The parameters to search for the content which we need to find
+     * @param replicas  The nodes that should be storing the content, closest first
+     * @param latencies Latencies of previous replica reads, used to decide when to hedge; updated by this operation
+     * @param config
+     */
+    public ReplicaReadOperation(KadServer server, KademliaNode localNode, GetParameter params, List<Node> replicas, LatencyWindow latencies, KadConfiguration config) {
+        this.server = server;
+        this.clock = server.getClock();
+        this.localNode = localNode;
+        this.config = config;
+        this.params = params;
+        this.lookupMessage = new ContentLookupMessage(localNode.getNode(), params);
+        this.replicas = replicas;
+        this.latencies = latencies;
+    }
+
+    @Override
+    public synchronized void execute() throws IOException {
+        try {
+            long startTime = this.clock.currentTimeMillis();
+
+            /* Ask the first replicas in parallel */
+            for (int i = 0; i < this.config.replicaReadParallelism(); i++) {
+                this.askNextReplica();
+            }
+
+            long hedgeDelay = this.hedgeDelay();
+            long deadline = startTime + this.config.operationTimeout();
+            while (!this.isContentFound && !this.messagesTransiting.isEmpty() && this.misses < this.config.replicaReadParallelism()
+                    && this.clock.currentTimeMillis() < deadline) {
+                /* The replicas asked so far are slow, hedge by asking another one */
+                if (this.clock.currentTimeMillis() - this.lastSendTime >= hedgeDelay) {
+                    this.askNextReplica();
+                }
+                /* Wait for a reply, or until it is time to hedge again */
+                long wakeupTime = this.nextReplica < this.replicas.size() ? Math.min(this.lastSendTime + hedgeDelay, deadline) : deadline;
+                this.clock.waitOn(this, Math.max(1, wakeupTime - this.clock.currentTimeMillis()));
+            }
+
+            if (this.isContentFound) {
+                this.latencies.add(this.clock.currentTimeMillis() - startTime);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            /* Late replies should not make us ask any more replicas */
+            this.isFinished = true;
+        }
+    }
+
+    /**
+     * @return How long to wait for a response before hedging, in milliseconds
+     */
+    private long hedgeDelay() {
+        if (this.latencies.isEmpty()) {
+            /* No previous reads to go by, use the retransmission timeout of the closest replica */
+            return this.replicas.isEmpty() ? this.config.responseTimeout() : this.server.retransmissionTimeout(this.replicas.get(0));
+        }
+        return Math.max(1, this.latencies.percentile(this.config.replicaReadHedgePercentile()));
+    }
+
+    /**
+     * Send the lookup message to the next replica that has not been asked yet, if any
+     */
+    private void askNextReplica() throws IOException {
+        if (this.nextReplica >= this.replicas.size()) {
+            return;
+        }
+
+        /* Any replica beyond the ones asked in parallel is asked because another one missed or was late */
+        if (this.nextReplica >= this.config.replicaReadParallelism()) {
+            this.localNode.getStatistician().addRetry("replicaRead");
+        }
+
+        Node n = this.replicas.get(this.nextReplica++);
+        int comm = this.server.sendMessage(n, this.lookupMessage, this);
+        this.messagesTransiting.put(comm, n);
+        this.lastSendTime = this.clock.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void receive(Message incoming, int comm) throws IOException {
+        if (this.isFinished || this.isContentFound || this.messagesTransiting.remove(comm) == null) {
+            return;
+        }
+
+        if (incoming instanceof ContentMessage) {
+            ContentMessage msg = (ContentMessage) incoming;
+            this.localNode.getRoutingTable().insert(msg.getOrigin());
+
+            /* Only take in the content if it is what we asked for */
+            JKademliaStorageEntry content = msg.getContent();
+            if (content != null && content.getContentMetadata().satisfiesParameters(this.params)) {
+                this.contentFound = content;
+                this.isContentFound = true;
+                this.clock.wakeUp(this);
+                return;
+            }
+        } else if (incoming instanceof NodeReplyMessage) {
+            /* This replica does not have the content */
+            this.localNode.getRoutingTable().insert(((NodeReplyMessage) incoming).getOrigin());
+            if (++this.misses >= this.config.replicaReadParallelism()) {
+                /* The closest replicas don't have it, the others are unlikely to */
+                this.clock.wakeUp(this);
+                return;
+            }
+        }
+
+        this.askNextReplica();
+    }
+
+    /**
+     * A replica does not respond or a packet was lost, ask the next one
+     *
+     * @param comm
+     * @throws IOException
+     */
+    @Override
+    public synchronized void timeout(int comm) throws IOException {
+        Node n = this.messagesTransiting.remove(comm);
+        if (n == null) {
+            return;
+        }
+
+        this.localNode.getRoutingTable().setUnresponsiveContact(n);
+        if (!this.isFinished && !this.isContentFound) {
+            this.askNextReplica();
+        }
+    }
+
+    /**
+     * @return Whether the content was found or not.
+     */
+    public synchronized boolean isContentFound() {
+        return this.isContentFound;
+    }
+
+    /**
+     * @return The content found
+     * @throws ContentNotFoundException
+     */
+    public synchronized JKademliaStorageEntry getContentFound() throws ContentNotFoundException {
+        if (this.isContentFound) {
+            return this.contentFound;
+        } else {
+            throw new ContentNotFoundException("No replica returned a value for the given key.");
+        }
+    }
+}
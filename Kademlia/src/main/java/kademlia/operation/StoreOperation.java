@@ -5,26 +5,52 @@ import kademlia.KadServer;
 import kademlia.KademliaNode;
 import kademlia.dht.JKademliaStorageEntry;
 import kademlia.dht.KademliaDHT;
+import kademlia.exceptions.RoutingException;
 import kademlia.message.Message;
+import kademlia.message.Receiver;
+import kademlia.message.StoreAcknowledgeMessage;
 import kademlia.message.StoreContentMessage;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Operation that stores a DHT Content onto the K closest nodes to the content Key
+ * <p>
+ * Every node acknowledges that it stored the content; nodes that refuse to store it don't reply. Callers that want to know when
+ * a given number of replicas (the write quorum) is durable can wait on getQuorumFuture();
+ * the remaining replicas keep being stored in the background.
  *
  * @author Joshua Kissoon
  * @since 20140224
  */
-public class StoreOperation implements Operation {
+public class StoreOperation implements Operation, Receiver {
 
     private final KadServer server;
     private final KademliaNode localNode;
     private final JKademliaStorageEntry storageEntry;
     private final KademliaDHT localDht;
     private final KadConfiguration config;
+    private final int writeQuorum;
+
+    /* Completed with the number of replicas as soon as the write quorum is reached */
+    private final CompletableFuture<Integer> quorumFuture;
+
+    /* Tracks store messages awaiting an acknowledgement */
+    private final Map<Integer, Node> messagesTransiting;
+    private int numStoredAt;
+
+
+    {
+        quorumFuture = new CompletableFuture<>();
+        messagesTransiting = new HashMap<>();
+        numStoredAt = 0;
+    }
 
     /**
      * @param server
@@ -34,42 +60,133 @@ public class StoreOperation implements Operation {
      * @param config
      */
     public StoreOperation(KadServer server, KademliaNode localNode, JKademliaStorageEntry storageEntry, KademliaDHT localDht, KadConfiguration config) {
+        this(server, localNode, storageEntry, localDht, config, 1);
+    }
+
+    /**
+     * @param server
+     * @param localNode
+     * @param storageEntry The content to be stored on the DHT
+     * @param localDht     The local DHT
+     * @param config
+     * @param writeQuorum  The number of nodes that need to acknowledge the store before the quorum future completes
+     */
+    public StoreOperation(KadServer server, KademliaNode localNode, JKademliaStorageEntry storageEntry, KademliaDHT localDht, KadConfiguration config, int writeQuorum) {
         this.server = server;
         this.localNode = localNode;
         this.storageEntry = storageEntry;
         this.localDht = localDht;
         this.config = config;
+        this.writeQuorum = writeQuorum;
     }
 
     @Override
     public synchronized void execute() throws IOException {
-        /* Get the nodes on which we need to store the content */
-        NodeLookupOperation ndlo = new NodeLookupOperation(this.server, this.localNode, this.storageEntry.getContentMetadata().getKey(), this.config);
-        ndlo.execute();
-        List<Node> nodes = ndlo.getClosestNodes();
-
-        /* Create the message */
-        Message msg = new StoreContentMessage(this.localNode.getNode(), this.storageEntry);
-
-        /*Store the message on all of the K-Nodes*/
-        for (Node n : nodes) {
-            if (n.equals(this.localNode.getNode())) {
-                /* Store the content locally */
-                this.localDht.store(this.storageEntry);
-            } else {
-                /**
-                 * @todo Create a receiver that receives a store acknowledgement message to count how many nodes a content have been stored at
-                 */
-                this.server.sendMessage(n, msg, null);
+        try {
+            /* Get the nodes on which we need to store the content */
+            NodeLookupOperation ndlo = new NodeLookupOperation(this.server, this.localNode, this.storageEntry.getContentMetadata().getKey(), this.config);
+            ndlo.execute();
+            List<Node> nodes = ndlo.getClosestNodes();
+
+            /* Create the message */
+            Message msg = new StoreContentMessage(this.localNode.getNode(), this.storageEntry, true);
+
+            /*Store the message on all of the K-Nodes*/
+            for (Node n : nodes) {
+                if (n.equals(this.localNode.getNode())) {
+                    /* Store the content locally; we're putting it ourselves, so it is ours */
+                    if (this.localDht.store(this.storageEntry, true) || this.localDht.hasCurrentVersion(this.storageEntry.getContentMetadata())) {
+                        this.numStoredAt++;
+                    }
+                } else {
+                    int comm = this.server.sendMessage(n, msg, this);
+                    this.messagesTransiting.put(comm, n);
+                }
             }
+        } catch (IOException | RuntimeException e) {
+            this.quorumFuture.completeExceptionally(e);
+            throw e;
+        }
+
+        this.checkQuorum();
+    }
+
+    /**
+     * Complete the quorum future if the write quorum has been reached, or if it can't be reached anymore
+     */
+    private void checkQuorum() {
+        if (this.quorumFuture.isDone()) {
+            return;
+        }
+
+        if (this.numStoredAt >= this.writeQuorum) {
+            this.quorumFuture.complete(this.numStoredAt);
+        } else if (this.messagesTransiting.isEmpty()) {
+            this.quorumFuture.completeExceptionally(new RoutingException(
+                    "Content stored at " + this.numStoredAt + " nodes; write quorum of " + this.writeQuorum + " not reached."));
+        }
+    }
+
+    /**
+     * Receives a StoreAcknowledgeMessage from a node that stored the content
+     *
+     * @param comm
+     */
+    @Override
+    public synchronized void receive(Message incoming, int comm) {
+        if (!(incoming instanceof StoreAcknowledgeMessage)) {
+            return;
+        }
+
+        if (this.messagesTransiting.remove(comm) != null) {
+            this.numStoredAt++;
+            this.checkQuorum();
+            this.server.getClock().wakeUp(this);
+        }
+    }
+
+    /**
+     * A node did not acknowledge the store in time; we just stop waiting for it
+     *
+     * @param comm
+     */
+    @Override
+    public synchronized void timeout(int comm) {
+        if (this.messagesTransiting.remove(comm) != null) {
+            this.checkQuorum();
+            this.server.getClock().wakeUp(this);
+        }
+    }
+
+    /**
+     * @return The number of nodes that have acknowledged storing this content so far
+     */
+    public synchronized int numNodesStoredAt() {
+        return this.numStoredAt;
+    }
+
+    /**
+     * Wait until every node the content was sent to acknowledged storing it or timed out,
+     * for at most the operation timeout
+     *
+     * @return The number of nodes that have acknowledged storing this content
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public synchronized int awaitAcknowledgements() throws InterruptedException {
+        Clock clock = this.server.getClock();
+        long deadline = clock.currentTimeMillis() + this.config.operationTimeout();
+        long remaining;
+        while (!this.messagesTransiting.isEmpty() && (remaining = deadline - clock.currentTimeMillis()) > 0) {
+            clock.waitOn(this, remaining);
         }
+        return this.numStoredAt;
     }
 
     /**
-     * @return The number of nodes that have stored this content
-     * @todo Implement this method
+     * @return A future that completes with the number of nodes the content was stored at as soon as the write quorum is reached,
+     * or completes exceptionally with a RoutingException if the write quorum can't be reached
      */
-    public int numNodesStoredAt() {
-        return 1;
+    public CompletableFuture<Integer> getQuorumFuture() {
+        return this.quorumFuture;
     }
 }
@@ -27,6 +27,9 @@ public class Contact implements Comparable<Contact> {
      */
     private int staleCount;
 
+    /* Round trip time measurements for requests sent to this contact */
+    private RoundTripTimeEstimator rttEstimator;
+
     /**
      * Create a contact object
      *
@@ -35,6 +38,31 @@ public class Contact implements Comparable<Contact> {
     public Contact(Node n) {
         this.n = n;
         this.lastSeen = System.currentTimeMillis() / 1000L;
+        this.rttEstimator = new RoundTripTimeEstimator();
+    }
+
+    /**
+     * Create a contact object seen at a given time
+     *
+     * @param n        The node associated with this contact
+     * @param lastSeen The time the contact was seen, in seconds
+     */
+    public Contact(Node n, long lastSeen) {
+        this(n);
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Restore a contact from a saved state
+     *
+     * @param n          The node associated with this contact
+     * @param lastSeen   The last time this contact was seen
+     * @param staleCount The number of times this contact failed to respond
+     */
+    public Contact(Node n, long lastSeen, int staleCount) {
+        this(n);
+        this.lastSeen = lastSeen;
+        this.staleCount = staleCount;
     }
 
     public Node getNode() {
@@ -49,6 +77,15 @@ public class Contact implements Comparable<Contact> {
         this.lastSeen = System.currentTimeMillis() / 1000L;
     }
 
+    /**
+     * Update the last seen timestamp of this contact to a given time, e.g. taken from the clock of the node
+     *
+     * @param time The time the contact was seen, in seconds
+     */
+    public void setSeen(long time) {
+        this.lastSeen = time;
+    }
+
     /**
      * When last was this contact seen?
      *
@@ -58,6 +95,17 @@ public class Contact implements Comparable<Contact> {
         return this.lastSeen;
     }
 
+    /**
+     * @return The round trip time estimator for this contact
+     */
+    public synchronized RoundTripTimeEstimator getRttEstimator() {
+        /* Contacts loaded from a saved state may not have an estimator yet */
+        if (this.rttEstimator == null) {
+            this.rttEstimator = new RoundTripTimeEstimator();
+        }
+        return this.rttEstimator;
+    }
+
     @Override
     public boolean equals(Object c) {
         if (c instanceof Contact) {
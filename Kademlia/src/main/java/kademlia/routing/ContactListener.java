@@ -0,0 +1,18 @@
+package kademlia.routing;
+
+import kademlia.node.Node;
+
+/**
+ * Gets notified when a routing table learns about a new contact.
+ * <p>
+ * Listeners are called while the routing table is locked, so they should hand off any real work to another thread.
+ */
+public interface ContactListener {
+
+    /**
+     * A node that was not in the routing table has been added to one of its buckets
+     *
+     * @param n The new node
+     */
+    public void contactAdded(Node n);
+}
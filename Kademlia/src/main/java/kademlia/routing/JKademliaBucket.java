@@ -2,6 +2,7 @@ package kademlia.routing;
 
 import kademlia.KadConfiguration;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +28,8 @@ public class JKademliaBucket implements KademliaBucket {
 
     private final KadConfiguration config;
 
+    /* Timestamps contacts when they are seen, null to use the system time */
+    private Clock clock;
 
     {
         contacts = new TreeSet<>();
@@ -50,7 +53,7 @@ public class JKademliaBucket implements KademliaBucket {
              * We need to remove and re-add the contact to get the Sorted Set to update sort order
              */
             Contact tmp = this.removeFromContacts(c.getNode());
-            tmp.setSeenNow();
+            tmp.setSeen(this.now());
             tmp.resetStaleCount();
             this.contacts.add(tmp);
         } else {
@@ -85,7 +88,7 @@ public class JKademliaBucket implements KademliaBucket {
 
     @Override
     public synchronized void insert(Node n) {
-        this.insert(new Contact(n));
+        this.insert(new Contact(n, this.now()));
     }
 
     @Override
@@ -98,6 +101,28 @@ public class JKademliaBucket implements KademliaBucket {
         return this.containsContact(new Contact(n));
     }
 
+    @Override
+    public synchronized Contact getContact(Node n) {
+        for (Contact c : this.contacts) {
+            if (c.getNode().equals(n)) {
+                return c;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized Contact getReplacementContact(Node n) {
+        for (Contact c : this.replacementCache) {
+            if (c.getNode().equals(n)) {
+                return c;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public synchronized boolean removeContact(Contact c) {
         /* If the contact does not exist, then we failed to remove it */
@@ -109,7 +134,7 @@ public class JKademliaBucket implements KademliaBucket {
         if (!this.replacementCache.isEmpty()) {
             /* Replace the contact with one from the replacement cache */
             this.contacts.remove(c);
-            Contact replacement = this.replacementCache.first();
+            Contact replacement = this.getBestReplacement();
             this.contacts.add(replacement);
             this.replacementCache.remove(replacement);
         } else {
@@ -120,6 +145,26 @@ public class JKademliaBucket implements KademliaBucket {
         return true;
     }
 
+    /**
+     * Any node in the range of this bucket is as good as another for routing correctness, so when a contact failed
+     * and we have a choice, we'd rather replace it with the one that responds fastest. Contacts in the bucket that
+     * keep responding are never pushed out for faster ones, as long-lived contacts are the most likely to stay.
+     *
+     * @return The replacement contact with the lowest round trip time if we prefer those, else the first one in the replacement cache
+     */
+    private synchronized Contact getBestReplacement() {
+        Contact fastest = null;
+        if (this.config.isProximityNeighborSelection()) {
+            for (Contact c : this.replacementCache) {
+                if (c.staleCount() == 0 && c.getRttEstimator().hasEstimate()
+                        && (fastest == null || c.getRttEstimator().getSmoothedRtt() < fastest.getRttEstimator().getSmoothedRtt())) {
+                    fastest = c;
+                }
+            }
+        }
+        return fastest != null ? fastest : this.replacementCache.first();
+    }
+
     private synchronized Contact getFromContacts(Node n) {
         for (Contact c : this.contacts) {
             if (c.getNode().equals(n)) {
@@ -186,7 +231,7 @@ public class JKademliaBucket implements KademliaBucket {
              * We need to remove and re-add the contact to get the Sorted Set to update sort order
              */
             Contact tmp = this.removeFromReplacementCache(c.getNode());
-            tmp.setSeenNow();
+            tmp.setSeen(this.now());
             this.replacementCache.add(tmp);
         } else if (this.replacementCache.size() > this.config.k()) {
             /* if our cache is filled, we remove the least recently seen contact */
@@ -225,4 +270,16 @@ public class JKademliaBucket implements KademliaBucket {
 
         return sb.toString();
     }
+
+    @Override
+    public synchronized void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return The current time in seconds
+     */
+    private long now() {
+        return (this.clock != null ? this.clock.currentTimeMillis() : System.currentTimeMillis()) / 1000L;
+    }
 }
@@ -4,8 +4,10 @@ import kademlia.KadConfiguration;
 import kademlia.node.KademliaId;
 import kademlia.node.KeyComparator;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeSet;
 
@@ -21,6 +23,8 @@ public class JKademliaRoutingTable implements KademliaRoutingTable {
     private transient KademliaBucket[] buckets;
 
     private transient KadConfiguration config;
+    private transient ContactListener contactListener;
+    private transient Clock clock;
 
     public JKademliaRoutingTable(Node localNode, KadConfiguration config) {
         this.localNode = localNode;
@@ -41,6 +45,7 @@ public class JKademliaRoutingTable implements KademliaRoutingTable {
         this.buckets = new KademliaBucket[KademliaId.ID_LENGTH];
         for (int i = 0; i < KademliaId.ID_LENGTH; i++) {
             buckets[i] = new JKademliaBucket(i, this.config);
+            buckets[i].setClock(this.clock);
         }
     }
 
@@ -56,7 +61,11 @@ public class JKademliaRoutingTable implements KademliaRoutingTable {
      */
     @Override
     public synchronized final void insert(Contact c) {
+        boolean isNew = this.getContact(c.getNode()) == null;
         this.buckets[this.getBucketId(c.getNode().getNodeId())].insert(c);
+        if (isNew) {
+            this.notifyContactAdded(c.getNode());
+        }
     }
 
     /**
@@ -66,7 +75,66 @@ public class JKademliaRoutingTable implements KademliaRoutingTable {
      */
     @Override
     public synchronized final void insert(Node n) {
+        boolean isNew = this.getContact(n) == null;
         this.buckets[this.getBucketId(n.getNodeId())].insert(n);
+        if (isNew) {
+            this.notifyContactAdded(n);
+        }
+    }
+
+    /**
+     * Let the listener know about a new node, if it actually made it into a bucket and not just the replacement cache
+     *
+     * @param n The node that was inserted
+     */
+    private void notifyContactAdded(Node n) {
+        if (this.contactListener != null && !n.equals(this.localNode) && this.getContact(n) != null) {
+            this.contactListener.contactAdded(n);
+        }
+    }
+
+    @Override
+    public synchronized void setClock(Clock clock) {
+        this.clock = clock;
+        for (KademliaBucket b : this.buckets) {
+            b.setClock(clock);
+        }
+    }
+
+    @Override
+    public void setContactListener(ContactListener listener) {
+        this.contactListener = listener;
+    }
+
+    @Override
+    public synchronized Contact getContact(Node n) {
+        return this.buckets[this.getBucketId(n.getNodeId())].getContact(n);
+    }
+
+    @Override
+    public synchronized Contact getKnownContact(Node n) {
+        KademliaBucket bucket = this.buckets[this.getBucketId(n.getNodeId())];
+        Contact c = bucket.getContact(n);
+        return c != null ? c : bucket.getReplacementContact(n);
+    }
+
+    @Override
+    public synchronized double[] getRttDistribution() {
+        List<Double> rtts = new ArrayList<>();
+        for (KademliaBucket b : this.buckets) {
+            for (Contact c : b.getContacts()) {
+                if (c.getRttEstimator().hasEstimate()) {
+                    rtts.add(c.getRttEstimator().getSmoothedRtt());
+                }
+            }
+        }
+
+        double[] distribution = new double[rtts.size()];
+        for (int i = 0; i < distribution.length; i++) {
+            distribution[i] = rtts.get(i);
+        }
+        Arrays.sort(distribution);
+        return distribution;
     }
 
     /**
@@ -177,10 +245,18 @@ public class JKademliaRoutingTable implements KademliaRoutingTable {
      */
     @Override
     public synchronized void setUnresponsiveContact(Node n) {
-        int bucketId = this.getBucketId(n.getNodeId());
+        KademliaBucket bucket = this.buckets[this.getBucketId(n.getNodeId())];
+        List<Contact> before = bucket.getContacts();
 
         /* Remove the contact from the bucket */
-        this.buckets[bucketId].removeNode(n);
+        bucket.removeNode(n);
+
+        /* A contact from the replacement cache may have taken its place */
+        for (Contact c : bucket.getContacts()) {
+            if (!before.contains(c)) {
+                this.notifyContactAdded(c.getNode());
+            }
+        }
     }
 
     @Override
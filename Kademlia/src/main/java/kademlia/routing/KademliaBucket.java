@@ -1,6 +1,7 @@
 package kademlia.routing;
 
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.util.List;
 
@@ -42,6 +43,22 @@ public interface KademliaBucket {
      */
     public boolean containsNode(Node n);
 
+    /**
+     * Get the contact object related to a node
+     *
+     * @param n The node of the contact
+     * @return The contact, or null if the node is not in this bucket
+     */
+    public Contact getContact(Node n);
+
+    /**
+     * Get the contact object related to a node in the replacement cache
+     *
+     * @param n The node of the contact
+     * @return The contact, or null if the node is not in the replacement cache of this bucket
+     */
+    public Contact getReplacementContact(Node n);
+
     /**
      * Remove a contact from this bucket.
      * <p>
@@ -80,4 +97,11 @@ public interface KademliaBucket {
      * @return An Iterable structure with all contacts in this bucket
      */
     public List<Contact> getContacts();
+
+    /**
+     * Set the clock contacts are timestamped with when they are seen; the system time is used until it is set
+     *
+     * @param clock The clock of the local node
+     */
+    public void setClock(Clock clock);
 }
@@ -3,6 +3,7 @@ package kademlia.routing;
 import kademlia.KadConfiguration;
 import kademlia.node.KademliaId;
 import kademlia.node.Node;
+import kademlia.util.Clock;
 
 import java.util.List;
 
@@ -26,6 +27,20 @@ public interface KademliaRoutingTable {
      */
     public void setConfiguration(KadConfiguration config);
 
+    /**
+     * Set the clock contacts are timestamped with when they are seen; the system time is used until it is set
+     *
+     * @param clock The clock of the local node
+     */
+    public void setClock(Clock clock);
+
+    /**
+     * Set the listener that gets notified of new contacts
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public void setContactListener(ContactListener listener);
+
     /**
      * Adds a contact to the routing table based on how far it is from the LocalNode.
      *
@@ -40,6 +55,27 @@ public interface KademliaRoutingTable {
      */
     public void insert(Node n);
 
+    /**
+     * Get the contact object related to a node
+     *
+     * @param n The node of the contact
+     * @return The contact, or null if the node is not in this routing table
+     */
+    public Contact getContact(Node n);
+
+    /**
+     * Get the contact object related to a node, also looking in the replacement caches of the buckets
+     *
+     * @param n The node of the contact
+     * @return The contact, or null if we don't know about the node
+     */
+    public Contact getKnownContact(Node n);
+
+    /**
+     * @return The smoothed round trip times (in milliseconds) of all contacts we have measurements for, in ascending order
+     */
+    public double[] getRttDistribution();
+
     /**
      * Compute the bucket ID in which a given node should be placed; the bucketId is computed based on how far the node is away from the Local Node.
      *
@@ -60,12 +96,12 @@ public interface KademliaRoutingTable {
     /**
      * @return List A List of all Nodes in this RoutingTable
      */
-    public List getAllNodes();
+    public List<Node> getAllNodes();
 
     /**
-     * @return List A List of all Nodes in this RoutingTable
+     * @return List A List of all Contacts in this RoutingTable
      */
-    public List getAllContacts();
+    public List<Contact> getAllContacts();
 
     /**
      * @return Bucket[] The buckets in this Kad Instance
@@ -0,0 +1,86 @@
+package kademlia.routing;
+
+/**
+ * Keeps a smoothed round trip time and round trip time variation for a contact,
+ * from which a retransmission timeout (RTO) is derived.
+ * <p>
+ * The estimation follows the one TCP uses (RFC 6298):
+ * - SRTT   = (1 - alpha) * SRTT + alpha * R
+ * - RTTVAR = (1 - beta) * RTTVAR + beta * |SRTT - R|
+ * - RTO    = SRTT + 4 * RTTVAR
+ * <p>
+ * Until the first sample is received a given, conservative initial RTO is used.
+ * Every timeout doubles the RTO until a new sample is received.
+ */
+public class RoundTripTimeEstimator {
+
+    private static final double ALPHA = 0.125;
+    private static final double BETA = 0.25;
+    private static final int K = 4;
+
+    /* Don't let repeated timeouts grow the RTO indefinitely */
+    private static final int MAX_BACKOFF = 6;
+
+    private double smoothedRtt;
+    private double rttVariation;
+    private long numSamples;
+    private int backoff;
+
+    /**
+     * Add a new round trip time measurement
+     *
+     * @param rtt The measured round trip time in milliseconds
+     */
+    public synchronized void addSample(long rtt) {
+        if (this.numSamples == 0) {
+            this.smoothedRtt = rtt;
+            this.rttVariation = rtt / 2D;
+        } else {
+            this.rttVariation = (1 - BETA) * this.rttVariation + BETA * Math.abs(this.smoothedRtt - rtt);
+            this.smoothedRtt = (1 - ALPHA) * this.smoothedRtt + ALPHA * rtt;
+        }
+
+        this.numSamples++;
+        this.backoff = 0;
+    }
+
+    /**
+     * A request timed out, back off the retransmission timeout
+     */
+    public synchronized void backOff() {
+        if (this.backoff < MAX_BACKOFF) {
+            this.backoff++;
+        }
+    }
+
+    /**
+     * @return Whether we have received any samples so far
+     */
+    public synchronized boolean hasEstimate() {
+        return this.numSamples > 0;
+    }
+
+    /**
+     * @return The smoothed round trip time in milliseconds
+     */
+    public synchronized double getSmoothedRtt() {
+        return this.smoothedRtt;
+    }
+
+    /**
+     * @return The round trip time variation in milliseconds
+     */
+    public synchronized double getRttVariation() {
+        return this.rttVariation;
+    }
+
+    /**
+     * @param initialRto The retransmission timeout in milliseconds to use as long as there are no samples
+     * @return The retransmission timeout in milliseconds
+     */
+    public synchronized long getRetransmissionTimeout(long initialRto) {
+        long rto = (this.numSamples == 0) ? initialRto
+                : (long) Math.ceil(this.smoothedRtt + Math.max(1D, K * this.rttVariation));
+        return rto << this.backoff;
+    }
+}
@@ -0,0 +1,177 @@
+package kademlia.simulations;
+
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.dht.DHT;
+import kademlia.dht.GetParameter;
+import kademlia.exceptions.RoutingException;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.routing.JKademliaRoutingTable;
+import kademlia.transport.SimulatedNetwork;
+import kademlia.transport.SimulatedNetwork.Distribution;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Runs a large network of nodes on a SimulatedNetwork in this JVM and measures store and lookup performance.
+ * The nodes store their content in a temporary folder, which is removed afterwards.
+ * <p>
+ * Usage: SimulatedNetworkBenchmark [numNodes] [numContents] [seed]
+ */
+public class SimulatedNetworkBenchmark {
+
+    private final int numNodes;
+    private final int numContents;
+    private final long seed;
+
+    public SimulatedNetworkBenchmark(int numNodes, int numContents, long seed) {
+        this.numNodes = numNodes;
+        this.numContents = numContents;
+        this.seed = seed;
+    }
+
+    public void run() throws Exception {
+        Random random = new Random(this.seed);
+        Path dataFolder = Files.createTempDirectory("kademlia-benchmark");
+        try {
+            this.run(random, dataFolder);
+        } finally {
+            deleteRecursively(dataFolder);
+        }
+    }
+
+    private void run(Random random, Path dataFolder) throws Exception {
+        KadConfiguration config = new DefaultConfiguration() {
+            @Override
+            public String getNodeDataFolder(String ownerId) {
+                File ownerFolder = dataFolder.resolve(ownerId).toFile();
+                if (!ownerFolder.isDirectory()) {
+                    ownerFolder.mkdir();
+                }
+                return ownerFolder.toString();
+            }
+
+            @Override
+            public long restoreInterval() {
+                /* Refreshes run on the virtual clock as well; every refresh does a lookup per bucket, keep them out of the measurements */
+                return 60 * 60 * 1000L;
+            }
+
+            @Override
+            public long coalescingWindow() {
+                /* The coalescing window passes in real time, which the virtual clock does not wait for */
+                return 0;
+            }
+        };
+        SimulatedNetwork network = new SimulatedNetwork(this.seed,
+                Distribution.exponential(10, 40),     // one-way latency, in ms
+                0.01,                                  // loss rate
+                Distribution.uniform(125, 1250),       // 1 - 10 Mbit/s uplinks, in bytes per ms
+                0);
+        InetAddress address = InetAddress.getLoopbackAddress();
+
+        /* Set up the nodes, each bootstrapping to the first one */
+        long startTime = System.currentTimeMillis();
+        List<JKademliaNode> nodes = new ArrayList<>();
+        int numFailed = 0;
+        for (int i = 0; i < this.numNodes; i++) {
+            int port = 10000 + i;
+            byte[] id = new byte[KademliaId.ID_LENGTH / 8];
+            random.nextBytes(id);
+            Node node = new Node(new KademliaId(id), address, port);
+            String ownerId = "node" + i;
+            JKademliaNode kad = new JKademliaNode(ownerId, node, port, network.connect(new InetSocketAddress(address, port)),
+                    new DHT(ownerId, config), new JKademliaRoutingTable(node, config), config);
+            if (!nodes.isEmpty()) {
+                try {
+                    kad.bootstrap(nodes.get(0).getNode());
+                } catch (RoutingException e) {
+                    /* Its bootstrap messages got lost; it still takes part, other nodes may find it later on */
+                    numFailed++;
+                }
+            }
+            nodes.add(kad);
+        }
+        System.out.printf("Bootstrapped %d nodes (%d failed) in %d ms (virtual time %d ms)%n",
+                this.numNodes, numFailed, System.currentTimeMillis() - startTime, network.currentTime());
+
+        /* Store content from random nodes */
+        List<DHTContentImpl> contents = new ArrayList<>();
+        long[] storeTimes = new long[this.numContents];
+        for (int i = 0; i < this.numContents; i++) {
+            byte[] key = new byte[KademliaId.ID_LENGTH / 8];
+            random.nextBytes(key);
+            DHTContentImpl content = new DHTContentImpl(new KademliaId(key), "owner" + i);
+            content.setData("Content " + i);
+            contents.add(content);
+
+            long before = network.currentTime();
+            nodes.get(random.nextInt(this.numNodes)).put(content);
+            storeTimes[i] = network.currentTime() - before;
+        }
+
+        /* Look the content up from other random nodes */
+        long[] getTimes = new long[this.numContents];
+        int numFound = 0;
+        for (int i = 0; i < this.numContents; i++) {
+            DHTContentImpl content = contents.get(i);
+            long before = network.currentTime();
+            try {
+                nodes.get(random.nextInt(this.numNodes)).get(new GetParameter(content.getKey(), DHTContentImpl.TYPE, content.getOwnerId()));
+                numFound++;
+            } catch (Exception e) {
+                /* Counted as not found */
+            }
+            getTimes[i] = network.currentTime() - before;
+        }
+
+        System.out.printf("Stores: median %d ms, p99 %d ms (virtual time)%n", percentile(storeTimes, 50), percentile(storeTimes, 99));
+        System.out.printf("Gets: %d/%d found, median %d ms, p99 %d ms (virtual time)%n", numFound, this.numContents, percentile(getTimes, 50), percentile(getTimes, 99));
+        System.out.printf("Datagrams delivered: %d, dropped: %d%n", network.numDelivered(), network.numDropped());
+
+        for (JKademliaNode kad : nodes) {
+            kad.shutdown(false);
+        }
+        network.shutdown();
+    }
+
+    private static void deleteRecursively(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static long percentile(long[] values, double percentile) {
+        if (values.length == 0) {
+            return 0;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(percentile / 100 * sorted.length) - 1)];
+    }
+
+    public static void main(String[] args) {
+        int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int numContents = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        try {
+            new SimulatedNetworkBenchmark(numNodes, numContents, seed).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package kademlia.transport;
+
+import kademlia.util.Clock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A transport that packs messages sent to the same destination within a short time window into a single datagram.
+ * <p>
+ * Operations such as node lookups and refreshes often send several small messages to the same node at once;
+ * sending them together saves packets and system calls on both ends.
+ * <p>
+ * A coalesced datagram starts with a comm ID of 0 and a reserved message code, followed by the number of messages
+ * and each message prefixed with its length. A datagram holding a single message is sent as is, so regular datagrams
+ * are received unchanged. On receipt, the messages of a coalesced datagram are handed out one by one.
+ * <p>
+ * Nodes that don't coalesce can't read coalesced datagrams, so coalescing should only be enabled when all nodes of the
+ * network do so.
+ */
+public class CoalescingTransport implements Transport {
+
+    private static final int BATCH_COMM = 0;
+    private static final byte BATCH_CODE = (byte) 0x7F;
+    private static final int HEADER_LENGTH = 4 + 1 + 2;     // comm, code, number of messages
+    private static final int FRAME_HEADER_LENGTH = 2;       // length of a message
+
+    private final Transport transport;
+    private final int maxDatagramSize;
+    private final long flushWindow;
+
+    /* Messages waiting to be sent, per destination */
+    private final Map<InetSocketAddress, Batch> outbound;
+    /* Held while handing datagrams to the transport, so the messages to a destination go out in the order they were sent */
+    private final Object sendLock;
+    /* Messages of received coalesced datagrams that have not been handed out yet */
+    private final Queue<byte[]> inbound;
+    private volatile boolean closed;
+
+    {
+        outbound = new LinkedHashMap<>();
+        sendLock = new Object();
+        inbound = new ConcurrentLinkedQueue<>();
+        closed = false;
+    }
+
+    /**
+     * @param transport       The transport to send the datagrams over
+     * @param maxDatagramSize The maximum size of a coalesced datagram, in bytes
+     * @param flushWindow     How long to wait for more messages to the same destination, in microseconds
+     */
+    public CoalescingTransport(Transport transport, int maxDatagramSize, long flushWindow) {
+        this.transport = transport;
+        this.maxDatagramSize = maxDatagramSize;
+        this.flushWindow = flushWindow * 1000L;
+        this.startFlusher();
+    }
+
+    /**
+     * Starts the thread that sends the queued messages once the flush window has passed
+     */
+    private void startFlusher() {
+        Thread flusher = new Thread() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        };
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void send(byte[] data, int length, InetSocketAddress to) throws IOException {
+        synchronized (this.sendLock) {
+            /* Messages that don't fit in a coalesced datagram go out on their own right away, after the ones queued before them */
+            if (HEADER_LENGTH + FRAME_HEADER_LENGTH + length > this.maxDatagramSize) {
+                Batch queued;
+                synchronized (this.outbound) {
+                    queued = this.outbound.remove(to);
+                }
+                if (queued != null) {
+                    this.sendBatch(queued);
+                }
+                this.transport.send(data, length, to);
+                return;
+            }
+
+            byte[] frame = new byte[length];
+            System.arraycopy(data, 0, frame, 0, length);
+
+            Batch full = null;
+            synchronized (this.outbound) {
+                Batch batch = this.outbound.get(to);
+                if (batch != null && batch.size + FRAME_HEADER_LENGTH + length > this.maxDatagramSize) {
+                    /* No room left for this message, send what we have and start a new datagram */
+                    full = this.outbound.remove(to);
+                    batch = null;
+                }
+                if (batch == null) {
+                    batch = new Batch(to);
+                    this.outbound.put(to, batch);
+                    this.outbound.notifyAll();
+                }
+                batch.add(frame);
+            }
+
+            if (full != null) {
+                this.sendBatch(full);
+            }
+        }
+    }
+
+    @Override
+    public int receive(byte[] buffer) throws IOException {
+        while (true) {
+            /* First hand out the remaining messages of coalesced datagrams */
+            byte[] frame = this.inbound.poll();
+            if (frame != null) {
+                return copy(frame, buffer);
+            }
+
+            int length = this.transport.receive(buffer);
+            if (!isBatch(buffer, length)) {
+                return length;
+            }
+
+            ByteBuffer in = ByteBuffer.wrap(buffer, 0, length);
+            in.position(HEADER_LENGTH);
+            int count = in.getShort(HEADER_LENGTH - 2) & 0xFFFF;
+            for (int i = 0; i < count && in.remaining() >= FRAME_HEADER_LENGTH; i++) {
+                int frameLength = in.getShort() & 0xFFFF;
+                if (frameLength > in.remaining()) {
+                    break;
+                }
+                byte[] f = new byte[frameLength];
+                in.get(f);
+                this.inbound.add(f);
+            }
+        }
+    }
+
+    private static boolean isBatch(byte[] buffer, int length) {
+        return length >= HEADER_LENGTH && ByteBuffer.wrap(buffer, 0, length).getInt(0) == BATCH_COMM && buffer[4] == BATCH_CODE;
+    }
+
+    private static int copy(byte[] frame, byte[] buffer) {
+        int length = Math.min(frame.length, buffer.length);
+        System.arraycopy(frame, 0, buffer, 0, length);
+        return length;
+    }
+
+    /**
+     * Send the queued messages once they've had the flush window to gather
+     */
+    private void flushLoop() {
+        try {
+            while (!this.closed) {
+                synchronized (this.outbound) {
+                    while (this.outbound.isEmpty() && !this.closed) {
+                        this.outbound.wait();
+                    }
+                }
+
+                LockSupport.parkNanos(this.flushWindow);
+                this.flush();
+            }
+        } catch (InterruptedException e) {
+            /* Stop flushing */
+        }
+    }
+
+    /**
+     * Send all queued messages now
+     */
+    public void flush() {
+        synchronized (this.sendLock) {
+            List<Batch> batches;
+            synchronized (this.outbound) {
+                batches = new ArrayList<>(this.outbound.values());
+                this.outbound.clear();
+            }
+
+            for (Batch b : batches) {
+                try {
+                    this.sendBatch(b);
+                } catch (IOException e) {
+                    System.err.println("CoalescingTransport: Sending a datagram failed; Message: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void sendBatch(Batch batch) throws IOException {
+        if (batch.frames.size() == 1) {
+            byte[] frame = batch.frames.get(0);
+            this.transport.send(frame, frame.length, batch.to);
+            return;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(batch.size);
+        out.putInt(BATCH_COMM);
+        out.put(BATCH_CODE);
+        out.putShort((short) batch.frames.size());
+        for (byte[] frame : batch.frames) {
+            out.putShort((short) frame.length);
+            out.put(frame);
+        }
+        this.transport.send(out.array(), out.position(), batch.to);
+    }
+
+    @Override
+    public void close() {
+        this.flush();
+        this.closed = true;
+        synchronized (this.outbound) {
+            this.outbound.notifyAll();
+        }
+        this.transport.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed || this.transport.isClosed();
+    }
+
+    @Override
+    public Clock getClock() {
+        return this.transport.getClock();
+    }
+
+    /**
+     * The messages queued for a destination
+     */
+    private static class Batch {
+
+        private final InetSocketAddress to;
+        private final List<byte[]> frames;
+        private int size;
+
+        private Batch(InetSocketAddress to) {
+            this.to = to;
+            this.frames = new ArrayList<>();
+            this.size = HEADER_LENGTH;
+        }
+
+        private void add(byte[] frame) {
+            this.frames.add(frame);
+            this.size += FRAME_HEADER_LENGTH + frame.length;
+        }
+    }
+}
@@ -0,0 +1,688 @@
+package kademlia.transport;
+
+import kademlia.util.Clock;
+
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory network connecting SimulatedTransports, so that thousands of nodes can run in a single JVM
+ * without opening any sockets.
+ * <p>
+ * Every datagram is delayed by the time it takes to push it through the sender's uplink (its bandwidth)
+ * plus a one-way latency, or dropped with a given probability. Latencies and bandwidths are drawn from
+ * configurable distributions using a seeded random generator.
+ * <p>
+ * The network keeps its own virtual clock, in milliseconds, which it offers to the nodes attached to it:
+ * the timeouts of their requests and operations run on it, and round trip times are measured with it.
+ * Datagrams, timers, executor tasks and waiting threads are all handled as events in order of their virtual time.
+ * <p>
+ * Only one thread of the simulation runs at a time: the one handling the current event. It keeps running until it
+ * waits on the clock, waits for a datagram on its transport or finishes its task; only then is the next event handled.
+ * Since nothing runs concurrently, a simulation driven from a single thread with the same seed always runs the same way.
+ * The thread that attaches a node joins the simulation as well, from then on it runs until it waits on the clock.
+ * Threads outside of the simulation may still send datagrams and schedule tasks, but they are not waited for.
+ * <p>
+ * With a time scale of 0 the clock jumps straight to the next event; with a time scale s > 0, one virtual
+ * millisecond takes (at least) s real milliseconds.
+ */
+public class SimulatedNetwork implements Clock {
+
+    /**
+     * A distribution to draw latencies (in milliseconds) or bandwidths (in bytes per millisecond) from
+     */
+    public interface Distribution {
+
+        public long sample(Random random);
+
+        public static Distribution constant(long value) {
+            return random -> value;
+        }
+
+        public static Distribution uniform(long min, long max) {
+            return random -> min + (long) (random.nextDouble() * (max - min + 1));
+        }
+
+        public static Distribution exponential(long min, double mean) {
+            return random -> min + (long) (-mean * Math.log(1 - random.nextDouble()));
+        }
+    }
+
+    private final Random random;
+    private final Distribution latency;
+    private final double lossRate;
+    private final Distribution bandwidth;
+    private final double timeScale;
+
+    private final Map<InetSocketAddress, SimulatedTransport> transports;
+    private final PriorityQueue<Event> events;
+    private final long realStartTime;
+    private long virtualTime;
+    private long sequence;
+    private long numDelivered;
+    private long numDropped;
+    private boolean isRunning;
+
+    /* Runs the timer and executor tasks, one at a time */
+    private final ExecutorService taskRunner;
+    /* Threads waiting on the clock, by the monitor they wait on */
+    private final Map<Object, List<Waiter>> waiters;
+    /*
+     * What is handling the current event: a thread, a transport holding a datagram that has not been received yet,
+     * or a task or waiter that has not started running yet; null once the next event can be handled
+     */
+    private Object holder;
+
+    {
+        transports = new HashMap<>();
+        events = new PriorityQueue<>();
+        realStartTime = System.currentTimeMillis();
+        virtualTime = 0;
+        sequence = 0;
+        numDelivered = 0;
+        numDropped = 0;
+        isRunning = true;
+        taskRunner = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "SimulatedNetwork-task");
+            t.setDaemon(true);
+            return t;
+        });
+        waiters = new IdentityHashMap<>();
+        holder = null;
+    }
+
+    /**
+     * @param seed      Seed of the random generator used for latencies, bandwidths and losses
+     * @param latency   Distribution of the one-way latency of a datagram, in milliseconds
+     * @param lossRate  Probability that a datagram is lost, between 0 and 1
+     * @param bandwidth Distribution of the upload bandwidth of a node, in bytes per millisecond
+     * @param timeScale Real milliseconds per virtual millisecond; 0 to run as fast as possible
+     */
+    public SimulatedNetwork(long seed, Distribution latency, double lossRate, Distribution bandwidth, double timeScale) {
+        this.random = new Random(seed);
+        this.latency = latency;
+        this.lossRate = lossRate;
+        this.bandwidth = bandwidth;
+        this.timeScale = timeScale;
+        this.startDispatcher();
+    }
+
+    /**
+     * Starts the thread that delivers datagrams once their virtual arrival time is reached
+     */
+    private void startDispatcher() {
+        Thread dispatcher = new Thread() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        };
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Attach a new node to the network.
+     * The calling thread joins the simulation: it runs as the current event until it waits on the clock.
+     *
+     * @param address The address the node can be reached on
+     * @return The transport of the node
+     * @throws BindException If another node is already attached on this address
+     */
+    public synchronized SimulatedTransport connect(InetSocketAddress address) throws BindException {
+        if (this.transports.containsKey(address)) {
+            throw new BindException("Address already in use: " + address);
+        }
+        this.join();
+
+        SimulatedTransport transport = new SimulatedTransport(this, address, this.bandwidth.sample(this.random));
+        this.transports.put(address, transport);
+        return transport;
+    }
+
+    /**
+     * Detach a node from the network; datagrams still in flight to it are dropped
+     */
+    synchronized void disconnect(SimulatedTransport transport) {
+        this.transports.remove(transport.getAddress(), transport);
+    }
+
+    /**
+     * Put a datagram on the network
+     *
+     * @param from The transport sending the datagram
+     * @param data The datagram
+     * @param to   The address to send it to
+     */
+    synchronized void send(SimulatedTransport from, byte[] data, InetSocketAddress to) {
+        long sentAt = from.transmit(this.currentTime(), data.length);
+
+        if (this.random.nextDouble() < this.lossRate) {
+            this.numDropped++;
+            return;
+        }
+
+        this.events.add(new Delivery(sentAt + this.latency.sample(this.random), this.sequence++, data, to));
+        notifyAll();
+    }
+
+    /**
+     * Handle datagrams, timers, executor tasks and waiting threads in order of their virtual time, one at a time
+     */
+    private void dispatch() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    Event next = null;
+                    while (this.isRunning && (this.holder != null || (next = this.nextEvent()) == null)) {
+                        wait();
+                    }
+                    if (!this.isRunning) {
+                        return;
+                    }
+
+                    if (next.time > this.virtualTime && this.timeScale > 0) {
+                        long remaining = this.realStartTime + (long) (next.time * this.timeScale) - System.currentTimeMillis();
+                        if (remaining > 0) {
+                            wait(remaining);
+                            continue;
+                        }
+                    }
+
+                    this.events.poll();
+                    this.virtualTime = Math.max(this.virtualTime, next.time);
+                    this.fire(next);
+                }
+            }
+        } catch (InterruptedException e) {
+            /* Stop dispatching */
+        }
+    }
+
+    /**
+     * @return The next event that still has to happen, without removing it
+     */
+    private Event nextEvent() {
+        Event next = this.events.peek();
+        while (next != null && !this.isPending(next)) {
+            this.events.poll();
+            next = this.events.peek();
+        }
+        return next;
+    }
+
+    /**
+     * @return Whether the event still has to happen, false for cancelled timers and waiters that already continued
+     */
+    private boolean isPending(Event event) {
+        if (event instanceof TimerEvent) {
+            return !((TimerEvent) event).cancelled;
+        }
+        if (event instanceof Resume) {
+            Waiter waiter = ((Resume) event).waiter;
+            return !waiter.granted && !waiter.done;
+        }
+        return true;
+    }
+
+    /**
+     * Hand the current event to whatever handles it, which holds the simulation until it is done
+     */
+    private void fire(Event event) {
+        if (event instanceof Delivery) {
+            Delivery delivery = (Delivery) event;
+            SimulatedTransport transport = this.transports.get(delivery.to);
+            if (transport != null && transport.deliver(delivery.data)) {
+                this.holder = transport;
+                this.numDelivered++;
+            } else {
+                this.numDropped++;
+            }
+            return;
+        }
+
+        if (event instanceof Resume) {
+            Waiter waiter = ((Resume) event).waiter;
+            waiter.granted = true;
+            this.holder = waiter;
+            if (waiter.monitor == null) {
+                notifyAll();
+            } else {
+                /*
+                 * The waiting thread may also wake up spuriously, see it is granted and go on while still holding
+                 * the monitor, so the one notifying it must not be the dispatcher
+                 */
+                this.execute(() -> {
+                    synchronized (waiter.monitor) {
+                        waiter.monitor.notifyAll();
+                    }
+                });
+            }
+            return;
+        }
+
+        TimerEvent timer = (TimerEvent) event;
+        this.holder = timer;
+        if (!this.execute(() -> {
+            this.takeOver(timer);
+            try {
+                timer.task.run();
+            } catch (RuntimeException e) {
+                System.err.println("SimulatedNetwork: a scheduled task failed; Message: " + e.getMessage());
+            } finally {
+                this.release();
+            }
+        })) {
+            this.holder = null;
+        }
+    }
+
+    /**
+     * Run something on a thread of the task runner
+     *
+     * @return Whether it will run, false if the network has been shut down
+     */
+    private boolean execute(Runnable runnable) {
+        try {
+            this.taskRunner.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Make the current thread the one handling the current event, waiting for its turn if needed
+     */
+    private synchronized void join() {
+        if (this.holder == Thread.currentThread() || !this.isRunning) {
+            return;
+        }
+
+        Waiter waiter = new Waiter(null);
+        this.events.add(new Resume(this.currentTime(), this.sequence++, waiter));
+        notifyAll();
+        try {
+            while (!waiter.granted) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiter.done = true;
+            this.takeOver(waiter);
+        }
+    }
+
+    /**
+     * The current thread is done handling the current event, if it was handling it
+     */
+    synchronized void release() {
+        this.release(Thread.currentThread());
+    }
+
+    /**
+     * Whatever was handling the current event is done with it
+     *
+     * @param from The thread, transport or task that was handling the event
+     */
+    synchronized void release(Object from) {
+        if (this.holder == from) {
+            this.holder = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Let the current thread continue handling the current event, if it was handed to the given transport, task or waiter
+     */
+    synchronized void takeOver(Object from) {
+        if (this.holder == from) {
+            this.holder = Thread.currentThread();
+        }
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return this.currentTime();
+    }
+
+    @Override
+    public long nanoTime() {
+        return this.currentTime() * 1000000L;
+    }
+
+    @Override
+    public synchronized Clock.Task schedule(Runnable task, long delay) {
+        if (!this.isRunning) {
+            throw new IllegalStateException("The simulated network has been shut down.");
+        }
+
+        TimerEvent event = new TimerEvent(this.currentTime() + Math.max(0, delay), this.sequence++, task);
+        this.events.add(event);
+        notifyAll();
+        return () -> event.cancelled = true;
+    }
+
+    @Override
+    public void waitOn(Object monitor, long timeout) throws InterruptedException {
+        Waiter waiter = new Waiter(monitor);
+        synchronized (this) {
+            if (this.isRunning) {
+                this.waiters.computeIfAbsent(monitor, m -> new ArrayList<>()).add(waiter);
+                this.events.add(new Resume(this.currentTime() + Math.max(0, timeout), this.sequence++, waiter));
+                this.release();
+                notifyAll();
+            } else {
+                waiter = null;
+            }
+        }
+
+        if (waiter == null) {
+            /* There is no virtual time anymore, fall back to the real time */
+            monitor.wait(Math.max(1, timeout));
+            return;
+        }
+
+        try {
+            while (!waiter.granted) {
+                monitor.wait();
+            }
+        } finally {
+            synchronized (this) {
+                waiter.done = true;
+                List<Waiter> waiting = this.waiters.get(monitor);
+                if (waiting != null && waiting.remove(waiter) && waiting.isEmpty()) {
+                    this.waiters.remove(monitor);
+                }
+                this.takeOver(waiter);
+            }
+        }
+    }
+
+    @Override
+    public void wakeUp(Object monitor) {
+        synchronized (this) {
+            List<Waiter> waiting = this.waiters.get(monitor);
+            if (waiting != null) {
+                for (Waiter waiter : waiting) {
+                    this.events.add(new Resume(this.currentTime(), this.sequence++, waiter));
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public ExecutorService newExecutor(String name, int threads) {
+        return new SimulatedExecutor(Math.max(1, threads));
+    }
+
+    /**
+     * Let the current thread sleep for a while in virtual time
+     *
+     * @param millis The time to sleep in milliseconds
+     * @throws InterruptedException
+     */
+    public void sleep(long millis) throws InterruptedException {
+        Object monitor = new Object();
+        long deadline = this.currentTime() + millis;
+        synchronized (monitor) {
+            for (long remaining = millis; remaining > 0 && this.isRunning(); remaining = deadline - this.currentTime()) {
+                this.waitOn(monitor, remaining);
+            }
+        }
+    }
+
+    private synchronized boolean isRunning() {
+        return this.isRunning;
+    }
+
+    /**
+     * @return The current virtual time in milliseconds
+     */
+    public synchronized long currentTime() {
+        if (this.timeScale > 0) {
+            this.virtualTime = Math.max(this.virtualTime, (long) ((System.currentTimeMillis() - this.realStartTime) / this.timeScale));
+        }
+        return this.virtualTime;
+    }
+
+    /**
+     * @return The number of datagrams delivered so far
+     */
+    public synchronized long numDelivered() {
+        return this.numDelivered;
+    }
+
+    /**
+     * @return The number of datagrams lost so far
+     */
+    public synchronized long numDropped() {
+        return this.numDropped;
+    }
+
+    /**
+     * Stop the clock and stop delivering datagrams; threads still waiting on the clock continue right away
+     */
+    public void shutdown() {
+        List<Object> monitors;
+        synchronized (this) {
+            this.isRunning = false;
+            this.events.clear();
+            this.holder = null;
+            monitors = new ArrayList<>(this.waiters.keySet());
+            for (List<Waiter> waiting : this.waiters.values()) {
+                for (Waiter waiter : waiting) {
+                    waiter.granted = true;
+                }
+            }
+            notifyAll();
+        }
+
+        for (Object monitor : monitors) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+        this.taskRunner.shutdown();
+    }
+
+    /**
+     * Runs tasks as events of the network, at most a given number at a time; the others wait in line
+     */
+    private class SimulatedExecutor extends AbstractExecutorService {
+
+        private final int threads;
+        private final Queue<Runnable> queue;
+        private int running;
+        private boolean isShutdown;
+
+        private SimulatedExecutor(int threads) {
+            this.threads = threads;
+            this.queue = new ArrayDeque<>();
+            this.running = 0;
+            this.isShutdown = false;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (SimulatedNetwork.this) {
+                if (this.isShutdown || !isRunning) {
+                    throw new RejectedExecutionException("The executor has been shut down.");
+                }
+                this.queue.add(command);
+                this.startNext();
+            }
+        }
+
+        /* Called while holding the network's monitor */
+        private void startNext() {
+            while (this.running < this.threads && !this.queue.isEmpty()) {
+                Runnable command = this.queue.poll();
+                this.running++;
+                events.add(new TimerEvent(currentTime(), sequence++, () -> {
+                    try {
+                        command.run();
+                    } finally {
+                        this.finished();
+                    }
+                }));
+                SimulatedNetwork.this.notifyAll();
+            }
+        }
+
+        private void finished() {
+            synchronized (SimulatedNetwork.this) {
+                this.running--;
+                this.startNext();
+                SimulatedNetwork.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (SimulatedNetwork.this) {
+                this.isShutdown = true;
+                SimulatedNetwork.this.notifyAll();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (SimulatedNetwork.this) {
+                this.isShutdown = true;
+                List<Runnable> pending = new ArrayList<>(this.queue);
+                this.queue.clear();
+                SimulatedNetwork.this.notifyAll();
+                return pending;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (SimulatedNetwork.this) {
+                return this.isShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (SimulatedNetwork.this) {
+                return this.isShutdown && this.running == 0 && this.queue.isEmpty();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (SimulatedNetwork.this) {
+                while (!this.isTerminated()) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    SimulatedNetwork.this.wait(remaining);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Something that happens at a given virtual time
+     */
+    private static abstract class Event implements Comparable<Event> {
+
+        final long time;
+        final long sequence;
+
+        Event(long time, long sequence) {
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (this.time != o.time) {
+                return Long.compare(this.time, o.time);
+            }
+            return Long.compare(this.sequence, o.sequence);
+        }
+    }
+
+    /**
+     * A datagram in flight
+     */
+    private static class Delivery extends Event {
+
+        private final byte[] data;
+        private final InetSocketAddress to;
+
+        private Delivery(long time, long sequence, byte[] data, InetSocketAddress to) {
+            super(time, sequence);
+            this.data = data;
+            this.to = to;
+        }
+    }
+
+    /**
+     * A scheduled task, or a task handed to an executor
+     */
+    private static class TimerEvent extends Event {
+
+        private final Runnable task;
+        private volatile boolean cancelled;
+
+        private TimerEvent(long time, long sequence, Runnable task) {
+            super(time, sequence);
+            this.task = task;
+            this.cancelled = false;
+        }
+    }
+
+    /**
+     * The end of a thread's wait on the clock
+     */
+    private static class Resume extends Event {
+
+        private final Waiter waiter;
+
+        private Resume(long time, long sequence, Waiter waiter) {
+            super(time, sequence);
+            this.waiter = waiter;
+        }
+    }
+
+    /**
+     * A thread waiting on the clock, either on a monitor or, without one, to join the simulation
+     */
+    private static class Waiter {
+
+        private final Object monitor;
+        /* Set once the thread may continue */
+        private volatile boolean granted;
+        /* Set once the thread stopped waiting, whether it was granted or not */
+        private boolean done;
+
+        private Waiter(Object monitor) {
+            this.monitor = monitor;
+            this.granted = false;
+            this.done = false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package kademlia.transport;
+
+import kademlia.util.Clock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The endpoint of a single node on a SimulatedNetwork.
+ * <p>
+ * A datagram delivered to the transport holds up the simulation until it has been received,
+ * the receiving thread then continues as the one handling it.
+ */
+public class SimulatedTransport implements Transport {
+
+    /* Put in the inbox to wake up a receiving thread when the transport is closed */
+    private static final byte[] CLOSED = new byte[0];
+
+    private final SimulatedNetwork network;
+    private final InetSocketAddress address;
+    private final BlockingQueue<byte[]> inbox;
+    private volatile boolean closed;
+
+    /* Upload bandwidth in bytes per virtual millisecond, and until when the uplink is busy sending earlier datagrams */
+    private final long bandwidth;
+    private long busyUntil;
+
+    SimulatedTransport(SimulatedNetwork network, InetSocketAddress address, long bandwidth) {
+        this.network = network;
+        this.address = address;
+        this.bandwidth = Math.max(1, bandwidth);
+        this.inbox = new LinkedBlockingQueue<>();
+        this.closed = false;
+        this.busyUntil = 0;
+    }
+
+    /**
+     * @return The address other nodes on the simulated network can reach this transport on
+     */
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    @Override
+    public void send(byte[] data, int length, InetSocketAddress to) throws IOException {
+        if (this.closed) {
+            throw new SocketException("Socket is closed");
+        }
+        this.network.send(this, Arrays.copyOf(data, length), to);
+    }
+
+    @Override
+    public int receive(byte[] buffer) throws IOException {
+        /* The simulation can go on while this thread waits for the next datagram */
+        this.network.release();
+
+        byte[] data;
+        try {
+            data = this.inbox.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a datagram");
+        }
+        if (data != CLOSED) {
+            this.network.takeOver(this);
+        }
+
+        if (data == CLOSED || this.closed) {
+            this.network.release();
+            this.inbox.offer(CLOSED);
+            throw new SocketException("Socket closed");
+        }
+
+        int length = Math.min(data.length, buffer.length);
+        System.arraycopy(data, 0, buffer, 0, length);
+        return length;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.network.disconnect(this);
+
+        /* Nothing is delivered anymore once we're disconnected, discard what is left */
+        this.inbox.clear();
+        this.network.release(this);
+        this.inbox.offer(CLOSED);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    @Override
+    public Clock getClock() {
+        return this.network;
+    }
+
+    /**
+     * Reserve the uplink to send a datagram
+     *
+     * @param now    The current virtual time
+     * @param length The length of the datagram
+     * @return The virtual time at which the datagram has been fully sent
+     */
+    long transmit(long now, int length) {
+        long start = Math.max(now, this.busyUntil);
+        this.busyUntil = start + (length + this.bandwidth - 1) / this.bandwidth;
+        return this.busyUntil;
+    }
+
+    /**
+     * Hand a datagram that arrived over the simulated network to this transport
+     *
+     * @return Whether the datagram was accepted, false if the transport is closed
+     */
+    boolean deliver(byte[] data) {
+        return !this.closed && this.inbox.offer(data);
+    }
+}
@@ -0,0 +1,49 @@
+package kademlia.transport;
+
+import kademlia.util.Clock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * The datagram transport a KadServer sends and receives its messages over.
+ * <p>
+ * By default this is a UDP socket; simulations can replace it with an in-memory network
+ * so that large numbers of nodes can be run in a single JVM.
+ */
+public interface Transport {
+
+    /**
+     * Send a datagram
+     *
+     * @param data   The buffer containing the datagram
+     * @param length The length of the datagram
+     * @param to     The address to send the datagram to
+     * @throws IOException
+     */
+    public void send(byte[] data, int length, InetSocketAddress to) throws IOException;
+
+    /**
+     * Wait for the next datagram
+     *
+     * @param buffer The buffer to copy the datagram into; longer datagrams are truncated
+     * @return The length of the datagram received
+     * @throws IOException If the transport was closed while waiting
+     */
+    public int receive(byte[] buffer) throws IOException;
+
+    /**
+     * Close the transport; a thread waiting in receive() will get an exception.
+     */
+    public void close();
+
+    /**
+     * @return Whether the transport has been closed
+     */
+    public boolean isClosed();
+
+    /**
+     * @return The clock of the network this transport is attached to, used for timeouts and round trip times
+     */
+    public Clock getClock();
+}
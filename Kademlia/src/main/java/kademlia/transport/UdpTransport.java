@@ -0,0 +1,128 @@
+package kademlia.transport;
+
+import kademlia.KadConfiguration;
+import kademlia.util.Clock;
+import kademlia.util.SystemClock;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport over a UDP socket.
+ * <p>
+ * Optionally, several sockets are bound to the same port using SO_REUSEPORT, so that the kernel spreads incoming
+ * datagrams over them. Every thread calling receive() is then assigned one of the sockets to read from.
+ */
+public class UdpTransport implements Transport {
+
+    private final DatagramSocket[] sockets;
+    private final KadConfiguration config;
+    private final SystemClock clock;
+
+    /* Assigns each receiving thread its own socket */
+    private final AtomicInteger nextSocket;
+    private final ThreadLocal<DatagramSocket> receiveSocket;
+
+    {
+        nextSocket = new AtomicInteger();
+        clock = new SystemClock();
+    }
+
+    /**
+     * @param udpPort The port to listen on
+     * @param config
+     * @throws SocketException
+     */
+    public UdpTransport(int udpPort, KadConfiguration config) throws SocketException {
+        this.config = config;
+
+        int numSockets = Math.max(1, config.receiveSockets());
+        if (numSockets > 1 && !isReusePortSupported()) {
+            System.err.println("UdpTransport: SO_REUSEPORT is not supported on this platform, using a single socket.");
+            numSockets = 1;
+        }
+
+        this.sockets = new DatagramSocket[numSockets];
+        this.receiveSocket = ThreadLocal.withInitial(() -> this.sockets[Math.floorMod(this.nextSocket.getAndIncrement(), this.sockets.length)]);
+        try {
+            for (int i = 0; i < numSockets; i++) {
+                this.sockets[i] = this.openSocket(udpPort, numSockets > 1);
+            }
+        } catch (IOException e) {
+            this.close();
+            throw e instanceof SocketException ? (SocketException) e : new SocketException(e.getMessage());
+        }
+    }
+
+    private static boolean isReusePortSupported() throws SocketException {
+        try (DatagramSocket probe = new DatagramSocket((SocketAddress) null)) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+
+    private DatagramSocket openSocket(int udpPort, boolean reusePort) throws IOException {
+        DatagramSocket socket = new DatagramSocket((SocketAddress) null);
+        if (reusePort) {
+            socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        if (this.config.receiveBufferSize() > 0) {
+            socket.setReceiveBufferSize(this.config.receiveBufferSize());
+        }
+        socket.bind(new InetSocketAddress(udpPort));
+        return socket;
+    }
+
+    @Override
+    public void send(byte[] data, int length, InetSocketAddress to) throws IOException {
+        DatagramPacket pkt = new DatagramPacket(data, 0, length);
+        pkt.setSocketAddress(to);
+        this.sockets[0].send(pkt);
+    }
+
+    @Override
+    public int receive(byte[] buffer) throws IOException {
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        this.receiveSocket.get().receive(packet);
+
+        if (this.config.isTesting()) {
+            /**
+             * Simulating network latency
+             * We pause for 1 millisecond/100 bytes
+             */
+            int pause = packet.getLength() / 100;
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException ex) {
+
+            }
+        }
+
+        return packet.getLength();
+    }
+
+    @Override
+    public void close() {
+        for (DatagramSocket socket : this.sockets) {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        this.clock.shutdown();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.sockets[0] == null || this.sockets[0].isClosed();
+    }
+
+    @Override
+    public Clock getClock() {
+        return this.clock;
+    }
+}
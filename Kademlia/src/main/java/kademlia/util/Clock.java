@@ -0,0 +1,73 @@
+package kademlia.util;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The source of time for a KadServer and the operations running on it: it tells the time, runs timers
+ * and lets threads wait for a while.
+ * <p>
+ * Nodes running on a real network use the system clock; nodes on a simulated network use the virtual clock
+ * of that network, so timeouts and round trip times are measured in virtual time as well.
+ */
+public interface Clock {
+
+    /**
+     * @return The current time in milliseconds
+     */
+    public long currentTimeMillis();
+
+    /**
+     * @return The current value of a high resolution timer in nanoseconds, only meaningful to measure elapsed time
+     */
+    public long nanoTime();
+
+    /**
+     * Run a task once after a delay.
+     * <p>
+     * Tasks should return quickly, as they may share a thread with other tasks; longer work should be handed over to another thread.
+     *
+     * @param task  The task to run
+     * @param delay The delay in milliseconds
+     * @return A handle to cancel the task with
+     * @throws IllegalStateException If the clock has been shut down
+     */
+    public Task schedule(Runnable task, long delay);
+
+    /**
+     * Wait on a monitor held by the current thread, like monitor.wait(timeout), with the timeout measured by this clock.
+     * As with Object.wait, the thread may also wake up when it is notified or spuriously, so callers should wait in a loop.
+     *
+     * @param monitor The monitor to wait on
+     * @param timeout The maximum time to wait in milliseconds
+     * @throws InterruptedException
+     */
+    public void waitOn(Object monitor, long timeout) throws InterruptedException;
+
+    /**
+     * Wake up all threads waiting on a monitor held by the current thread, like monitor.notifyAll().
+     * Threads waiting with waitOn should always be woken up this way: a simulated clock only lets them continue once it knows about it.
+     *
+     * @param monitor The monitor to wake up the waiting threads of
+     */
+    public void wakeUp(Object monitor);
+
+    /**
+     * Create an executor for longer work, like operations that wait for replies, so it runs on this clock's time as well.
+     *
+     * @param name    The name of the threads running the work
+     * @param threads The maximum number of tasks running at the same time
+     * @return The executor
+     */
+    public ExecutorService newExecutor(String name, int threads);
+
+    /**
+     * A task scheduled on a clock
+     */
+    public interface Task {
+
+        /**
+         * Cancel the task if it has not run yet
+         */
+        public void cancel();
+    }
+}
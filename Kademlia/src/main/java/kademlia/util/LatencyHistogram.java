@@ -0,0 +1,117 @@
+package kademlia.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies that many threads can record into without locking.
+ * <p>
+ * Values are kept in microseconds in log-linear buckets: every power of two is split into 32 sub-buckets, so a
+ * percentile is accurate to within about 3%, for latencies from 1 microsecond up to days.
+ */
+public class LatencyHistogram {
+
+    /* Values below this are counted exactly; above it each power of two gets SUB_BUCKETS buckets */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int NUM_BUCKETS = LINEAR_LIMIT + (Long.SIZE - SUB_BUCKET_BITS - 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    {
+        buckets = new AtomicLongArray(NUM_BUCKETS);
+        count = new LongAdder();
+        sum = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record a latency
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000L);
+        this.buckets.incrementAndGet(bucketIndex(micros));
+        this.count.increment();
+        this.sum.add(micros);
+        this.max.accumulate(micros);
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The highest value (in microseconds) that falls in the given bucket
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int magnitude = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        long lowerBound = (1L << magnitude) + (subBucket << (magnitude - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * @return The number of latencies recorded
+     */
+    public long count() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return The mean latency in microseconds, or 0 if nothing was recorded
+     */
+    public double mean() {
+        long n = this.count.sum();
+        return n == 0 ? 0D : (double) this.sum.sum() / n;
+    }
+
+    /**
+     * @return The highest latency recorded, in microseconds
+     */
+    public long max() {
+        return this.max.get();
+    }
+
+    /**
+     * Compute a percentile; concurrent recordings may or may not be taken into account.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency in microseconds below which the given percentage of latencies fall, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100D * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), this.max());
+            }
+        }
+        return this.max();
+    }
+}
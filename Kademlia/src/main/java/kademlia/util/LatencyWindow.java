@@ -0,0 +1,59 @@
+package kademlia.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency measurements of some kind of request, so that percentiles can be computed over them.
+ * <p>
+ * Only a fixed number of measurements is kept; older ones are overwritten.
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity The number of measurements to keep
+     */
+    public LatencyWindow(int capacity) {
+        this.samples = new long[capacity];
+        this.next = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Add a new latency measurement
+     *
+     * @param latency The latency in milliseconds
+     */
+    public synchronized void add(long latency) {
+        this.samples[this.next] = latency;
+        this.next = (this.next + 1) % this.samples.length;
+        if (this.size < this.samples.length) {
+            this.size++;
+        }
+    }
+
+    /**
+     * @return Whether any measurements have been added
+     */
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param percentile The percentile to compute, between 0 and 100
+     * @return The latency in milliseconds below which the given percentage of measurements fall, or 0 if there are none
+     */
+    public synchronized long percentile(double percentile) {
+        if (this.size == 0) {
+            return 0;
+        }
+
+        long[] sorted = Arrays.copyOf(this.samples, this.size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100D * this.size) - 1;
+        return sorted[Math.max(0, Math.min(index, this.size - 1))];
+    }
+}
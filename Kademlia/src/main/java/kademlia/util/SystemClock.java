@@ -0,0 +1,71 @@
+package kademlia.util;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A clock following the system time; tasks are run one at a time by a Timer thread.
+ */
+public class SystemClock implements Clock {
+
+    private final Timer timer;
+
+    {
+        timer = new Timer(true);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public Task schedule(Runnable task, long delay) {
+        TimerTask timerTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    /* A failing task should not stop the timer from running the others */
+                    System.err.println("SystemClock: a scheduled task failed; Message: " + e.getMessage());
+                }
+            }
+        };
+        this.timer.schedule(timerTask, delay);
+        return timerTask::cancel;
+    }
+
+    @Override
+    public void waitOn(Object monitor, long timeout) throws InterruptedException {
+        monitor.wait(timeout);
+    }
+
+    @Override
+    public void wakeUp(Object monitor) {
+        monitor.notifyAll();
+    }
+
+    @Override
+    public ExecutorService newExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Cancel all scheduled tasks and stop the timer thread
+     */
+    public void shutdown() {
+        this.timer.cancel();
+    }
+}
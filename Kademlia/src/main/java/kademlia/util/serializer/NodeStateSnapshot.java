@@ -0,0 +1,284 @@
+package kademlia.util.serializer;
+
+import kademlia.KadConfiguration;
+import kademlia.dht.DHT;
+import kademlia.dht.KademliaDHT;
+import kademlia.dht.KademliaStorageEntryMetadata;
+import kademlia.dht.StorageEntryMetadata;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.routing.Contact;
+import kademlia.routing.JKademliaRoutingTable;
+import kademlia.routing.KademliaRoutingTable;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary snapshot of the state of a node: its routing table and the index of the content it stores.
+ * The content itself is already stored in separate files by the DHT.
+ * <p>
+ * Layout (big endian):
+ * - int magic, short version
+ * - owner id, UDP port, local node
+ * - int number of contacts; per contact: node, long last seen, int stale count
+ * - int number of entries; per entry: key, owner id, type, int content hash, long updated timestamp,
+ * long last republished, long time to live (since version 4), long expiry time, boolean cached copy,
+ * long size, long last read (since version 2), boolean published by this node (since version 3)
+ * - long CRC32 checksum of everything before it
+ * <p>
+ * The times of entries are in milliseconds on the clock of the node; before version 4, the last republished
+ * and expiry times were in seconds.
+ * <p>
+ * Strings are written as an int length (-1 for null) followed by their UTF-8 bytes; nodes as their 20 byte id,
+ * 4 byte IPv4 address and int port.
+ * <p>
+ * Snapshots are written to a temporary file which is renamed over the previous snapshot, so a crash while saving
+ * never leaves a half written snapshot behind. They are read through a memory map of the file.
+ */
+public class NodeStateSnapshot {
+
+    public static final String FILE_NAME = "state.kss";
+
+    private static final int MAGIC = 0x4B534E50;    // "KSNP"
+    private static final short VERSION = 4;
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final int NODE_ID_LENGTH = KademliaId.ID_LENGTH / 8;
+
+    private final String ownerId;
+    private final int udpPort;
+    private final Node localNode;
+    private final KademliaRoutingTable routingTable;
+    private final KademliaDHT dht;
+
+    private NodeStateSnapshot(String ownerId, int udpPort, Node localNode, KademliaRoutingTable routingTable, KademliaDHT dht) {
+        this.ownerId = ownerId;
+        this.udpPort = udpPort;
+        this.localNode = localNode;
+        this.routingTable = routingTable;
+        this.dht = dht;
+    }
+
+    /**
+     * Atomically write a snapshot of the state of a node
+     *
+     * @param file         The file to write the snapshot to
+     * @param ownerId      The owner id of the node
+     * @param udpPort      The UDP port of the node
+     * @param localNode    The node itself
+     * @param routingTable The routing table of the node
+     * @param dht          The DHT of the node
+     * @throws IOException
+     */
+    public static void write(Path file, String ownerId, int udpPort, Node localNode, KademliaRoutingTable routingTable, KademliaDHT dht) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileOutputStream fout = new FileOutputStream(tmp.toFile())) {
+            CheckedOutputStream cout = new CheckedOutputStream(new BufferedOutputStream(fout), new CRC32());
+            DataOutputStream dout = new DataOutputStream(cout);
+
+            dout.writeInt(MAGIC);
+            dout.writeShort(VERSION);
+            writeString(dout, ownerId);
+            dout.writeInt(udpPort);
+            localNode.toStream(dout);
+
+            List<Contact> contacts = routingTable.getAllContacts();
+            dout.writeInt(contacts.size());
+            for (Contact c : contacts) {
+                c.getNode().toStream(dout);
+                dout.writeLong(c.lastSeen());
+                dout.writeInt(c.staleCount());
+            }
+
+            List<KademliaStorageEntryMetadata> entries = dht.getStorageEntries();
+            dout.writeInt(entries.size());
+            for (KademliaStorageEntryMetadata e : entries) {
+                e.getKey().toStream(dout);
+                writeString(dout, e.getOwnerId());
+                writeString(dout, e.getType());
+                dout.writeInt(e.getContentHash());
+                dout.writeLong(e.getLastUpdatedTimestamp());
+                dout.writeLong(e.lastRepublished());
+                dout.writeLong(e.getTimeToLive());
+                dout.writeLong(e.getExpiryTime());
+                dout.writeBoolean(e.isCachedCopy());
+                dout.writeLong(e.getSize());
+                dout.writeLong(e.lastRead());
+                dout.writeBoolean(e.isPublished());
+            }
+
+            dout.flush();
+            dout.writeLong(cout.getChecksum().getValue());
+            dout.flush();
+
+            /* Make sure the snapshot is on disk before it replaces the previous one */
+            fout.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Read a snapshot of the state of a node
+     *
+     * @param file   The file containing the snapshot
+     * @param config The configuration to use for the restored routing table and DHT
+     * @return The snapshot
+     * @throws IOException If the file can't be read, or does not contain a valid snapshot
+     */
+    public static NodeStateSnapshot read(Path file, KadConfiguration config) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < CHECKSUM_LENGTH || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + size);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int bodyLength = (int) size - CHECKSUM_LENGTH;
+
+            /* Verify the checksum before trusting any of the contents */
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buffer.duplicate();
+            body.limit(bodyLength);
+            crc.update(body);
+            if (crc.getValue() != buffer.getLong(bodyLength)) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            buffer.limit(bodyLength);
+            return read(buffer, config);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + file, e);
+        }
+    }
+
+    private static NodeStateSnapshot read(ByteBuffer in, KadConfiguration config) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a node state snapshot");
+        }
+        short version = in.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+
+        String ownerId = readString(in);
+        int udpPort = in.getInt();
+        Node localNode = readNode(in);
+
+        KademliaRoutingTable routingTable = new JKademliaRoutingTable(localNode, config);
+        int numContacts = in.getInt();
+        for (int i = 0; i < numContacts; i++) {
+            Node n = readNode(in);
+            long lastSeen = in.getLong();
+            int staleCount = in.getInt();
+            routingTable.insert(new Contact(n, lastSeen, staleCount));
+        }
+
+        DHT dht = new DHT(ownerId, config);
+        int numEntries = in.getInt();
+        List<KademliaStorageEntryMetadata> entries = new ArrayList<>(numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            KademliaId key = readId(in);
+            String entryOwnerId = readString(in);
+            String type = readString(in);
+            int contentHash = in.getInt();
+            long updatedTs = in.getLong();
+            long lastRepublished = in.getLong();
+            /* Older snapshots only hold the expiry time, which is all a stored entry needs */
+            long timeToLive = version >= 4 ? in.getLong() : 0;
+            long expiryTime = in.getLong();
+            if (version < 4) {
+                lastRepublished *= 1000L;
+                expiryTime *= 1000L;
+            }
+            boolean cachedCopy = in.get() != 0;
+            long size = version >= 2 ? in.getLong() : 0;
+            /* Entries of which we don't know when they were read are the first to be evicted */
+            long lastRead = version >= 2 ? in.getLong() : 0;
+            boolean published = version >= 3 && in.get() != 0;
+            entries.add(new StorageEntryMetadata(key, entryOwnerId, type, contentHash, updatedTs, lastRepublished, timeToLive,
+                    expiryTime, cachedCopy, size, lastRead, published));
+        }
+        dht.putStorageEntries(entries);
+
+        return new NodeStateSnapshot(ownerId, udpPort, localNode, routingTable, dht);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length in snapshot: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static KademliaId readId(ByteBuffer in) {
+        byte[] id = new byte[NODE_ID_LENGTH];
+        in.get(id);
+        return new KademliaId(id);
+    }
+
+    private static Node readNode(ByteBuffer in) throws IOException {
+        KademliaId id = readId(in);
+        byte[] ip = new byte[4];
+        in.get(ip);
+        return new Node(id, InetAddress.getByAddress(ip), in.getInt());
+    }
+
+    public String getOwnerId() {
+        return this.ownerId;
+    }
+
+    public int getUdpPort() {
+        return this.udpPort;
+    }
+
+    public Node getLocalNode() {
+        return this.localNode;
+    }
+
+    public KademliaRoutingTable getRoutingTable() {
+        return this.routingTable;
+    }
+
+    public KademliaDHT getDht() {
+        return this.dht;
+    }
+}
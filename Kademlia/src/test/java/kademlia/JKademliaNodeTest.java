@@ -0,0 +1,269 @@
+package kademlia;
+
+import kademlia.dht.DHT;
+import kademlia.dht.GetParameter;
+import kademlia.dht.JKademliaStorageEntry;
+import kademlia.dht.KadContent;
+import kademlia.exceptions.RoutingException;
+import kademlia.node.KademliaId;
+import kademlia.node.KeyComparator;
+import kademlia.node.Node;
+import kademlia.routing.JKademliaRoutingTable;
+import kademlia.simulations.DHTContentImpl;
+import kademlia.transport.SimulatedNetwork;
+import kademlia.transport.SimulatedNetwork.Distribution;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JKademliaNodeTest {
+
+    private static final int NUM_NODES = 20;
+
+    @Test
+    void concurrentGetsShareOneLookup() throws Exception {
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.constant(20), 0, Distribution.constant(1000), 0);
+        Path folder = Files.createTempDirectory("kademlia-node");
+        List<JKademliaNode> nodes = this.bootstrap(network, NUM_NODES, this.configuration(folder, true));
+
+        DHTContentImpl content = new DHTContentImpl(nodes.get(0).getOwnerId(), "shared");
+        nodes.get(0).put(content);
+
+        /* Read from a node that does not store the content itself */
+        GetParameter param = new GetParameter(content.getKey(), DHTContentImpl.TYPE);
+        JKademliaNode reader = nodes.stream().filter(n -> !n.getDHT().contains(param)).findFirst().orElseThrow();
+        int lookupsBefore = reader.getStatistician().numContentLookups();
+
+        ExecutorService callers = network.newExecutor("callers", 4);
+        ConcurrentLinkedQueue<String> found = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 4; i++) {
+            callers.execute(() -> {
+                try {
+                    JKademliaStorageEntry entry = reader.get(new GetParameter(content.getKey(), DHTContentImpl.TYPE));
+                    found.add(new DHTContentImpl().fromSerializedForm(entry.getContent()).toString());
+                } catch (Exception e) {
+                    found.add(e.toString());
+                }
+            });
+        }
+        network.sleep(10 * 1000L);
+
+        assertEquals(List.of(content.toString(), content.toString(), content.toString(), content.toString()), new ArrayList<>(found));
+        assertEquals(lookupsBefore + 1, reader.getStatistician().numContentLookups());
+        this.shutdown(network, nodes, folder);
+    }
+
+    @Test
+    void versionedContentIsCachedAlongPath() throws Exception {
+        /* Replies of nodes further away from the content should arrive first, at times */
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.exponential(10, 40), 0, Distribution.constant(1000), 0);
+        Path folder = Files.createTempDirectory("kademlia-node");
+        List<JKademliaNode> nodes = this.bootstrap(network, 2 * NUM_NODES, this.configuration(folder, false));
+        Random random = new Random(2);
+
+        /* Content without a version could be an older one than the closest nodes store, so it is never cached */
+        KadContent versioned = new TestContent(this.randomKey(random), 1);
+        KadContent unversioned = new TestContent(this.randomKey(random), 0);
+        for (KadContent content : List.of(versioned, unversioned)) {
+            /* Only the closest node stores the content, so the lookup passes nodes that don't */
+            KeyComparator comparator = new KeyComparator(content.getKey());
+            nodes.stream().min((n1, n2) -> comparator.compare(n1.getNode(), n2.getNode())).orElseThrow().putLocally(content);
+
+            JKademliaNode reader = nodes.stream().max((n1, n2) -> comparator.compare(n1.getNode(), n2.getNode())).orElseThrow();
+            reader.get(new GetParameter(content));
+        }
+        network.sleep(1000);
+
+        assertEquals(1, this.numCachedCopies(nodes, new GetParameter(versioned)));
+        assertEquals(0, this.numCachedCopies(nodes, new GetParameter(unversioned)));
+        this.shutdown(network, nodes, folder);
+    }
+
+    @Test
+    void putAsyncCompletesAtWriteQuorum() throws Exception {
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.exponential(10, 40), 0, Distribution.constant(1000), 0);
+        Path folder = Files.createTempDirectory("kademlia-node");
+        KadConfiguration config = this.configuration(folder, true);
+        List<JKademliaNode> nodes = this.bootstrap(network, NUM_NODES, config);
+        Random random = new Random(3);
+
+        /* The future completes as soon as two nodes acknowledged the store, the others follow */
+        KadContent content = new TestContent(this.randomKey(random), 1);
+        CompletableFuture<Integer> quorum = nodes.get(0).putAsync(content, 2);
+        while (!quorum.isDone()) {
+            network.sleep(1);
+        }
+        assertEquals(2, quorum.get());
+        assertTrue(this.numReplicas(nodes, new GetParameter(content)) < config.k());
+
+        network.sleep(1000);
+        assertEquals(config.k(), this.numReplicas(nodes, new GetParameter(content)));
+
+        /* A write quorum larger than the number of nodes asked can never be reached */
+        CompletableFuture<Integer> unreachable = nodes.get(0).putAsync(new TestContent(this.randomKey(random), 1), config.k() + 1);
+        while (!unreachable.isDone()) {
+            network.sleep(1);
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, unreachable::get);
+        assertTrue(e.getCause() instanceof RoutingException);
+        this.shutdown(network, nodes, folder);
+    }
+
+    private long numReplicas(List<JKademliaNode> nodes, GetParameter param) {
+        return nodes.stream().filter(n -> n.getDHT().contains(param)).count();
+    }
+
+    private long numCachedCopies(List<JKademliaNode> nodes, GetParameter param) throws IOException {
+        long numCached = 0;
+        for (JKademliaNode n : nodes) {
+            if (n.getDHT().contains(param) && n.getDHT().get(param).getContentMetadata().isCachedCopy()) {
+                numCached++;
+            }
+        }
+        return numCached;
+    }
+
+    private KademliaId randomKey(Random random) {
+        byte[] id = new byte[KademliaId.ID_LENGTH / 8];
+        random.nextBytes(id);
+        return new KademliaId(id);
+    }
+
+    /**
+     * Content with a fixed version
+     */
+    private static class TestContent implements KadContent {
+
+        private final KademliaId key;
+        private final long version;
+
+        private TestContent(KademliaId key, long version) {
+            this.key = key;
+            this.version = version;
+        }
+
+        @Override
+        public KademliaId getKey() {
+            return this.key;
+        }
+
+        @Override
+        public String getType() {
+            return "TestContent";
+        }
+
+        @Override
+        public long getCreatedTimestamp() {
+            return this.version;
+        }
+
+        @Override
+        public long getLastUpdatedTimestamp() {
+            return this.version;
+        }
+
+        @Override
+        public String getOwnerId() {
+            return "owner";
+        }
+
+        @Override
+        public byte[] toSerializedForm() {
+            return Long.toString(this.version).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public KadContent fromSerializedForm(byte[] data) {
+            return new TestContent(this.key, Long.parseLong(new String(data, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Configuration without the recent lookup cache, so repeated gets are only shared while they run
+     *
+     * @param folder       The folder to store the content of all nodes in, each in its own subfolder
+     * @param replicaReads Whether to read from the closest nodes first; if not, every get is a content lookup
+     */
+    private KadConfiguration configuration(Path folder, boolean replicaReads) {
+        return new DefaultConfiguration() {
+            @Override
+            public String getNodeDataFolder(String ownerId) {
+                File ownerFolder = folder.resolve(ownerId).toFile();
+                ownerFolder.mkdir();
+                return ownerFolder.toString();
+            }
+
+            @Override
+            public int lookupCacheSize() {
+                return 0;
+            }
+
+            @Override
+            public boolean isReplicaReads() {
+                return replicaReads;
+            }
+
+            @Override
+            public long restoreInterval() {
+                return 60 * 60 * 1000L;
+            }
+        };
+    }
+
+    /**
+     * Bootstrap a network of nodes, each to the first one
+     */
+    private List<JKademliaNode> bootstrap(SimulatedNetwork network, int numNodes, KadConfiguration config) throws IOException, InterruptedException {
+        InetAddress address = InetAddress.getLoopbackAddress();
+        Random random = new Random(numNodes);
+
+        List<JKademliaNode> nodes = new ArrayList<>();
+        for (int i = 0; i < numNodes; i++) {
+            Node node = new Node(this.randomKey(random), address, 20000 + i);
+            String ownerId = "node" + i;
+            JKademliaNode kad = new JKademliaNode(ownerId, node, 20000 + i, network.connect(new InetSocketAddress(address, 20000 + i)),
+                    new DHT(ownerId, config), new JKademliaRoutingTable(node, config), config);
+            if (!nodes.isEmpty()) {
+                try {
+                    kad.bootstrap(nodes.get(0).getNode());
+                } catch (RoutingException e) {
+                    throw new IOException(e);
+                }
+            }
+            nodes.add(kad);
+        }
+
+        /* Let the bucket refreshes finish */
+        network.sleep(10 * 1000L);
+        return nodes;
+    }
+
+    private void shutdown(SimulatedNetwork network, List<JKademliaNode> nodes, Path folder) throws IOException {
+        for (JKademliaNode kad : nodes) {
+            kad.shutdown(false);
+        }
+        network.shutdown();
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
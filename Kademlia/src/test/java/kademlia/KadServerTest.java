@@ -0,0 +1,53 @@
+package kademlia;
+
+import kademlia.routing.RoundTripTimeEstimator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KadServerTest {
+
+    private final KadConfiguration config = new DefaultConfiguration();
+
+    @Test
+    void unmeasuredNodeUsesInitialTimeout() {
+        /* Nodes that are not in the routing table, or that have not replied yet */
+        assertEquals(config.responseTimeout(), KadServer.retransmissionTimeout(null, config));
+        assertEquals(config.responseTimeout(), KadServer.responseTimeout(null, config));
+
+        RoundTripTimeEstimator estimator = new RoundTripTimeEstimator();
+        assertEquals(config.responseTimeout(), KadServer.retransmissionTimeout(estimator, config));
+        assertEquals(config.responseTimeout(), KadServer.responseTimeout(estimator, config));
+    }
+
+    @Test
+    void measuredNodeUsesItsOwnTimeout() {
+        RoundTripTimeEstimator estimator = new RoundTripTimeEstimator();
+        estimator.addSample(100);
+
+        assertEquals(300, KadServer.retransmissionTimeout(estimator, config));
+        assertEquals(600, KadServer.responseTimeout(estimator, config));
+    }
+
+    @Test
+    void timeoutIsBounded() {
+        /* Fast nodes still get the minimum time to reply */
+        RoundTripTimeEstimator fast = new RoundTripTimeEstimator();
+        fast.addSample(1);
+        assertEquals(config.minResponseTimeout(), KadServer.retransmissionTimeout(fast, config));
+
+        /* Slow nodes may exceed the initial timeout, up to the maximum */
+        RoundTripTimeEstimator slow = new RoundTripTimeEstimator();
+        slow.addSample(1500);
+        assertEquals(4500, KadServer.retransmissionTimeout(slow, config));
+        assertEquals(9000, KadServer.responseTimeout(slow, config));
+
+        slow.backOff();
+        assertEquals(9000, KadServer.retransmissionTimeout(slow, config));
+        assertEquals(config.maxResponseTimeout(), KadServer.responseTimeout(slow, config));
+
+        slow.backOff();
+        assertEquals(config.maxResponseTimeout(), KadServer.retransmissionTimeout(slow, config));
+        assertEquals(config.maxResponseTimeout(), KadServer.responseTimeout(slow, config));
+    }
+}
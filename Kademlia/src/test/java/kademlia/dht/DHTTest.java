@@ -0,0 +1,216 @@
+package kademlia.dht;
+
+import kademlia.DefaultConfiguration;
+import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.transport.SimulatedNetwork;
+import kademlia.transport.SimulatedNetwork.Distribution;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DHTTest {
+
+    @Test
+    void hasCurrentVersionComparesContentOfSameTimestamp() throws IOException {
+        Path folder = Files.createTempDirectory("kademlia-dht");
+        try {
+            DHT dht = new DHT("owner", this.configuration(folder));
+            KademliaId key = new KademliaId();
+
+            JKademliaStorageEntry stored = new JKademliaStorageEntry(new VersionedContent(key, 1, "stored"));
+            assertTrue(dht.store(stored));
+
+            /* The same content again counts as stored */
+            JKademliaStorageEntry same = new JKademliaStorageEntry(new VersionedContent(key, 1, "stored"));
+            assertFalse(dht.store(same));
+            assertTrue(dht.hasCurrentVersion(same.getContentMetadata()));
+
+            /* Other content with the same timestamp is not the version we store */
+            JKademliaStorageEntry conflicting = new JKademliaStorageEntry(new VersionedContent(key, 1, "conflicting"));
+            assertFalse(dht.store(conflicting));
+            assertFalse(dht.hasCurrentVersion(conflicting.getContentMetadata()));
+
+            /* An older version is superseded by what we store */
+            assertTrue(dht.hasCurrentVersion(new JKademliaStorageEntry(new VersionedContent(key, 0, "older")).getContentMetadata()));
+        } finally {
+            try (Stream<Path> paths = Files.walk(folder)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    void timeToLiveRunsOnLocalClock() throws Exception {
+        Path folder = Files.createTempDirectory("kademlia-dht");
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.constant(5), 0, Distribution.constant(1000), 0);
+        try {
+            network.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 10000));
+            DHT dht = new DHT("owner", this.configuration(folder));
+            dht.setClock(network);
+
+            /* Our clock being far off from the one of the sender doesn't matter */
+            network.sleep(1000 * 1000L);
+            VersionedContent content = new VersionedContent(new KademliaId(), 1, "expiring");
+            assertTrue(dht.store(new JKademliaStorageEntry(content, 5000)));
+
+            /* Whoever we hand the content to gets the time it has left */
+            network.sleep(2000);
+            assertEquals(3000, dht.get(new GetParameter(content)).getContentMetadata().getTimeToLive());
+
+            network.sleep(3000);
+            assertFalse(dht.contains(new GetParameter(content)));
+        } finally {
+            network.shutdown();
+            try (Stream<Path> paths = Files.walk(folder)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    void evictsExpiredThenLeastRecentlyRead() throws Exception {
+        Path folder = Files.createTempDirectory("kademlia-dht");
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.constant(5), 0, Distribution.constant(1000), 0);
+        try {
+            network.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 10000));
+            AtomicLong quota = new AtomicLong();
+            DHT dht = new DHT("owner", this.configuration(folder, quota));
+            dht.setClock(network);
+
+            VersionedContent published = new VersionedContent(this.key(0), 1, "published");
+            VersionedContent expiring = new VersionedContent(this.key(1), 1, "expiring1");
+            VersionedContent read = new VersionedContent(this.key(2), 1, "readlater");
+            VersionedContent unread = new VersionedContent(this.key(3), 1, "neverread");
+            assertTrue(dht.store(new JKademliaStorageEntry(published), true));
+            assertTrue(dht.store(new JKademliaStorageEntry(expiring, 1000)));
+            assertTrue(dht.store(new JKademliaStorageEntry(read)));
+            assertTrue(dht.store(new JKademliaStorageEntry(unread)));
+
+            /* The expiring content is read more recently than the unread content, but expires before we run out of space */
+            network.sleep(500);
+            dht.get(new GetParameter(expiring));
+            network.sleep(1500);
+            dht.get(new GetParameter(read));
+            quota.set(dht.getBytesStored());
+
+            assertTrue(dht.store(new JKademliaStorageEntry(new VersionedContent(this.key(4), 1, "incoming1"))));
+            assertTrue(dht.contains(new GetParameter(unread)));
+
+            /* Then the content that was read the longest ago goes */
+            network.sleep(1000);
+            VersionedContent incoming = new VersionedContent(this.key(5), 1, "incoming2");
+            assertTrue(dht.store(new JKademliaStorageEntry(incoming)));
+            assertFalse(dht.contains(new GetParameter(unread)));
+            assertTrue(dht.contains(new GetParameter(read)));
+
+            /* Content we put ourselves stays, even if nothing else fits anymore */
+            quota.set(1);
+            assertFalse(dht.store(new JKademliaStorageEntry(new VersionedContent(this.key(6), 1, "incoming3"))));
+            assertFalse(dht.contains(new GetParameter(read)));
+            assertFalse(dht.contains(new GetParameter(incoming)));
+            assertTrue(dht.contains(new GetParameter(published)));
+        } finally {
+            network.shutdown();
+            try (Stream<Path> paths = Files.walk(folder)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Content with a fixed timestamp
+     */
+    private static class VersionedContent implements KadContent {
+
+        private final KademliaId key;
+        private final long version;
+        private final String data;
+
+        private VersionedContent(KademliaId key, long version, String data) {
+            this.key = key;
+            this.version = version;
+            this.data = data;
+        }
+
+        @Override
+        public KademliaId getKey() {
+            return this.key;
+        }
+
+        @Override
+        public String getType() {
+            return "VersionedContent";
+        }
+
+        @Override
+        public long getCreatedTimestamp() {
+            return this.version;
+        }
+
+        @Override
+        public long getLastUpdatedTimestamp() {
+            return this.version;
+        }
+
+        @Override
+        public String getOwnerId() {
+            return "owner";
+        }
+
+        @Override
+        public byte[] toSerializedForm() {
+            return (this.version + ":" + this.data).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public KadContent fromSerializedForm(byte[] data) {
+            String[] parts = new String(data, StandardCharsets.UTF_8).split(":", 2);
+            return new VersionedContent(this.key, Long.parseLong(parts[0]), parts[1]);
+        }
+    }
+
+    /**
+     * A key with the same serialized length as every other key from this method, so all content takes the same room
+     */
+    private KademliaId key(int n) {
+        byte[] id = new byte[KademliaId.ID_LENGTH / 8];
+        Arrays.fill(id, (byte) (10 + n));
+        return new KademliaId(id);
+    }
+
+    private KadConfiguration configuration(Path folder) {
+        return this.configuration(folder, new AtomicLong());
+    }
+
+    /**
+     * @param quota The storage quota, which can be changed while the DHT runs; 0 for none
+     */
+    private KadConfiguration configuration(Path folder, AtomicLong quota) {
+        return new DefaultConfiguration() {
+            @Override
+            public String getNodeDataFolder(String ownerId) {
+                return folder.toString();
+            }
+
+            @Override
+            public long storageQuota() {
+                return quota.get();
+            }
+        };
+    }
+}
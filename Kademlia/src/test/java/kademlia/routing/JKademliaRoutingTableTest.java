@@ -0,0 +1,75 @@
+package kademlia.routing;
+
+import kademlia.DefaultConfiguration;
+import kademlia.KadConfiguration;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JKademliaRoutingTableTest {
+
+    @Test
+    void fasterReplacementOnlyTakesPlaceOfFailedContact() {
+        KadConfiguration config = new DefaultConfiguration() {
+            @Override
+            public int k() {
+                return 2;
+            }
+
+            @Override
+            public boolean isProximityNeighborSelection() {
+                return true;
+            }
+        };
+        JKademliaRoutingTable table = new JKademliaRoutingTable(this.node(0), config);
+        List<Node> added = new ArrayList<>();
+        table.setContactListener(added::add);
+
+        /* All nodes share the farthest bucket; the last two end up in the replacement cache */
+        Node slow = this.node(0x80);
+        Node other = this.node(0x81);
+        Node fast = this.node(0x82);
+        Node medium = this.node(0x83);
+        for (Node n : List.of(slow, other, fast, medium)) {
+            table.insert(n);
+        }
+        this.measure(table, slow, 300);
+        this.measure(table, other, 300);
+        this.measure(table, fast, 10);
+        this.measure(table, medium, 100);
+
+        /* Contacts that keep responding are never pushed out for faster ones */
+        table.insert(fast);
+        assertNotNull(table.getContact(slow));
+        assertNull(table.getContact(fast));
+        assertEquals(List.of(slow, other), added);
+
+        /* Once one fails, the fastest replacement takes its place */
+        table.setUnresponsiveContact(slow);
+        assertNull(table.getContact(slow));
+        assertNotNull(table.getContact(fast));
+        assertNull(table.getContact(medium));
+        assertEquals(List.of(slow, other, fast), added);
+    }
+
+    private void measure(JKademliaRoutingTable table, Node n, long rtt) {
+        table.getKnownContact(n).getRttEstimator().addSample(rtt);
+    }
+
+    /**
+     * @param firstByte The first byte of the node ID, the others are zero
+     */
+    private Node node(int firstByte) {
+        byte[] id = new byte[KademliaId.ID_LENGTH / 8];
+        id[0] = (byte) firstByte;
+        return new Node(new KademliaId(id), InetAddress.getLoopbackAddress(), 10000 + firstByte);
+    }
+}
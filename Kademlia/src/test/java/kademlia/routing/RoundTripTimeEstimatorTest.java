@@ -0,0 +1,58 @@
+package kademlia.routing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoundTripTimeEstimatorTest {
+
+    @Test
+    void usesInitialTimeoutUntilFirstSample() {
+        RoundTripTimeEstimator estimator = new RoundTripTimeEstimator();
+        assertFalse(estimator.hasEstimate());
+        assertEquals(2000, estimator.getRetransmissionTimeout(2000));
+
+        /* The initial timeout is backed off as well */
+        estimator.backOff();
+        assertEquals(4000, estimator.getRetransmissionTimeout(2000));
+    }
+
+    @Test
+    void followsRfc6298() {
+        RoundTripTimeEstimator estimator = new RoundTripTimeEstimator();
+
+        /* SRTT = R, RTTVAR = R / 2 */
+        estimator.addSample(100);
+        assertTrue(estimator.hasEstimate());
+        assertEquals(100, estimator.getSmoothedRtt(), 0.001);
+        assertEquals(50, estimator.getRttVariation(), 0.001);
+        assertEquals(300, estimator.getRetransmissionTimeout(2000));
+
+        /* RTTVAR = 3/4 * 50 + 1/4 * |100 - 200|, SRTT = 7/8 * 100 + 1/8 * 200 */
+        estimator.addSample(200);
+        assertEquals(62.5, estimator.getRttVariation(), 0.001);
+        assertEquals(112.5, estimator.getSmoothedRtt(), 0.001);
+        assertEquals(363, estimator.getRetransmissionTimeout(2000));
+    }
+
+    @Test
+    void backOffDoublesUntilNextSample() {
+        RoundTripTimeEstimator estimator = new RoundTripTimeEstimator();
+        estimator.addSample(100);
+
+        estimator.backOff();
+        estimator.backOff();
+        assertEquals(1200, estimator.getRetransmissionTimeout(2000));
+
+        /* The backoff is capped */
+        for (int i = 0; i < 10; i++) {
+            estimator.backOff();
+        }
+        assertEquals(300 << 6, estimator.getRetransmissionTimeout(2000));
+
+        estimator.addSample(100);
+        assertEquals(250, estimator.getRetransmissionTimeout(2000));
+    }
+}
@@ -0,0 +1,83 @@
+package kademlia.transport;
+
+import kademlia.transport.SimulatedNetwork.Distribution;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingTransportTest {
+
+    private static final int MAX_DATAGRAM_SIZE = 200;
+    /* The flusher runs on real time, so it must not send while the simulation runs; we flush ourselves instead */
+    private static final long FLUSH_WINDOW = 60 * 1000 * 1000L;
+    private static final int NUM_MESSAGES = 200;
+
+    @Test
+    void coalescedMessagesKeepTheirOrderPerPeer() throws Exception {
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.constant(5), 0, Distribution.constant(1000), 0);
+        InetAddress address = InetAddress.getLoopbackAddress();
+        CoalescingTransport sender = new CoalescingTransport(network.connect(new InetSocketAddress(address, 10000)), MAX_DATAGRAM_SIZE, FLUSH_WINDOW);
+        SimulatedTransport first = network.connect(new InetSocketAddress(address, 10001));
+        SimulatedTransport second = network.connect(new InetSocketAddress(address, 10002));
+
+        List<Integer> sentToFirst = new ArrayList<>();
+        List<Integer> sentToSecond = new ArrayList<>();
+        Random random = new Random(1);
+        for (int comm = 1; comm <= NUM_MESSAGES; comm++) {
+            boolean toFirst = random.nextBoolean();
+            (toFirst ? sentToFirst : sentToSecond).add(comm);
+
+            /* Some messages are too large to share a datagram, others fill one up */
+            byte[] message = message(comm, random.nextInt(10) == 0 ? MAX_DATAGRAM_SIZE : 5 + random.nextInt(60));
+            sender.send(message, message.length, (toFirst ? first : second).getAddress());
+            if (random.nextInt(8) == 0) {
+                sender.flush();
+            }
+        }
+        sender.flush();
+
+        /* A datagram holds the simulation until its receiver takes it, so both peers need to receive at the same time */
+        ExecutorService executor = network.newExecutor("receiver", 1);
+        Future<List<Integer>> receivedBySecond = executor.submit(() -> receive(new CoalescingTransport(second, MAX_DATAGRAM_SIZE, FLUSH_WINDOW), sentToSecond.size()));
+        assertEquals(sentToFirst, receive(new CoalescingTransport(first, MAX_DATAGRAM_SIZE, FLUSH_WINDOW), sentToFirst.size()));
+        network.sleep(1000);
+        assertEquals(sentToSecond, receivedBySecond.get());
+        assertTrue(network.numDelivered() < NUM_MESSAGES);
+        network.shutdown();
+    }
+
+    /**
+     * @param comm   The comm ID the message starts with, never 0
+     * @param length The length of the message, at least 5 bytes
+     */
+    private static byte[] message(int comm, int length) {
+        byte[] message = new byte[length];
+        ByteBuffer.wrap(message).putInt(comm).put((byte) 1);
+        return message;
+    }
+
+    /**
+     * @return The comm IDs of the messages received, in the order they were handed out
+     */
+    private static List<Integer> receive(CoalescingTransport transport, int numMessages) throws IOException {
+        List<Integer> comms = new ArrayList<>();
+        byte[] buffer = new byte[2 * MAX_DATAGRAM_SIZE];
+        for (int i = 0; i < numMessages; i++) {
+            int length = transport.receive(buffer);
+            assertTrue(length >= 5);
+            comms.add(ByteBuffer.wrap(buffer, 0, length).getInt(0));
+        }
+        return comms;
+    }
+}
@@ -0,0 +1,136 @@
+package kademlia.transport;
+
+import kademlia.DefaultConfiguration;
+import kademlia.JKademliaNode;
+import kademlia.KadConfiguration;
+import kademlia.dht.DHT;
+import kademlia.exceptions.RoutingException;
+import kademlia.node.KademliaId;
+import kademlia.node.Node;
+import kademlia.routing.JKademliaRoutingTable;
+import kademlia.transport.SimulatedNetwork.Distribution;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SimulatedNetworkTest {
+
+    private static final int NUM_NODES = 200;
+
+    @Test
+    void bootstrapIsDeterministic() throws Exception {
+        List<String> first = this.bootstrap(NUM_NODES, 42);
+        List<String> second = this.bootstrap(NUM_NODES, 42);
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    void clockWaitsForRunningThread() throws Exception {
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.constant(5), 0, Distribution.constant(1000), 0);
+        network.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 10000));
+
+        AtomicInteger runs = new AtomicInteger();
+        network.schedule(runs::incrementAndGet, 10);
+
+        /* We hold the clock until we wait on it, however long we take */
+        Thread.sleep(100);
+        assertEquals(0, network.currentTime());
+        assertEquals(0, runs.get());
+
+        network.sleep(20);
+        assertEquals(20, network.currentTime());
+        assertEquals(1, runs.get());
+        network.shutdown();
+    }
+
+    @Test
+    void executorRunsBoundedNumberOfTasks() throws Exception {
+        SimulatedNetwork network = new SimulatedNetwork(1, Distribution.constant(5), 0, Distribution.constant(1000), 0);
+        network.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 10000));
+
+        /* Every task takes 100 ms of virtual time; two at a time, four tasks take 200 ms */
+        ExecutorService executor = network.newExecutor("test", 2);
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            executor.execute(() -> {
+                try {
+                    network.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.incrementAndGet();
+            });
+        }
+
+        network.sleep(150);
+        assertEquals(2, done.get());
+        network.sleep(100);
+        assertEquals(4, done.get());
+        network.shutdown();
+    }
+
+    /**
+     * Bootstrap a network of nodes, each to the first one, and let them refresh their buckets
+     *
+     * @return For every node its routing table, followed by the statistics of the network
+     */
+    private List<String> bootstrap(int numNodes, long seed) throws IOException, InterruptedException {
+        KadConfiguration config = new DefaultConfiguration() {
+            @Override
+            public String getNodeDataFolder(String ownerId) {
+                /* Nothing is stored */
+                return System.getProperty("java.io.tmpdir");
+            }
+
+            @Override
+            public long restoreInterval() {
+                return 60 * 60 * 1000L;
+            }
+        };
+        SimulatedNetwork network = new SimulatedNetwork(seed,
+                Distribution.exponential(10, 40), 0.01, Distribution.uniform(125, 1250), 0);
+        InetAddress address = InetAddress.getLoopbackAddress();
+        Random random = new Random(seed);
+
+        List<JKademliaNode> nodes = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < numNodes; i++) {
+            byte[] id = new byte[KademliaId.ID_LENGTH / 8];
+            random.nextBytes(id);
+            Node node = new Node(new KademliaId(id), address, 10000 + i);
+            String ownerId = "node" + i;
+            JKademliaNode kad = new JKademliaNode(ownerId, node, 10000 + i, network.connect(new InetSocketAddress(address, 10000 + i)),
+                    new DHT(ownerId, config), new JKademliaRoutingTable(node, config), config);
+            if (!nodes.isEmpty()) {
+                try {
+                    kad.bootstrap(nodes.get(0).getNode());
+                } catch (RoutingException e) {
+                    /* The bootstrap messages may get lost, as long as it happens the same way every time */
+                    results.add(ownerId + " failed to bootstrap");
+                }
+            }
+            nodes.add(kad);
+        }
+
+        /* Let the bucket refreshes finish */
+        network.sleep(60 * 1000L);
+
+        for (JKademliaNode kad : nodes) {
+            results.add(kad.getOwnerId() + ": " + kad.getRoutingTable().getAllNodes());
+            kad.shutdown(false);
+        }
+        results.add("time " + network.currentTime() + ", delivered " + network.numDelivered() + ", dropped " + network.numDropped());
+        network.shutdown();
+        return results;
+    }
+}
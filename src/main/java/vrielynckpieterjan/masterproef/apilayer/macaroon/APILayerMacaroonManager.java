@@ -1,8 +1,8 @@
 package vrielynckpieterjan.masterproef.apilayer.macaroon;
 
-import org.apache.commons.lang3.RandomStringUtils;
 import org.jetbrains.annotations.NotNull;
 import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.RTreePolicy;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,12 +26,12 @@ public class APILayerMacaroonManager {
     public synchronized APILayerMacaroon registerPolicy(@NotNull RTreePolicy rTreePolicy) {
         String macaroonPublicIdentifier = null;
         while (macaroonPublicIdentifier == null || storedMacaroonSecretPublicIdentifierPairs.containsKey(macaroonPublicIdentifier))
-            macaroonPublicIdentifier = RandomStringUtils.randomAlphanumeric(MACAROONS_IDENTIFIERS_AND_SECRETS_LENGTH);
+            macaroonPublicIdentifier = RandomnessService.generateAlphanumericString(MACAROONS_IDENTIFIERS_AND_SECRETS_LENGTH);
 
         String macaroonSecret = null;
         while (macaroonSecret == null || (storedMacaroonSecretPublicIdentifierPairs.containsKey(macaroonPublicIdentifier) &&
                 storedMacaroonSecretPublicIdentifierPairs.get(macaroonPublicIdentifier).equals(macaroonSecret)))
-            macaroonSecret = RandomStringUtils.randomAlphanumeric(MACAROONS_IDENTIFIERS_AND_SECRETS_LENGTH);
+            macaroonSecret = RandomnessService.generateAlphanumericString(MACAROONS_IDENTIFIERS_AND_SECRETS_LENGTH);
 
         var macaroon = new APILayerMacaroon(macaroonSecret, macaroonPublicIdentifier, rTreePolicy);
 
@@ -9,6 +9,7 @@ import vrielynckpieterjan.masterproef.applicationlayer.revocation.RevocationComm
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.schemes.ECCipherEncryptedSegment;
+import vrielynckpieterjan.masterproef.encryptionlayer.schemes.ECDHKeyAgreement;
 import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 import vrielynckpieterjan.masterproef.storagelayer.StorageElement;
 import vrielynckpieterjan.masterproef.storagelayer.StorageElementIdentifier;
@@ -24,6 +25,9 @@ import java.security.PublicKey;
  */
 public class Attestation extends StorageElement {
 
+    private final static String SECOND_LAYER_LABEL = "second layer";
+    private final static String THIRD_LAYER_LABEL = "third layer";
+
     private final IssuerPartAttestation firstLayer;
     private final ECCipherEncryptedSegment<Pair<Integer, RevocationCommitment>> secondLayer;
     private final ECCipherEncryptedSegment<Pair<Integer, StorageElementIdentifier>> thirdLayer;
@@ -58,10 +62,12 @@ public class Attestation extends StorageElement {
         this.firstLayer = firstLayer;
 
         int signatureFirstLayer = firstLayer.hashCode();
+        // Both layers are encrypted using keys derived from one key agreement with the receiver.
+        var keyAgreement = new ECDHKeyAgreement(privateEntityIdentifierReceiver.getRSAIdentifier());
         secondLayer = new ECCipherEncryptedSegment<>(new ImmutablePair<>(
-                signatureFirstLayer, revocationCommitmentReceiver), privateEntityIdentifierReceiver);
+                signatureFirstLayer, revocationCommitmentReceiver), keyAgreement, SECOND_LAYER_LABEL);
         thirdLayer = new ECCipherEncryptedSegment<>(new ImmutablePair<>(
-                signatureFirstLayer, storageElementIdentifierNextQueueElement), privateEntityIdentifierReceiver);
+                signatureFirstLayer, storageElementIdentifierNextQueueElement), keyAgreement, THIRD_LAYER_LABEL);
     }
 
     @NotNull
@@ -169,8 +175,13 @@ public class Attestation extends StorageElement {
     public boolean areSecondAndThirdLayerValid(@NotNull PublicEntityIdentifier publicEntityIdentifierReceiver)
             throws IllegalArgumentException {
         int signatureFirstLayer = firstLayer.hashCode();
-        if (!secondLayer.decrypt(publicEntityIdentifierReceiver).getLeft().equals(signatureFirstLayer)) return false;
-        return thirdLayer.decrypt(publicEntityIdentifierReceiver).getLeft().equals(signatureFirstLayer);
+        var keyAgreement = secondLayer.agreeOnKey(publicEntityIdentifierReceiver.getRSAIdentifier());
+        if (keyAgreement == null) { // Layers not encrypted using a key agreement.
+            if (!secondLayer.decrypt(publicEntityIdentifierReceiver).getLeft().equals(signatureFirstLayer)) return false;
+            return thirdLayer.decrypt(publicEntityIdentifierReceiver).getLeft().equals(signatureFirstLayer);
+        }
+        if (!secondLayer.decrypt(keyAgreement).getLeft().equals(signatureFirstLayer)) return false;
+        return thirdLayer.decrypt(keyAgreement).getLeft().equals(signatureFirstLayer);
     }
 
     /**
@@ -1,7 +1,5 @@
 package vrielynckpieterjan.masterproef.applicationlayer.attestation.issuer;
 
-import cryptid.ibe.PrivateKeyGenerator;
-import cryptid.ibe.exception.ComponentConstructionException;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
@@ -11,26 +9,48 @@ import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIden
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.schemes.AESCipherEncryptedSegment;
 import vrielynckpieterjan.masterproef.encryptionlayer.schemes.ECCipherEncryptedSegment;
+import vrielynckpieterjan.masterproef.encryptionlayer.schemes.KeyMaterialPool;
 import vrielynckpieterjan.masterproef.encryptionlayer.schemes.IBEDecryptableSegment;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 import vrielynckpieterjan.masterproef.shared.serialization.Exportable;
 import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.security.KeyPair;
-import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.security.*;
+import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 /**
  * Class representing the issuer's part of an {@link vrielynckpieterjan.masterproef.applicationlayer.attestation.Attestation}.
  */
 public class IssuerPartAttestation implements Exportable {
 
+    private final static String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    /**
+     * DER-encoded ECDSA signatures start with this tag, while serialized {@link ECCipherEncryptedSegment}s
+     * (used as signatures by previous versions) start with their length.
+     */
+    private final static byte DER_SEQUENCE_TAG = 0x30;
+
+    /**
+     * Whether the signatures of previous versions are still accepted. These are the hash code of the attestation,
+     * encrypted with the empirical public EC key, so anyone can forge them: they are rejected unless explicitly enabled.
+     */
+    private static volatile boolean acceptLegacySignatures = false;
+
+    /**
+     * {@link Signature} instances are not thread-safe, so they are cached per thread.
+     */
+    private final static ThreadLocal<Signature> signatureInstances = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(SIGNATURE_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     private final PublicEntityIdentifier publicEntityIdentifierReceiver;
     private final RevocationCommitment revocationCommitment;
     private final PublicKey empiricalPublicKey;
@@ -38,6 +58,23 @@ public class IssuerPartAttestation implements Exportable {
     private final AESCipherEncryptedSegment<ProofInformationSegmentAttestation> proofInformationSegment;
     private final IBEDecryptableSegment<AESEncryptionInformationSegmentAttestation> aesEncryptionInformationSegment;
     private ECCipherEncryptedSegment<Integer> encryptedSignature;
+    private byte[] signature;
+
+    protected IssuerPartAttestation(@NotNull PublicEntityIdentifier publicEntityIdentifierReceiver,
+                                    @NotNull RevocationCommitment revocationCommitment,
+                                    @NotNull PublicKey empiricalPublicKey,
+                                    byte[] signature,
+                                    @NotNull AESCipherEncryptedSegment<VerificationInformationSegmentAttestation> verificationInformationSegment,
+                                    @NotNull AESCipherEncryptedSegment<ProofInformationSegmentAttestation> proofInformationSegment,
+                                    @NotNull IBEDecryptableSegment<AESEncryptionInformationSegmentAttestation> aesEncryptionInformationSegment) {
+        this.publicEntityIdentifierReceiver = publicEntityIdentifierReceiver;
+        this.revocationCommitment = revocationCommitment;
+        this.empiricalPublicKey = empiricalPublicKey;
+        this.signature = signature;
+        this.verificationInformationSegment = verificationInformationSegment;
+        this.proofInformationSegment = proofInformationSegment;
+        this.aesEncryptionInformationSegment = aesEncryptionInformationSegment;
+    }
 
     protected IssuerPartAttestation(@NotNull PublicEntityIdentifier publicEntityIdentifierReceiver,
                                     @NotNull RevocationCommitment revocationCommitment,
@@ -95,16 +132,16 @@ public class IssuerPartAttestation implements Exportable {
         // Generate the proof information segment.
         var threadTwo = new Thread(() -> {
             try {
-                PrivateKeyGenerator pkgIssuer = IBEDecryptableSegment.obtainPKG(privateEntityIdentifierIssuer);
+                // The keys for the policy variations are cached, since the issuer will often delegate related policies.
                 List<RTreePolicy> policyList = rTreePolicy.generateRTreePolicyVariations();
                 Set<cryptid.ibe.domain.PrivateKey> IBEKeys = new HashSet<>();
                 for (RTreePolicy policy : policyList) {
-                    IBEKeys.add(pkgIssuer.extract(policy.toString()));
+                    IBEKeys.add(IBEDecryptableSegment.generatePrivateKey(privateEntityIdentifierIssuer, policy.toString()));
                 }
                 atomicReferenceProofInformationSegment.set(new ProofInformationSegmentAttestation(IBEKeys)
                         .encrypt(aesKeys.getRight()));
-            } catch (ComponentConstructionException e) {
-                thrownException.set(new IllegalArgumentException(e));
+            } catch (IllegalArgumentException e) {
+                thrownException.set(e);
             }
         });
 
@@ -131,7 +168,7 @@ public class IssuerPartAttestation implements Exportable {
         aesEncryptionInformationSegment = atomicReferenceAESEncryptionInformationSegment.get();
 
         // Generate the signature for the plaintext header at the end.
-        if (!(this instanceof IssuerPartNamespaceAttestation)) updateSignature(empiricalECKeyPair.getPublic());
+        if (!(this instanceof IssuerPartNamespaceAttestation)) updateSignature(empiricalECKeyPair.getPrivate());
     }
 
     /**
@@ -152,7 +189,7 @@ public class IssuerPartAttestation implements Exportable {
             throws IllegalArgumentException {
         this(privateEntityIdentifierIssuer, publicEntityIdentifierIssuer, publicEntityIdentifierReceiver,
                 revocationCommitment, rTreePolicy,
-                ECCipherEncryptedSegment.generateKeyPair());
+                KeyMaterialPool.takeECKeyPair());
     }
 
     @NotNull
@@ -171,7 +208,6 @@ public class IssuerPartAttestation implements Exportable {
         ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(receivedArrays[2]);
         ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream);
         PublicKey empiricalPublicKey = (PublicKey) objectInputStream.readObject();
-        ECCipherEncryptedSegment<Integer> encryptedSignature = ExportableUtils.deserialize(receivedArrays[3], ECCipherEncryptedSegment.class);
         AESCipherEncryptedSegment<VerificationInformationSegmentAttestation> verificationInformationSegment =
                 ExportableUtils.deserialize(receivedArrays[4], AESCipherEncryptedSegment.class);
         AESCipherEncryptedSegment<ProofInformationSegmentAttestation> proofInformationSegment =
@@ -179,6 +215,10 @@ public class IssuerPartAttestation implements Exportable {
         IBEDecryptableSegment<AESEncryptionInformationSegmentAttestation> aesEncryptionInformationSegment =
                 ExportableUtils.deserialize(receivedArrays[6], IBEDecryptableSegment.class);
 
+        if (receivedArrays[3].length > 0 && receivedArrays[3][0] == DER_SEQUENCE_TAG)
+            return new IssuerPartAttestation(publicEntityIdentifierReceiver, revocationCommitment,
+                    empiricalPublicKey, receivedArrays[3], verificationInformationSegment, proofInformationSegment, aesEncryptionInformationSegment);
+        ECCipherEncryptedSegment<Integer> encryptedSignature = ExportableUtils.deserialize(receivedArrays[3], ECCipherEncryptedSegment.class);
         return new IssuerPartAttestation(publicEntityIdentifierReceiver, revocationCommitment,
                 empiricalPublicKey, encryptedSignature, verificationInformationSegment, proofInformationSegment, aesEncryptionInformationSegment);
     }
@@ -195,15 +235,104 @@ public class IssuerPartAttestation implements Exportable {
     /**
      * Method to update the signature of the {@link IssuerPartAttestation}.
      *
-     * @param empiricalPublicECKey The empirical EC {@link PublicKey} to encrypt the signature with.
+     * @param empiricalPrivateECKey The empirical EC {@link PrivateKey} to sign the plaintext header with.
+     * @throws IllegalArgumentException If the plaintext header could not be signed using the provided key.
      */
-    protected void updateSignature(@NotNull PublicKey empiricalPublicECKey) {
-        Integer fullHash = hashCode();
-        encryptedSignature = new ECCipherEncryptedSegment<>(fullHash, empiricalPublicECKey);
+    protected void updateSignature(@NotNull PrivateKey empiricalPrivateECKey) throws IllegalArgumentException {
+        try {
+            Signature signatureInstance = signatureInstances.get();
+            signatureInstance.initSign(empiricalPrivateECKey, RandomnessService.getSecureRandom());
+            signatureInstance.update(encodeSignedContent());
+            signature = signatureInstance.sign();
+            encryptedSignature = null;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Method to obtain the canonical byte encoding of the plaintext header, which is signed by the issuer.
+     *
+     * @return The encoded plaintext header, except for the signature.
+     * @throws IOException If one of the fields could not be serialized.
+     */
+    protected byte[] encodeSignedContent() throws IOException {
+        byte[][] arrays = new byte[][]{ExportableUtils.serialize(publicEntityIdentifierReceiver),
+                ExportableUtils.serialize(revocationCommitment), empiricalPublicKey.getEncoded(),
+                ExportableUtils.serialize(verificationInformationSegment), ExportableUtils.serialize(proofInformationSegment),
+                ExportableUtils.serialize(aesEncryptionInformationSegment)};
+        int length = 0;
+        for (byte[] array : arrays) length += 4 + array.length;
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length);
+        for (byte[] array : arrays) {
+            byteBuffer.putInt(array.length);
+            byteBuffer.put(array);
+        }
+        return byteBuffer.array();
+    }
+
+    /**
+     * Method to verify the signature of the {@link IssuerPartAttestation}.
+     *
+     * @param empiricalPublicECKey The empirical EC {@link PublicKey} of the attestation.
+     * @return True if the signature is valid; false otherwise.
+     */
+    private boolean verifySignature(@NotNull PublicKey empiricalPublicECKey) {
+        try {
+            Signature signatureInstance = signatureInstances.get();
+            signatureInstance.initVerify(empiricalPublicECKey);
+            signatureInstance.update(encodeSignedContent());
+            return signatureInstance.verify(signature);
+        } catch (IOException | GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method to enable or disable the verification of the signatures of previous versions.
+     * These signatures can be forged by anyone, so they should only be accepted while migrating trusted attestations.
+     *
+     * @param accept True if the signatures of previous versions should be accepted; false otherwise (default).
+     */
+    public static void setAcceptLegacySignatures(boolean accept) {
+        acceptLegacySignatures = accept;
+    }
+
+    /**
+     * Method to check if the signatures of previous versions are accepted.
+     *
+     * @return True if the signatures of previous versions are accepted; false otherwise.
+     */
+    public static boolean acceptsLegacySignatures() {
+        return acceptLegacySignatures;
+    }
+
+    /**
+     * Method to check if a chain of {@link IssuerPartAttestation}s have valid signatures.
+     * The signatures are verified in parallel.
+     *
+     * @param issuerPartAttestations The {@link IssuerPartAttestation}s.
+     * @param empiricalPrivateECKeys The empirical private EC keys of the attestations, in the same order.
+     * @return True if all the {@link IssuerPartAttestation}s have a valid signature; false otherwise.
+     * @throws IllegalArgumentException If the amount of keys doesn't match the amount of attestations.
+     */
+    public static boolean haveValidSignatures(@NotNull List<? extends IssuerPartAttestation> issuerPartAttestations,
+                                              @NotNull List<PrivateKey> empiricalPrivateECKeys) throws IllegalArgumentException {
+        if (issuerPartAttestations.size() != empiricalPrivateECKeys.size())
+            throw new IllegalArgumentException("The amount of keys doesn't match the amount of attestations.");
+        return IntStream.range(0, issuerPartAttestations.size()).parallel().allMatch(i -> {
+            IssuerPartAttestation issuerPartAttestation = issuerPartAttestations.get(i);
+            try {
+                return issuerPartAttestation.hasValidSignature(empiricalPrivateECKeys.get(i), issuerPartAttestation.getEmpiricalPublicKey());
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        });
     }
 
     /**
      * Method to check if the {@link IssuerPartAttestation} has a valid signature.
+     * Signatures of previous versions are only valid if {@link #setAcceptLegacySignatures(boolean) enabled}.
      *
      * @param empiricalPrivateECKey The empirical private EC key of the attestation.
      * @param empiricalPublicECKey  The empirical public EC key of the attestation.
@@ -216,6 +345,8 @@ public class IssuerPartAttestation implements Exportable {
         if (!ECCipherEncryptedSegment.keysPartOfKeypair(empiricalPrivateECKey, empiricalPublicECKey)) return false;
 
         // 2) Check if the signature is valid.
+        if (signature != null) return verifySignature(empiricalPublicECKey);
+        if (!acceptLegacySignatures) return false;
         Integer calculatedUnencryptedVersionSignature = hashCode();
         Integer decryptedSignature = encryptedSignature.decrypt(empiricalPrivateECKey);
         return calculatedUnencryptedVersionSignature.equals(decryptedSignature);
@@ -303,7 +434,7 @@ public class IssuerPartAttestation implements Exportable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IssuerPartAttestation that = (IssuerPartAttestation) o;
-        return publicEntityIdentifierReceiver.equals(that.publicEntityIdentifierReceiver) && revocationCommitment.equals(that.revocationCommitment) && empiricalPublicKey.equals(that.empiricalPublicKey) && encryptedSignature.equals(that.encryptedSignature) && verificationInformationSegment.equals(that.verificationInformationSegment) && proofInformationSegment.equals(that.proofInformationSegment) && aesEncryptionInformationSegment.equals(that.aesEncryptionInformationSegment);
+        return publicEntityIdentifierReceiver.equals(that.publicEntityIdentifierReceiver) && revocationCommitment.equals(that.revocationCommitment) && empiricalPublicKey.equals(that.empiricalPublicKey) && Objects.equals(encryptedSignature, that.encryptedSignature) && Arrays.equals(signature, that.signature) && verificationInformationSegment.equals(that.verificationInformationSegment) && proofInformationSegment.equals(that.proofInformationSegment) && aesEncryptionInformationSegment.equals(that.aesEncryptionInformationSegment);
     }
 
     @Override
@@ -316,6 +447,7 @@ public class IssuerPartAttestation implements Exportable {
     public String toString() {
         return "IssuerPartAttestation{" +
                 "encryptedSignature=" + encryptedSignature +
+                ", signature=" + Arrays.toString(signature) +
                 '}';
     }
 
@@ -327,7 +459,7 @@ public class IssuerPartAttestation implements Exportable {
         ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
         objectOutputStream.writeObject(empiricalPublicKey);
         byte[] empiricalPublicKeyAsByteArray = byteArrayOutputStream.toByteArray();
-        byte[] encryptedSignatureAsByteArray = ExportableUtils.serialize(encryptedSignature);
+        byte[] encryptedSignatureAsByteArray = (signature != null) ? signature : ExportableUtils.serialize(encryptedSignature);
         byte[] verificationInformationSegmentAsByteArray = ExportableUtils.serialize(verificationInformationSegment);
         byte[] proofInformationSegmentAsByteArray = ExportableUtils.serialize(proofInformationSegment);
         byte[] aesEncryptionInformationSegmentAsByteArray = ExportableUtils.serialize(aesEncryptionInformationSegment);
@@ -5,9 +5,12 @@ import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.RTreeP
 import vrielynckpieterjan.masterproef.applicationlayer.revocation.RevocationCommitment;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
-import vrielynckpieterjan.masterproef.encryptionlayer.schemes.ECCipherEncryptedSegment;
+import vrielynckpieterjan.masterproef.encryptionlayer.schemes.KeyMaterialPool;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.util.Objects;
 
@@ -41,7 +44,7 @@ public class IssuerPartNamespaceAttestation extends IssuerPartAttestation {
         super(privateEntityIdentifierIssuer, publicEntityIdentifierIssuer, publicEntityIdentifierReceiver,
                 revocationCommitment, rTreePolicy, empiricalECKeyPair);
         this.referenceAPILayer = referenceAPILayer;
-        updateSignature(empiricalECKeyPair.getPublic());
+        updateSignature(empiricalECKeyPair.getPrivate());
     }
 
     /**
@@ -62,7 +65,19 @@ public class IssuerPartNamespaceAttestation extends IssuerPartAttestation {
                                           @NotNull RTreePolicy rTreePolicy,
                                           @NotNull InetSocketAddress referenceAPILayer) throws IllegalArgumentException {
         this(privateEntityIdentifierIssuer, publicEntityIdentifierIssuer, publicEntityIdentifierReceiver, revocationCommitment, rTreePolicy,
-                ECCipherEncryptedSegment.generateKeyPair(), referenceAPILayer);
+                KeyMaterialPool.takeECKeyPair(), referenceAPILayer);
+    }
+
+    @Override
+    protected byte[] encodeSignedContent() throws IOException {
+        byte[] signedContent = super.encodeSignedContent();
+        byte[] referenceAPILayerAsByteArray = (referenceAPILayer.getHostString() + ":" + referenceAPILayer.getPort())
+                .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(signedContent.length + 4 + referenceAPILayerAsByteArray.length);
+        byteBuffer.put(signedContent);
+        byteBuffer.putInt(referenceAPILayerAsByteArray.length);
+        byteBuffer.put(referenceAPILayerAsByteArray);
+        return byteBuffer.array();
     }
 
     @Override
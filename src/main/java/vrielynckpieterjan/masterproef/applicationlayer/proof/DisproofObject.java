@@ -10,6 +10,7 @@ import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.RTreeP
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.schemes.IBEDecryptableSegment;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 import vrielynckpieterjan.masterproef.storagelayer.StorageLayer;
 import vrielynckpieterjan.masterproef.storagelayer.queue.PersonalQueueIterator;
@@ -19,16 +20,12 @@ import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
 
 /**
  * Class representing a disproof {@link AbstractProofObject}.
  */
 public class DisproofObject extends AbstractProofObject {
 
-    @NotNull
-    private final static Random random = new Random();
-
     @NotNull
     private final Map<RTreePolicy, PrivateKey> includedPrivateKeys;
     @NotNull
@@ -103,8 +100,7 @@ public class DisproofObject extends AbstractProofObject {
     }
 
     private void verifyIncludedPrivateKeys() throws IllegalStateException {
-        byte[] randomValue = new byte[128];
-        random.nextBytes(randomValue);
+        byte[] randomValue = RandomnessService.generateBytes(128);
 
         IBEDecryptableSegment<byte[]> encryptedRandomValue;
         byte[] decrypted;
@@ -133,6 +129,10 @@ public class DisproofObject extends AbstractProofObject {
                     issuerPartAttestation = foundAttestation.getFirstLayer();
                     ibeDecryptableSegment = issuerPartAttestation.getAesEncryptionInformationSegment();
                     for (Map.Entry<RTreePolicy, PrivateKey> includedPolicyAndPrivateKey : includedPrivateKeys.entrySet()) {
+                        // Attestations of which the decryption hint doesn't match are skipped using a single pairing.
+                        if (!ibeDecryptableSegment.matchesDecryptionHint(publicEntityIdentifierOfProver.getIBEIdentifier(),
+                                includedPolicyAndPrivateKey.getValue()))
+                            continue;
                         try {
                             ibeDecryptableSegment.decrypt(publicEntityIdentifierOfProver.getIBEIdentifier(), includedPolicyAndPrivateKey.getValue());
                             // DisproofObject is not valid from here on.
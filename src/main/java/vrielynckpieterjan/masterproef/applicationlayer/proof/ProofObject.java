@@ -13,6 +13,7 @@ import vrielynckpieterjan.masterproef.applicationlayer.attestation.issuer.AESEnc
 import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.PolicyRight;
 import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.RTreePolicy;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
+import vrielynckpieterjan.masterproef.encryptionlayer.schemes.IBEDecryptableSegment;
 import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 import vrielynckpieterjan.masterproef.storagelayer.StorageElementIdentifier;
 import vrielynckpieterjan.masterproef.storagelayer.StorageLayer;
@@ -193,6 +194,10 @@ public class ProofObject extends AbstractProofObject {
                 AtomicReference<AESEncryptionInformationSegmentAttestation> aesEncryptionInformationSegment = new AtomicReference<>();
                 delegatedPrivateKeys.parallelStream().forEach(delegatedPrivateKey -> {
                     if (aesEncryptionInformationSegment.get() != null) return;
+                    // Attestations which can't be decrypted are skipped using a single pairing.
+                    if (!encryptedAESEncryptionInformationSegment.matchesDecryptionHint(
+                            publicEntityIdentifier.getIBEIdentifier(), delegatedPrivateKey))
+                        return;
                     try {
                         aesEncryptionInformationSegment.set(encryptedAESEncryptionInformationSegment.decrypt(
                                 publicEntityIdentifier.getIBEIdentifier(), delegatedPrivateKey));
@@ -1,7 +1,7 @@
 package vrielynckpieterjan.masterproef.applicationlayer.revocation;
 
-import org.apache.commons.lang3.RandomStringUtils;
 import org.jetbrains.annotations.NotNull;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 import vrielynckpieterjan.masterproef.shared.serialization.Exportable;
 import vrielynckpieterjan.masterproef.storagelayer.StorageLayer;
 
@@ -33,7 +33,7 @@ public class RevocationSecret implements Exportable {
      * The secret is randomly generated with length LENGTH_GENERATED_REVOCATION_SECRETS.
      */
     public RevocationSecret() {
-        this(RandomStringUtils.randomAlphanumeric(LENGTH_GENERATED_REVOCATION_SECRETS));
+        this(RandomnessService.generateAlphanumericString(LENGTH_GENERATED_REVOCATION_SECRETS));
     }
 
     @NotNull
@@ -1,24 +1,19 @@
 package vrielynckpieterjan.masterproef.encryptionlayer.entities;
 
 import com.google.common.hash.Hashing;
-import cryptid.ibe.domain.PublicParameters;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
-import vrielynckpieterjan.masterproef.encryptionlayer.schemes.ECCipherEncryptedSegment;
-import vrielynckpieterjan.masterproef.encryptionlayer.schemes.IBEDecryptableSegment;
+import vrielynckpieterjan.masterproef.encryptionlayer.schemes.KeyMaterialPool;
 import vrielynckpieterjan.masterproef.shared.serialization.Exportable;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.security.KeyPair;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Abstract class representing an entity identifier.
@@ -79,24 +74,8 @@ public abstract class EntityIdentifier<RSAKeyType extends Key,
      */
     public static Pair<PrivateEntityIdentifier, PublicEntityIdentifier> generateEntityIdentifierPair(
             @NotNull String namespaceEmailAddressConcatenation) {
-        final var keyPair = new AtomicReference<KeyPair>();
-        final var PKG = new AtomicReference<Pair<PublicParameters, BigInteger>>();
-
-        var rsaThread = new Thread(() -> keyPair.set(ECCipherEncryptedSegment.generateKeyPair()));
-        var ibeThread = new Thread(() -> PKG.set(IBEDecryptableSegment.generatePKG()));
-
-        rsaThread.start();
-        ibeThread.start();
-        try {
-            ibeThread.join();
-            rsaThread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
-        var rsaKeyPair = keyPair.get();
-        var ibePKG = PKG.get();
+        var rsaKeyPair = KeyMaterialPool.takeECKeyPair();
+        var ibePKG = KeyMaterialPool.takeIBESetup();
 
         PrivateEntityIdentifier privateEntityIdentifier = new PrivateEntityIdentifier(rsaKeyPair.getPublic(),
                 ibePKG, namespaceEmailAddressConcatenation);
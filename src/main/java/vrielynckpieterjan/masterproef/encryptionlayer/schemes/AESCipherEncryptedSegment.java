@@ -1,23 +1,44 @@
 package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
 
-import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.SerializationUtils;
 import org.jetbrains.annotations.NotNull;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.logging.Logger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
 
 /**
  * Class representing an AES {@link CipherEncryptedSegment}.
+ * <p>
+ * Segments are encrypted using AES-256-GCM with a random nonce, and start with a header to distinguish them
+ * from segments of the previous version (AES-ECB), which can still be decrypted.
+ * The keys are 256-bit byte arrays; the String keys used throughout the attestations are their (unpadded)
+ * URL-safe base64 representation behind an explicit prefix, cf. {@link #encodeAESKey(byte[])}.
+ * Any other String is used as a key of the previous version.
  *
  * @param <DecryptedObjectType> The type of the decrypted object.
  */
 public class AESCipherEncryptedSegment<DecryptedObjectType extends Serializable> extends CipherEncryptedSegment<DecryptedObjectType, String, String> {
 
-    private final static Logger logger = Logger.getLogger(AESCipherEncryptedSegment.class.getName());
+    private final static int KEY_LENGTH = 32;
+    private final static int NONCE_LENGTH = 12;
+    private final static int TAG_LENGTH = 16;
+    private final static byte[] GCM_HEADER = new byte[]{0, 'G', 'C', 'M'};
+    private final static String KEY_PREFIX = "aes256:";
+    private final static String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private final static String LEGACY_TRANSFORMATION = "AES";
+
+    private final static SecureRandom secureRandom = RandomnessService.getSecureRandom();
 
     /**
      * Constructor for the {@link AESCipherEncryptedSegment} class.
@@ -30,6 +51,17 @@ public class AESCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         super(originalObject, encryptionKey);
     }
 
+    /**
+     * Constructor for the {@link AESCipherEncryptedSegment} class.
+     *
+     * @param originalObject The original object to encrypt.
+     * @param encryptionKey  The 256-bit key to encrypt the original object with.
+     * @throws IllegalArgumentException If an illegal key was provided.
+     */
+    public AESCipherEncryptedSegment(@NotNull DecryptedObjectType originalObject, byte[] encryptionKey) throws IllegalArgumentException {
+        super(encrypt(encryptionKey, SerializationUtils.serialize(originalObject)));
+    }
+
     /**
      * Constructor for the {@link AESCipherEncryptedSegment} class.
      *
@@ -40,10 +72,29 @@ public class AESCipherEncryptedSegment<DecryptedObjectType extends Serializable>
     }
 
     /**
-     * Method to return a random AES key of 32 bytes.
+     * Method to return a random AES key of 256 bits, as a String.
      */
     public static String generateAESKey() {
-        return RandomStringUtils.randomAlphanumeric(32);
+        return encodeAESKey(generateAESKeyBytes());
+    }
+
+    /**
+     * Method to return a random AES key of 256 bits.
+     */
+    public static byte[] generateAESKeyBytes() {
+        byte[] key = new byte[KEY_LENGTH];
+        secureRandom.nextBytes(key);
+        return key;
+    }
+
+    /**
+     * Method to convert a 256-bit AES key to its String representation.
+     *
+     * @param key The AES key.
+     * @return The String representation: the URL-safe base64 encoding of the key, prefixed by "aes256:".
+     */
+    public static String encodeAESKey(byte[] key) {
+        return KEY_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(key);
     }
 
     @NotNull
@@ -51,33 +102,131 @@ public class AESCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         return new AESCipherEncryptedSegment(byteBuffer.array());
     }
 
+    /**
+     * Method to encrypt the remaining bytes of a {@link ByteBuffer} into another {@link ByteBuffer}, using AES-GCM.
+     * The random nonce is written first, followed by the ciphertext and the tag.
+     *
+     * @param key       The 256-bit AES key.
+     * @param plaintext The {@link ByteBuffer} to encrypt.
+     * @param output    The {@link ByteBuffer} to write to; it should have at least 28 bytes more remaining
+     *                  than the plaintext.
+     * @return The amount of bytes written.
+     * @throws IllegalArgumentException If the plaintext could not be encrypted using the provided key.
+     */
+    public static int encrypt(byte[] key, @NotNull ByteBuffer plaintext, @NotNull ByteBuffer output) throws IllegalArgumentException {
+        try {
+            byte[] nonce = new byte[NONCE_LENGTH];
+            secureRandom.nextBytes(nonce);
+            Cipher cipher = obtainCipher(GCM_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            output.put(nonce);
+            return NONCE_LENGTH + cipher.doFinal(plaintext, output);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+            discardCipher(GCM_TRANSFORMATION);
+            throw new IllegalArgumentException(e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Method to decrypt the remaining bytes of a {@link ByteBuffer}, encrypted using {@link #encrypt(byte[], ByteBuffer, ByteBuffer)},
+     * into another {@link ByteBuffer}.
+     *
+     * @param key        The 256-bit AES key.
+     * @param ciphertext The {@link ByteBuffer} to decrypt.
+     * @param output     The {@link ByteBuffer} to write to; it should have at least 28 bytes less remaining than the ciphertext.
+     * @return The amount of bytes written.
+     * @throws IllegalArgumentException If the ciphertext could not be decrypted using the provided key, or was tampered with.
+     */
+    public static int decrypt(byte[] key, @NotNull ByteBuffer ciphertext, @NotNull ByteBuffer output) throws IllegalArgumentException {
+        if (ciphertext.remaining() < NONCE_LENGTH + TAG_LENGTH) throw new IllegalArgumentException("Truncated ciphertext.");
+        try {
+            byte[] nonce = new byte[NONCE_LENGTH];
+            ciphertext.get(nonce);
+            Cipher cipher = obtainCipher(GCM_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            return cipher.doFinal(ciphertext, output);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+            discardCipher(GCM_TRANSFORMATION);
+            throw new IllegalArgumentException(e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static byte[] encrypt(byte[] key, byte[] serializedOriginalObject) throws IllegalArgumentException {
+        if (key.length != KEY_LENGTH) throw new IllegalArgumentException(String.format(
+                "A key of %s bytes has been provided for the AES-256 algorithm.", key.length));
+        ByteBuffer output = ByteBuffer.allocate(GCM_HEADER.length + NONCE_LENGTH + serializedOriginalObject.length + TAG_LENGTH);
+        output.put(GCM_HEADER);
+        encrypt(key, ByteBuffer.wrap(serializedOriginalObject), output);
+        return output.array();
+    }
+
+    private static boolean hasGCMHeader(byte[] encryptedSegment) {
+        return encryptedSegment.length >= GCM_HEADER.length + NONCE_LENGTH + TAG_LENGTH
+                && Arrays.equals(encryptedSegment, 0, GCM_HEADER.length, GCM_HEADER, 0, GCM_HEADER.length);
+    }
+
+    /**
+     * Method to convert a String key to a 256-bit AES key.
+     *
+     * @param key The String key.
+     * @return The decoded key if the String is the representation of a 256-bit key (cf. {@link #encodeAESKey(byte[])}),
+     * or the UTF-8 bytes of the String after adjusting its length using {@link #adjustKeyLength(String)}.
+     * @throws IllegalArgumentException If the String has the prefix of a 256-bit key, but doesn't represent one.
+     */
+    private static byte[] convertKey(@NotNull String key) throws IllegalArgumentException {
+        if (!key.startsWith(KEY_PREFIX)) return adjustKeyLength(key).getBytes(StandardCharsets.UTF_8);
+
+        byte[] decodedKey = Base64.getUrlDecoder().decode(key.substring(KEY_PREFIX.length()));
+        if (decodedKey.length != KEY_LENGTH) throw new IllegalArgumentException(String.format(
+                "A key of %s bytes has been provided for the AES-256 algorithm.", decodedKey.length));
+        return decodedKey;
+    }
+
+    /**
+     * Method to decrypt the {@link AESCipherEncryptedSegment}.
+     *
+     * @param decryptionKey The 256-bit key to decrypt the segment with.
+     * @return The decrypted and deserialized object.
+     * @throws IllegalArgumentException If the provided key can't be used to decrypt the segment.
+     */
+    public @NotNull DecryptedObjectType decrypt(byte[] decryptionKey) throws IllegalArgumentException {
+        return SerializationUtils.deserialize(decrypt(getEncryptedSegment(), decryptionKey));
+    }
+
     @Override
     protected byte[] encrypt(byte[] serializedOriginalObject, @NotNull String encryptionKey) throws IllegalArgumentException {
-        return applyCipherMode(Cipher.ENCRYPT_MODE, serializedOriginalObject, encryptionKey);
+        byte[] key = convertKey(encryptionKey);
+        try {
+            return encrypt(key, serializedOriginalObject);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
     }
 
     @Override
     protected byte[] decrypt(byte[] encryptedSegment, @NotNull String decryptionKey) throws IllegalArgumentException {
-        return applyCipherMode(Cipher.DECRYPT_MODE, encryptedSegment, decryptionKey);
+        byte[] key = convertKey(decryptionKey);
+        try {
+            return decrypt(encryptedSegment, key);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
     }
 
-    /**
-     * Method to encrypt / decrypt a byte array using a provided key for the AES algorithm.
-     *
-     * @param cipherMode The {@link Cipher} mode.
-     * @param element    The element to encrypt / decrypt as a byte array.
-     * @param key        The key to encrypt / decrypt the byte array with.
-     * @return The encrypted / decrypted version of the byte array.
-     * @throws IllegalArgumentException If the content of the byte array can't be encrypted / decrypted using the provided key, or
-     *                                  if an invalid cipherMode argument is provided.
-     * @implNote This method adjusts the length of the key using the adjustKeyLength(String) method.
-     * @implNote This method returns the result of the applyCipherMode(String, int, byte[], Key) method,
-     * after performing the necessary conversions of the arguments.
-     */
-    private byte[] applyCipherMode(int cipherMode, byte[] element, @NotNull String key) throws IllegalArgumentException {
-        key = adjustKeyLength(key); // If I ever change this line of code: cf. statement further.
-        SecretKeySpec secretKeySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES");
-        return applyCipherMode("AES", cipherMode, element, secretKeySpec);
+    private byte[] decrypt(byte[] encryptedSegment, byte[] key) throws IllegalArgumentException {
+        if (hasGCMHeader(encryptedSegment)) {
+            ByteBuffer ciphertext = ByteBuffer.wrap(encryptedSegment, GCM_HEADER.length, encryptedSegment.length - GCM_HEADER.length);
+            ByteBuffer output = ByteBuffer.allocate(ciphertext.remaining() - NONCE_LENGTH - TAG_LENGTH);
+            // A segment with the header that fails the tag check was tampered with, or the key is wrong:
+            // it is never decrypted as a segment of the previous version.
+            decrypt(key, ciphertext, output);
+            return output.array();
+        }
+        return applyCipherMode(LEGACY_TRANSFORMATION, Cipher.DECRYPT_MODE, encryptedSegment, new SecretKeySpec(key, "AES"));
     }
 
     /**
@@ -88,16 +237,10 @@ public class AESCipherEncryptedSegment<DecryptedObjectType extends Serializable>
      * @return The original String which has been repeated to obtain exactly / more than 32 bytes, after which
      * the first 32 bytes are taken.
      */
-    private String adjustKeyLength(@NotNull String originalKey) {
+    private static String adjustKeyLength(@NotNull String originalKey) {
         if (originalKey.length() == 32) return originalKey;
-        else if (originalKey.length() > 32) {
-            logger.info(String.format("[%s] A key of %s bytes has been provided for the AES-256 algorithm." +
-                    " Only the first 32 bytes will be used instead.", this, originalKey.length()));
-            return originalKey.substring(0, 32);
-        } else {
-            logger.info(String.format("[%s] A key of %s byte(s) has been provided for the AES-256 algorithm." +
-                    " The original key will be repeated to obtain a key of 32 bytes instead.", this, originalKey.length()));
-
+        else if (originalKey.length() > 32) return originalKey.substring(0, 32);
+        else {
             int amountOfRepetitionRequired = (int) Math.ceil(32.0 / (double) originalKey.length());
             originalKey = originalKey.repeat(amountOfRepetitionRequired);
             return originalKey.substring(0, 32);
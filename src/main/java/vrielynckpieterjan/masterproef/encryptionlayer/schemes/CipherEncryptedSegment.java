@@ -13,6 +13,8 @@ import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -28,6 +30,12 @@ abstract class CipherEncryptedSegment<DecryptedObjectType extends Serializable,
 
     private final static Logger logger = Logger.getLogger(CipherEncryptedSegment.class.getName());
 
+    /**
+     * {@link Cipher#getInstance(String)} looks up the provider on every call, which is costly compared to
+     * encrypting a small segment. {@link Cipher} instances are not thread-safe, so they are cached per thread.
+     */
+    private final static ThreadLocal<Map<String, Cipher>> cipherInstances = ThreadLocal.withInitial(HashMap::new);
+
     private final byte[] encryptedSegment;
 
     /**
@@ -51,6 +59,45 @@ abstract class CipherEncryptedSegment<DecryptedObjectType extends Serializable,
         this.encryptedSegment = encryptedSegment;
     }
 
+    /**
+     * Method to obtain a {@link Cipher} instance, which is cached for the current thread.
+     * The instance should be (re)initialized before each use.
+     *
+     * @param instanceName The name of the transformation.
+     * @return The {@link Cipher} instance.
+     * @throws NoSuchAlgorithmException If the transformation is not supported.
+     * @throws NoSuchPaddingException   If the padding scheme of the transformation is not supported.
+     */
+    static @NotNull Cipher obtainCipher(@NotNull String instanceName) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Map<String, Cipher> ciphers = cipherInstances.get();
+        Cipher cipher = ciphers.get(instanceName);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(instanceName);
+            ciphers.put(instanceName, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Method to remove the {@link Cipher} instance which is cached for the current thread.
+     * A {@link Cipher} instance of which the initialization failed should not be reused, since the
+     * provider selection of the instance may not be completed.
+     *
+     * @param instanceName The name of the transformation.
+     */
+    static void discardCipher(@NotNull String instanceName) {
+        cipherInstances.get().remove(instanceName);
+    }
+
+    /**
+     * Getter for the encrypted segment.
+     *
+     * @return The encrypted segment as a byte array.
+     */
+    protected byte[] getEncryptedSegment() {
+        return encryptedSegment;
+    }
+
     /**
      * Method to encrypt the given data, using the provided encryption key;
      *
@@ -91,18 +138,25 @@ abstract class CipherEncryptedSegment<DecryptedObjectType extends Serializable,
      */
     protected byte[] applyCipherMode(@NotNull String instanceName, int cipherMode, byte[] element, @NotNull Key key)
             throws IllegalArgumentException {
+        Cipher cipher;
         try {
-            Cipher cipher = Cipher.getInstance(instanceName);
-            cipher.init(cipherMode, key);
-            return cipher.doFinal(element);
+            cipher = obtainCipher(instanceName);
         } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
             logger.severe(String.format("An %s Cipher instance could not be initialized (reason: %s). Due to" +
                     " the severity of this problem, the program will now exit.", instanceName, e));
             e.printStackTrace();
             System.exit(1);
             return null;
+        }
+        try {
+            cipher.init(cipherMode, key);
+            return cipher.doFinal(element);
         } catch (InvalidKeyException | BadPaddingException | IllegalBlockSizeException e) {
+            discardCipher(instanceName);
             throw new IllegalArgumentException(e);
+        } catch (RuntimeException e) {
+            discardCipher(instanceName);
+            throw e;
         }
     }
 
@@ -1,10 +1,13 @@
 package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
 
-import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.bouncycastle.jcajce.provider.asymmetric.util.EC5Util;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.math.ec.ECPoint;
 import org.jetbrains.annotations.NotNull;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 
 import javax.crypto.Cipher;
@@ -13,7 +16,10 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.logging.Logger;
 
@@ -25,6 +31,8 @@ import java.util.logging.Logger;
  * and uses EC encryption to encrypt the used, randomly 32-byte long generated AES key.
  * This is due to the fact that the RSA encryption scheme, which was originally used instead of the EC encryption scheme,
  * can't be used to encrypt objects of any length.
+ * Alternatively, the AES key can be derived from an {@link ECDHKeyAgreement} which is shared with other segments
+ * for the same receiver; the segment then contains the ephemeral public key of the agreement instead.
  */
 public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         extends CipherEncryptedSegment<DecryptedObjectType, PublicKey, PrivateKey> {
@@ -35,6 +43,13 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         Security.addProvider(new BouncyCastleProvider());
     }
 
+    /**
+     * Segments encrypted using an {@link ECDHKeyAgreement} start with this marker, followed by the length of the label,
+     * the label and the encoded ephemeral public key. An ECIES ciphertext starts with an encoded EC point instead,
+     * which never starts with a zero byte.
+     */
+    private final static byte KEY_AGREEMENT_MARKER = 0;
+
     private AESCipherEncryptedSegment<byte[]> encapsulatedAESEncryptedSegment;
 
     /**
@@ -71,6 +86,35 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         super(originalObject, privateEntityIdentifier.getRSAIdentifier());
     }
 
+    /**
+     * Constructor for the {@link ECCipherEncryptedSegment} class.
+     *
+     * @param originalObject The original object to encrypt.
+     * @param keyAgreement   The {@link ECDHKeyAgreement} to derive the AES key from.
+     * @param label          The label to derive the AES key with, which should be unique for the segments
+     *                       encrypted using the same {@link ECDHKeyAgreement}.
+     * @throws IllegalArgumentException If an illegal label was provided.
+     */
+    public ECCipherEncryptedSegment(@NotNull DecryptedObjectType originalObject, @NotNull ECDHKeyAgreement keyAgreement,
+                                    @NotNull String label) throws IllegalArgumentException {
+        super(encodeKeyAgreementHeader(keyAgreement, label));
+        encapsulatedAESEncryptedSegment = new AESCipherEncryptedSegment<>(
+                SerializationUtils.serialize(originalObject), keyAgreement.deriveKey(label));
+    }
+
+    private static byte[] encodeKeyAgreementHeader(@NotNull ECDHKeyAgreement keyAgreement, @NotNull String label)
+            throws IllegalArgumentException {
+        byte[] labelAsByteArray = label.getBytes(StandardCharsets.UTF_8);
+        if (labelAsByteArray.length > 255) throw new IllegalArgumentException("Label too long.");
+        byte[] encodedEphemeralPublicKey = keyAgreement.getEncodedEphemeralPublicKey();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(2 + labelAsByteArray.length + encodedEphemeralPublicKey.length);
+        byteBuffer.put(KEY_AGREEMENT_MARKER);
+        byteBuffer.put((byte) labelAsByteArray.length);
+        byteBuffer.put(labelAsByteArray);
+        byteBuffer.put(encodedEphemeralPublicKey);
+        return byteBuffer.array();
+    }
+
     /**
      * A static method to generate an EC {@link KeyPair}.
      *
@@ -80,7 +124,7 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         try {
             KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
             ECGenParameterSpec spec = new ECGenParameterSpec("secp256r1");
-            keyPairGenerator.initialize(spec);
+            keyPairGenerator.initialize(spec, RandomnessService.getSecureRandom());
             return keyPairGenerator.generateKeyPair();
         } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
             logger.severe(String.format("An RSA KeyPair instance could not be initialized (reason: %s). Due to " +
@@ -93,15 +137,28 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
 
     /**
      * Method to check if the provided {@link PrivateKey} and {@link PublicKey} instances are actually
-     * part of the same RSA {@link KeyPair}.
+     * part of the same EC {@link KeyPair}.
      *
-     * @param privateKey A possible RSA {@link PrivateKey}.
-     * @param publicKey  A possible RSA {@link PrivateKey}.
-     * @return True if the two provided {@link Key}s were originally part of an RSA {@link KeyPair}; false otherwise.
+     * @param privateKey A possible EC {@link PrivateKey}.
+     * @param publicKey  A possible EC {@link PublicKey}.
+     * @return True if the two provided {@link Key}s were originally part of an EC {@link KeyPair}; false otherwise.
+     * @implNote For EC keys, the public point is derived from the private key and compared with the public key,
+     * which is a single scalar multiplication. Otherwise, a random String is encrypted and decrypted using the keys.
      */
     public static boolean keysPartOfKeypair(@NotNull PrivateKey privateKey, @NotNull PublicKey publicKey) {
+        if (privateKey instanceof ECPrivateKey && publicKey instanceof ECPublicKey) {
+            ECPrivateKey ecPrivateKey = (ECPrivateKey) privateKey;
+            ECPublicKey ecPublicKey = (ECPublicKey) publicKey;
+            if (!ecPrivateKey.getParams().getCurve().equals(ecPublicKey.getParams().getCurve())
+                    || !ecPrivateKey.getParams().getGenerator().equals(ecPublicKey.getParams().getGenerator()))
+                return false;
+            ECPoint derivedPublicPoint = EC5Util.convertSpec(ecPrivateKey.getParams()).getG()
+                    .multiply(ecPrivateKey.getS()).normalize();
+            return derivedPublicPoint.getAffineXCoord().toBigInteger().equals(ecPublicKey.getW().getAffineX())
+                    && derivedPublicPoint.getAffineYCoord().toBigInteger().equals(ecPublicKey.getW().getAffineY());
+        }
         try {
-            String randomString = RandomStringUtils.randomAlphanumeric(32);
+            String randomString = RandomnessService.generateAlphanumericString(32);
             ECCipherEncryptedSegment<String> encryptedRandomString = new ECCipherEncryptedSegment<>(randomString, publicKey);
             String decrypted = encryptedRandomString.decrypt(privateKey);
             return randomString.equals(decrypted);
@@ -125,8 +182,8 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
 
     @Override
     protected byte[] encrypt(byte[] serializedOriginalObject, @NotNull PublicKey publicKey) throws IllegalArgumentException {
-        // Generate random String for the AES encryption.
-        String AESKey = RandomStringUtils.randomAlphanumeric(32);
+        // Generate random key for the AES encryption.
+        String AESKey = AESCipherEncryptedSegment.generateAESKey();
 
         // Encrypt original object using AES encryption.
         encapsulatedAESEncryptedSegment = new AESCipherEncryptedSegment<>(serializedOriginalObject, AESKey);
@@ -137,6 +194,9 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
 
     @Override
     protected byte[] decrypt(byte[] encryptedSegment, @NotNull PrivateKey privateKey) throws IllegalArgumentException {
+        if (isEncryptedUsingKeyAgreement(encryptedSegment))
+            return decrypt(encryptedSegment, new ECDHKeyAgreement(getEncodedEphemeralPublicKey(encryptedSegment), privateKey));
+
         // Decrypt the encrypted version of the AES key using the EC key.
         byte[] decryptedAESKey = applyECCipherMode(Cipher.DECRYPT_MODE, encryptedSegment, privateKey);
 
@@ -145,6 +205,53 @@ public class ECCipherEncryptedSegment<DecryptedObjectType extends Serializable>
         return encapsulatedAESEncryptedSegment.decrypt(originalAESKey);
     }
 
+    private static boolean isEncryptedUsingKeyAgreement(byte[] encryptedSegment) {
+        return encryptedSegment.length > 2 && encryptedSegment[0] == KEY_AGREEMENT_MARKER;
+    }
+
+    private static byte[] getEncodedEphemeralPublicKey(byte[] encryptedSegment) {
+        int offset = 2 + Byte.toUnsignedInt(encryptedSegment[1]);
+        if (offset > encryptedSegment.length) throw new IllegalArgumentException("Invalid segment.");
+        return Arrays.copyOfRange(encryptedSegment, offset, encryptedSegment.length);
+    }
+
+    private byte[] decrypt(byte[] encryptedSegment, @NotNull ECDHKeyAgreement keyAgreement) throws IllegalArgumentException {
+        String label = new String(encryptedSegment, 2, Byte.toUnsignedInt(encryptedSegment[1]), StandardCharsets.UTF_8);
+        return encapsulatedAESEncryptedSegment.decrypt(keyAgreement.deriveKey(label));
+    }
+
+    /**
+     * Method to perform the {@link ECDHKeyAgreement} of this {@link ECCipherEncryptedSegment} as the receiver,
+     * so that it can be reused to decrypt other segments encrypted using the same agreement.
+     *
+     * @param privateKey The EC {@link PrivateKey} of the receiver.
+     * @return The {@link ECDHKeyAgreement}, or null if this segment was not encrypted using an {@link ECDHKeyAgreement}.
+     * @throws IllegalArgumentException If the agreement could not be performed with the provided key.
+     */
+    public ECDHKeyAgreement agreeOnKey(@NotNull PrivateKey privateKey) throws IllegalArgumentException {
+        byte[] encryptedSegment = getEncryptedSegment();
+        if (!isEncryptedUsingKeyAgreement(encryptedSegment)) return null;
+        return new ECDHKeyAgreement(getEncodedEphemeralPublicKey(encryptedSegment), privateKey);
+    }
+
+    /**
+     * Method to decrypt the {@link ECCipherEncryptedSegment} using an {@link ECDHKeyAgreement} of the receiver.
+     * If the segment was not encrypted using this agreement, the {@link PrivateKey} of the receiver is used instead.
+     *
+     * @param keyAgreement The {@link ECDHKeyAgreement}, obtained using {@link #agreeOnKey(PrivateKey)}.
+     * @return The decrypted and deserialized {@link ECCipherEncryptedSegment}.
+     * @throws IllegalArgumentException If the provided agreement can't be used to decrypt the {@link ECCipherEncryptedSegment}.
+     */
+    public @NotNull DecryptedObjectType decrypt(@NotNull ECDHKeyAgreement keyAgreement) throws IllegalArgumentException {
+        byte[] encryptedSegment = getEncryptedSegment();
+        if (isEncryptedUsingKeyAgreement(encryptedSegment) && Arrays.equals(
+                keyAgreement.getEncodedEphemeralPublicKey(), getEncodedEphemeralPublicKey(encryptedSegment)))
+            return SerializationUtils.deserialize(decrypt(encryptedSegment, keyAgreement));
+        if (keyAgreement.getPrivateKeyReceiver() == null)
+            throw new IllegalArgumentException("The segment was not encrypted using the provided key agreement.");
+        return decrypt(keyAgreement.getPrivateKeyReceiver());
+    }
+
     /**
      * Method to decrypt the {@link ECCipherEncryptedSegment}.
      *
@@ -0,0 +1,129 @@
+package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
+
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.KeyAgreement;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Class representing an ephemeral ECDH key agreement with the owner of an EC key pair.
+ * <p>
+ * The keys of several {@link ECCipherEncryptedSegment}s for the same receiver can be derived from one
+ * {@link ECDHKeyAgreement} (using HKDF-SHA256 with a different label per segment), instead of encrypting a random
+ * key for each segment separately using ECIES. The receiver only has to perform the agreement once to decrypt all of them.
+ */
+public class ECDHKeyAgreement {
+
+    /**
+     * {@link KeyAgreement} and {@link KeyFactory} instances are not thread-safe, so they are cached per thread.
+     */
+    private final static ThreadLocal<KeyAgreement> keyAgreementInstances = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyAgreement.getInstance("ECDH");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private final static ThreadLocal<KeyFactory> keyFactoryInstances = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyFactory.getInstance("EC");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final byte[] encodedEphemeralPublicKey;
+    private final byte[] pseudoRandomKey;
+    private final PrivateKey privateKeyReceiver;
+
+    /**
+     * Constructor for the {@link ECDHKeyAgreement} class, used by the sender.
+     * A fresh ephemeral EC {@link KeyPair} is taken from the {@link KeyMaterialPool} for the agreement.
+     *
+     * @param publicKeyReceiver The EC {@link PublicKey} of the receiver.
+     * @throws IllegalArgumentException If the agreement could not be performed with the provided key.
+     */
+    public ECDHKeyAgreement(@NotNull PublicKey publicKeyReceiver) throws IllegalArgumentException {
+        KeyPair ephemeralKeyPair = KeyMaterialPool.takeECKeyPair();
+        this.encodedEphemeralPublicKey = ephemeralKeyPair.getPublic().getEncoded();
+        this.pseudoRandomKey = agree(ephemeralKeyPair.getPrivate(), publicKeyReceiver, encodedEphemeralPublicKey);
+        this.privateKeyReceiver = null;
+    }
+
+    /**
+     * Constructor for the {@link ECDHKeyAgreement} class, used by the receiver.
+     *
+     * @param encodedEphemeralPublicKey The encoded ephemeral EC {@link PublicKey} of the sender.
+     * @param privateKeyReceiver        The EC {@link PrivateKey} of the receiver.
+     * @throws IllegalArgumentException If the agreement could not be performed with the provided keys.
+     */
+    ECDHKeyAgreement(byte[] encodedEphemeralPublicKey, @NotNull PrivateKey privateKeyReceiver) throws IllegalArgumentException {
+        this.encodedEphemeralPublicKey = encodedEphemeralPublicKey;
+        try {
+            PublicKey ephemeralPublicKey = keyFactoryInstances.get().generatePublic(new X509EncodedKeySpec(encodedEphemeralPublicKey));
+            this.pseudoRandomKey = agree(privateKeyReceiver, ephemeralPublicKey, encodedEphemeralPublicKey);
+        } catch (InvalidKeySpecException e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.privateKeyReceiver = privateKeyReceiver;
+    }
+
+    /**
+     * Method to perform the ECDH agreement and the extraction step of HKDF-SHA256, salted with the ephemeral public key.
+     *
+     * @return The pseudorandom key.
+     */
+    private static byte[] agree(@NotNull PrivateKey privateKey, @NotNull PublicKey publicKey, byte[] encodedEphemeralPublicKey)
+            throws IllegalArgumentException {
+        byte[] sharedSecret = null;
+        try {
+            KeyAgreement keyAgreement = keyAgreementInstances.get();
+            keyAgreement.init(privateKey);
+            keyAgreement.doPhase(publicKey, true);
+            sharedSecret = keyAgreement.generateSecret();
+            return Hashing.hmacSha256(encodedEphemeralPublicKey).hashBytes(sharedSecret).asBytes();
+        } catch (InvalidKeyException | IllegalStateException e) {
+            // The provider selection of the instance may not be completed; don't reuse it.
+            keyAgreementInstances.remove();
+            throw new IllegalArgumentException(e);
+        } finally {
+            if (sharedSecret != null) Arrays.fill(sharedSecret, (byte) 0);
+        }
+    }
+
+    /**
+     * Method to derive a 256-bit key from this agreement, using the expansion step of HKDF-SHA256.
+     *
+     * @param label The label of the key; different labels result in independent keys.
+     * @return The derived key.
+     */
+    public byte[] deriveKey(@NotNull String label) {
+        byte[] info = label.getBytes(StandardCharsets.UTF_8);
+        byte[] input = Arrays.copyOf(info, info.length + 1);
+        input[info.length] = 1;
+        return Hashing.hmacSha256(pseudoRandomKey).hashBytes(input).asBytes();
+    }
+
+    /**
+     * Getter for the encoded ephemeral EC {@link PublicKey} of the sender.
+     *
+     * @return The encoded {@link PublicKey}.
+     */
+    byte[] getEncodedEphemeralPublicKey() {
+        return encodedEphemeralPublicKey;
+    }
+
+    /**
+     * Getter for the EC {@link PrivateKey} of the receiver.
+     *
+     * @return The {@link PrivateKey}, or null if this agreement was made by the sender.
+     */
+    PrivateKey getPrivateKeyReceiver() {
+        return privateKeyReceiver;
+    }
+}
@@ -1,5 +1,13 @@
 package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import cryptid.complex.Complex;
+import cryptid.ellipticcurve.TypeOneEllipticCurve;
+import cryptid.ellipticcurve.pairing.tate.TatePairingFactory;
 import cryptid.ellipticcurve.point.affine.AffinePoint;
 import cryptid.ellipticcurve.point.affine.generator.GenerationStrategyFactory;
 import cryptid.ellipticcurve.point.affine.generator.Mod3GenerationStrategy;
@@ -12,21 +20,39 @@ import cryptid.ibe.bonehfranklin.BonehFranklinIbeInitializer;
 import cryptid.ibe.domain.*;
 import cryptid.ibe.exception.ComponentConstructionException;
 import cryptid.ibe.exception.SetupException;
+import cryptid.ibe.util.CanonicalUtils;
+import cryptid.ibe.util.HashUtils;
 import cryptid.ibe.util.SolinasPrimeFactory;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
 import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.RTreePolicy;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
+import vrielynckpieterjan.masterproef.shared.serialization.Exportable;
+import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -38,6 +64,60 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
         implements DecryptableSegment<DecryptedObjectType, Pair<PublicParameters, PrivateKey>> {
 
     private final static Logger logger = Logger.getLogger(IBEDecryptableSegment.class.getName());
+
+    /**
+     * The maximum amount of {@link IbeClient} and {@link PrivateKeyGenerator} instances which are cached.
+     * Constructing these instances sets up the elliptic curve and pairing, which is costly compared to a single
+     * encryption / decryption, so they are reused for the same {@link PublicParameters} (and master secret).
+     * The {@link PrivateKeyGenerator}s are cached by the fingerprint of their {@link PublicParameters}
+     * (cf. {@link #fingerprint(PublicParameters)}).
+     */
+    private final static int COMPONENT_CACHE_SIZE = 256;
+    private final static Cache<PublicParameters, IbeClient> ibeClientCache =
+            CacheBuilder.newBuilder().maximumSize(COMPONENT_CACHE_SIZE).build();
+    private final static Cache<HashCode, PrivateKeyGenerator> privateKeyGeneratorCache =
+            CacheBuilder.newBuilder().maximumSize(COMPONENT_CACHE_SIZE).build();
+
+    /**
+     * The first character of plaintexts which are not encoded using the legacy Java serialization (base64 never
+     * contains this character), followed by a character indicating the version of the encoding.
+     */
+    private final static char PLAINTEXT_VERSION_MARKER = '!';
+    private final static char PLAINTEXT_VERSION_HYBRID = '3';
+    private final static byte PLAINTEXT_TYPE_EXPORTABLE = 'E';
+    private final static byte PLAINTEXT_TYPE_BYTES = 'B';
+    private final static byte PLAINTEXT_TYPE_STRING = 'S';
+    private final static byte PLAINTEXT_TYPE_SERIALIZED = 'J';
+
+    /**
+     * In the hybrid mode, only a random AES-256 key is encrypted using IBE (KEM); the encoded original object
+     * is encrypted using AES-GCM with that key (DEM). The cost and size of the IBE part are therefore constant,
+     * and a decryption attempt with a wrong private key fails before the payload is touched.
+     */
+    private final static int PAYLOAD_KEY_LENGTH = 32;
+    private final static int PAYLOAD_NONCE_LENGTH = 12;
+    private final static int PAYLOAD_TAG_LENGTH = 128;
+    /**
+     * Serialized hybrid segments start with one of these (negative) values, instead of the length of the X coordinate.
+     */
+    private final static int HYBRID_SERIALIZATION_MARKER = -1;
+    private final static int HYBRID_WITH_HINT_SERIALIZATION_MARKER = -2;
+
+    /**
+     * Hybrid segments carry a decryption hint: a random point R = tP, followed by the truncated HMAC of R, keyed with
+     * the hint key e(P_pub, Q_ID)^t. Only holders of the private key d_ID can compute this key from the hint, as the
+     * pairing of R and d_ID (cf. {@link #matchesDecryptionHint(PublicParameters, PrivateKey)}). Checking the hint
+     * costs that single pairing, which is cheaper than a failed trial decryption; the tag is long enough for a match
+     * to mean the private key is the right one.
+     */
+    private final static int HINT_TAG_LENGTH = 16;
+    /**
+     * Issuers encrypt for the same identifiers over and over; the pairings e(P_pub, Q_ID) of which the hint keys
+     * are derived are cached, keyed by the two paired points.
+     */
+    private final static Cache<Pair<AffinePoint, AffinePoint>, Complex> hintPairingCache =
+            CacheBuilder.newBuilder().maximumSize(4 * COMPONENT_CACHE_SIZE).build();
+
     static IbeComponentFactory componentFactory;
     private static SecureRandom secureRandom;
     private static SolinasPrimeFactory solinasPrimeFactory;
@@ -45,23 +125,18 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
     private static IbeInitializer initializer;
 
     static {
-        try {
-            secureRandom = SecureRandom.getInstanceStrong();
-            solinasPrimeFactory = new SolinasPrimeFactory(secureRandom);
-            generationStrategyFactory =
-                    ellipticCurve -> new Mod3GenerationStrategy(ellipticCurve, secureRandom);
-            initializer = new BonehFranklinIbeInitializer(
-                    secureRandom, solinasPrimeFactory, generationStrategyFactory);
-            componentFactory = new BonehFranklinIbeComponentFactoryImpl(secureRandom);
-        } catch (NoSuchAlgorithmException e) {
-            logger.severe(String.format("The SecureRandom instance could not be initialized (reason: %s). Due" +
-                    " to the severity of this problem, the program will now exit.", e));
-            e.printStackTrace();
-            System.exit(1);
-        }
+        secureRandom = RandomnessService.getSecureRandom();
+        solinasPrimeFactory = new SolinasPrimeFactory(secureRandom);
+        generationStrategyFactory =
+                ellipticCurve -> new Mod3GenerationStrategy(ellipticCurve, secureRandom);
+        initializer = new BonehFranklinIbeInitializer(
+                secureRandom, solinasPrimeFactory, generationStrategyFactory);
+        componentFactory = new BonehFranklinIbeComponentFactoryImpl(secureRandom);
     }
 
     private final CipherTextTuple encryptedSegment;
+    private final byte[] encryptedPayload;
+    private final byte[] decryptionHint;
 
     /**
      * Constructor for the {@link IBEDecryptableSegment} class.
@@ -69,7 +144,20 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
      * @param encryptedSegment The (already) encrypted segment.
      */
     protected IBEDecryptableSegment(@NotNull CipherTextTuple encryptedSegment) {
+        this(encryptedSegment, null, null);
+    }
+
+    /**
+     * Constructor for the {@link IBEDecryptableSegment} class.
+     *
+     * @param encryptedSegment The (already) encrypted segment; in the hybrid mode, this is the encrypted payload key.
+     * @param encryptedPayload The (already) encrypted payload in the hybrid mode, or null.
+     * @param decryptionHint   The decryption hint, or null.
+     */
+    protected IBEDecryptableSegment(@NotNull CipherTextTuple encryptedSegment, byte[] encryptedPayload, byte[] decryptionHint) {
         this.encryptedSegment = encryptedSegment;
+        this.encryptedPayload = encryptedPayload;
+        this.decryptionHint = decryptionHint;
     }
 
     /**
@@ -81,19 +169,28 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
      */
     public IBEDecryptableSegment(@NotNull DecryptedObjectType originalObject, @NotNull Pair<PublicParameters, String> publicParametersStringPair)
             throws IllegalArgumentException {
-        /*
-        Convert the original object to a String first.
-        This is required by the underlying IBE encryption library.
-         */
-        String convertedOriginalObject;
+        byte[] encodedOriginalObject;
         try {
-            convertedOriginalObject = convertSerializableToString(originalObject);
+            encodedOriginalObject = encodePlaintextBytes(originalObject);
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
 
-        // Actual encryption part.
-        encryptedSegment = encrypt(convertedOriginalObject, publicParametersStringPair);
+        /*
+        Hybrid mode: only the payload key is encrypted using IBE.
+        The underlying IBE encryption library requires a String, so the key is converted first.
+         */
+        byte[] payloadKey = new byte[PAYLOAD_KEY_LENGTH];
+        secureRandom.nextBytes(payloadKey);
+        try {
+            encryptedSegment = encrypt(String.valueOf(PLAINTEXT_VERSION_MARKER) + PLAINTEXT_VERSION_HYBRID
+                    + Base64.getEncoder().withoutPadding().encodeToString(payloadKey), publicParametersStringPair);
+            encryptedPayload = applyPayloadCipher(Cipher.ENCRYPT_MODE, payloadKey, encodedOriginalObject);
+        } finally {
+            Arrays.fill(payloadKey, (byte) 0);
+        }
+
+        decryptionHint = generateDecryptionHint(publicParametersStringPair.getLeft(), publicParametersStringPair.getRight());
     }
 
     /**
@@ -144,16 +241,16 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
     public static @NotNull PrivateKey generatePrivateKey(@NotNull PrivateEntityIdentifier privateEntityIdentifier,
                                                          @NotNull String id) throws IllegalArgumentException {
         try {
-            PrivateKeyGenerator privateKeyGenerator = componentFactory.obtainPrivateKeyGenerator(
-                    privateEntityIdentifier.getIBEIdentifier().getLeft(), privateEntityIdentifier.getIBEIdentifier().getRight());
-            return privateKeyGenerator.extract(id);
+            return IBEPrivateKeyCache.extract(privateEntityIdentifier.getIBEIdentifier().getLeft(),
+                    privateEntityIdentifier.getIBEIdentifier().getRight(), id);
         } catch (Exception e) {
             throw new IllegalArgumentException(e);
         }
     }
 
     /**
-     * Method to convert a {@link Serializable} to a readable String.
+     * Method to convert a {@link Serializable} to a readable String, using Java serialization.
+     * This is the legacy plaintext encoding; see {@link #encodePlaintextBytes(Serializable)} for the current one.
      *
      * @param serializable The {@link Serializable}.
      * @return A base64 String.
@@ -168,48 +265,338 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
         return Base64.getEncoder().encodeToString(byteArrayOutputStream.toByteArray());
     }
 
+    /**
+     * Method to convert a {@link Serializable} to a byte array, starting with a byte indicating its type.
+     * {@link Exportable} instances are encoded using their own binary form (prefixed with their class name),
+     * byte arrays and Strings as-is; other types are encoded using Java serialization.
+     *
+     * @param serializable The {@link Serializable}.
+     * @return The encoded {@link Serializable}.
+     * @throws IOException If the {@link Serializable} could not be encoded.
+     */
+    static byte[] encodePlaintextBytes(@NotNull Serializable serializable) throws IOException {
+        if (serializable instanceof Exportable) {
+            byte[] className = serializable.getClass().getName().getBytes(StandardCharsets.UTF_8);
+            byte[] serialized = ((Exportable) serializable).serialize();
+            ByteBuffer byteBuffer = ByteBuffer.allocate(1 + 2 + className.length + serialized.length);
+            byteBuffer.put(PLAINTEXT_TYPE_EXPORTABLE);
+            byteBuffer.putShort((short) className.length);
+            byteBuffer.put(className);
+            byteBuffer.put(serialized);
+            return byteBuffer.array();
+        } else if (serializable instanceof byte[]) {
+            return prependType(PLAINTEXT_TYPE_BYTES, (byte[]) serializable);
+        } else if (serializable instanceof String) {
+            return prependType(PLAINTEXT_TYPE_STRING, ((String) serializable).getBytes(StandardCharsets.UTF_8));
+        } else return prependType(PLAINTEXT_TYPE_SERIALIZED, SerializationUtils.serialize(serializable));
+    }
+
+    private static byte[] prependType(byte type, byte[] data) {
+        byte[] result = new byte[1 + data.length];
+        result[0] = type;
+        System.arraycopy(data, 0, result, 1, data.length);
+        return result;
+    }
+
+    /**
+     * Method to convert a String, encoded using {@link #convertSerializableToString(Serializable)}, back to the original object.
+     *
+     * @param string The String.
+     * @return The original object.
+     * @throws IOException            If the String could not be converted.
+     * @throws ClassNotFoundException If the String could not be converted.
+     */
+    static @NotNull Serializable decodePlaintext(@NotNull String string) throws IOException, ClassNotFoundException {
+        // Plain base64 never contains the version marker of the other encodings.
+        if (!string.isEmpty() && string.charAt(0) == PLAINTEXT_VERSION_MARKER)
+            throw new IOException(String.format("Unsupported plaintext encoding version (%s).", string.substring(1, Math.min(2, string.length()))));
+        ObjectInputStream objectInputStream = new ObjectInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(string)));
+        Serializable decryptedObject = (Serializable) objectInputStream.readObject();
+        objectInputStream.close();
+        return decryptedObject;
+    }
+
+    /**
+     * Method to convert a byte array, encoded using {@link #encodePlaintextBytes(Serializable)}, back to the original object.
+     *
+     * @param bytes The byte array.
+     * @return The original object.
+     * @throws IOException            If the byte array could not be converted.
+     * @throws ClassNotFoundException If the byte array could not be converted.
+     */
+    static @NotNull Serializable decodePlaintextBytes(byte[] bytes) throws IOException, ClassNotFoundException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        if (!byteBuffer.hasRemaining()) throw new IOException("Empty plaintext.");
+
+        byte type = byteBuffer.get();
+        switch (type) {
+            case PLAINTEXT_TYPE_BYTES:
+                return Arrays.copyOfRange(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit());
+            case PLAINTEXT_TYPE_STRING:
+                return new String(byteBuffer.array(), byteBuffer.position(), byteBuffer.remaining(), StandardCharsets.UTF_8);
+            case PLAINTEXT_TYPE_SERIALIZED:
+                try {
+                    return SerializationUtils.deserialize(Arrays.copyOfRange(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit()));
+                } catch (SerializationException e) {
+                    throw new IOException(e);
+                }
+            case PLAINTEXT_TYPE_EXPORTABLE:
+                byte[] className = new byte[byteBuffer.getShort() & 0xFFFF];
+                byteBuffer.get(className);
+                Class<?> clazz = Class.forName(new String(className, StandardCharsets.UTF_8), false,
+                        IBEDecryptableSegment.class.getClassLoader());
+                // Only invoke the deserialize method of Exportable realizations.
+                if (!Exportable.class.isAssignableFrom(clazz))
+                    throw new IOException(String.format("%s is not an Exportable realization.", clazz.getName()));
+                byte[] serialized = new byte[byteBuffer.remaining()];
+                byteBuffer.get(serialized);
+                return ExportableUtils.deserialize(serialized, clazz.asSubclass(Exportable.class));
+            default:
+                throw new IOException(String.format("Unknown plaintext type (%d).", type));
+        }
+    }
+
     public static @NotNull PrivateKeyGenerator obtainPKG(@NotNull PrivateEntityIdentifier privateEntityIdentifier) throws ComponentConstructionException {
         return obtainPKG(privateEntityIdentifier.getIBEIdentifier().getLeft(), privateEntityIdentifier.getIBEIdentifier().getRight());
     }
 
-    private static @NotNull PrivateKeyGenerator obtainPKG(@NotNull PublicParameters publicParameters, @NotNull BigInteger masterSecret) throws ComponentConstructionException {
-        return componentFactory.obtainPrivateKeyGenerator(publicParameters, masterSecret);
+    /**
+     * Method to obtain a (cached) {@link PrivateKeyGenerator} instance.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG.
+     * @param masterSecret     The master secret of the PKG.
+     * @return The {@link PrivateKeyGenerator}.
+     * @throws ComponentConstructionException If the {@link PrivateKeyGenerator} could not be constructed.
+     */
+    public static @NotNull PrivateKeyGenerator obtainPKG(@NotNull PublicParameters publicParameters, @NotNull BigInteger masterSecret) throws ComponentConstructionException {
+        try {
+            return privateKeyGeneratorCache.get(fingerprint(publicParameters),
+                    () -> componentFactory.obtainPrivateKeyGenerator(publicParameters, masterSecret));
+        } catch (ExecutionException e) {
+            throw new ComponentConstructionException(e.getCause());
+        }
+    }
+
+    /**
+     * Method to compute the fingerprint of {@link PublicParameters}, to cache components of the PKG by.
+     * The master secret s of a PKG is determined by its public parameters (P_pub = sP), so it is not part of the
+     * fingerprint.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG.
+     * @return The SHA-256 fingerprint.
+     */
+    static @NotNull HashCode fingerprint(@NotNull PublicParameters publicParameters) {
+        TypeOneEllipticCurve ellipticCurve = publicParameters.getEllipticCurve();
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (BigInteger value : new BigInteger[]{ellipticCurve.getFieldOrder(), ellipticCurve.getA(), ellipticCurve.getB(),
+                publicParameters.getQ(), publicParameters.getPointP().getX(), publicParameters.getPointP().getY(),
+                publicParameters.getPointPpublic().getX(), publicParameters.getPointPpublic().getY()}) {
+            byte[] encodedValue = value.toByteArray();
+            hasher.putInt(encodedValue.length).putBytes(encodedValue);
+        }
+        return hasher.putString(publicParameters.getHashFunction(), StandardCharsets.UTF_8).hash();
+    }
+
+    /**
+     * Method to obtain a (cached) {@link IbeClient} instance.
+     *
+     * @param publicParameters The {@link PublicParameters} to encrypt / decrypt with.
+     * @return The {@link IbeClient}.
+     * @throws ComponentConstructionException If the {@link IbeClient} could not be constructed.
+     */
+    public static @NotNull IbeClient obtainClient(@NotNull PublicParameters publicParameters) throws ComponentConstructionException {
+        try {
+            return ibeClientCache.get(publicParameters, () -> componentFactory.obtainClient(publicParameters));
+        } catch (ExecutionException e) {
+            throw new ComponentConstructionException(e.getCause());
+        }
     }
 
     @NotNull
     public static IBEDecryptableSegment deserialize(@NotNull ByteBuffer byteBuffer) {
-        byte[] xArray = new byte[byteBuffer.getInt()];
+        int xLength = byteBuffer.getInt();
+        byte[] decryptionHint = null;
+        if (xLength == HYBRID_WITH_HINT_SERIALIZATION_MARKER) {
+            // The hint point R, as two length-prefixed coordinates, followed by the tag.
+            int start = byteBuffer.position();
+            byteBuffer.position(start + 4 + byteBuffer.getInt(start));
+            byteBuffer.position(byteBuffer.position() + 4 + byteBuffer.getInt() + HINT_TAG_LENGTH);
+            decryptionHint = new byte[byteBuffer.position() - start];
+            byteBuffer.position(start);
+            byteBuffer.get(decryptionHint);
+            xLength = HYBRID_SERIALIZATION_MARKER;
+        }
+        boolean hybrid = xLength == HYBRID_SERIALIZATION_MARKER;
+        if (hybrid) xLength = byteBuffer.getInt();
+
+        byte[] xArray = new byte[xLength];
         byteBuffer.get(xArray);
         byte[] yArray = new byte[byteBuffer.getInt()];
         byteBuffer.get(yArray);
         byte[] v = new byte[byteBuffer.getInt()];
         byteBuffer.get(v);
-        byte[] w = new byte[byteBuffer.remaining()];
+        byte[] w = new byte[(hybrid) ? byteBuffer.getInt() : byteBuffer.remaining()];
         byteBuffer.get(w);
+        byte[] encryptedPayload = null;
+        if (hybrid) {
+            encryptedPayload = new byte[byteBuffer.remaining()];
+            byteBuffer.get(encryptedPayload);
+        }
 
         BigInteger x = new BigInteger(xArray);
         BigInteger y = new BigInteger(yArray);
         AffinePoint u = new AffinePoint(x, y);
 
         CipherTextTuple cipherTextTuple = new CipherTextTuple(u, v, w);
-        return new IBEDecryptableSegment(cipherTextTuple);
+        return new IBEDecryptableSegment(cipherTextTuple, encryptedPayload, decryptionHint);
     }
 
     /**
-     * Method to convert a readble String to a DecryptedObjectType instance.
+     * Method to generate the decryption hint for an IBE identifier: a random point R = tP, followed by the tag of R
+     * keyed with e(P_pub, Q_ID)^t = e(R, d_ID).
      *
-     * @param string The String.
-     * @return A DecryptedObjectType instance.
-     * @throws IOException            If the String could not be converted to a DecryptedObjectType instance.
-     * @throws ClassNotFoundException If the String could not be converted to a DecryptedObjectType instance.
+     * @param publicParameters The {@link PublicParameters} of the PKG.
+     * @param id               The IBE identifier.
+     * @return The encoded decryption hint.
+     * @throws IllegalArgumentException If the hash function of the {@link PublicParameters} is not supported.
      */
-    private @NotNull DecryptedObjectType convertStringToDecryptedObjectType(@NotNull String string)
-            throws IOException, ClassNotFoundException {
-        byte[] data = Base64.getDecoder().decode(string);
-        ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(data));
-        DecryptedObjectType decryptedObject = (DecryptedObjectType) objectInputStream.readObject();
-        objectInputStream.close();
-        return decryptedObject;
+    private static byte[] generateDecryptionHint(@NotNull PublicParameters publicParameters, @NotNull String id)
+            throws IllegalArgumentException {
+        TypeOneEllipticCurve ellipticCurve = publicParameters.getEllipticCurve();
+        BigInteger t;
+        do {
+            t = new BigInteger(publicParameters.getQ().bitLength(), secureRandom);
+        } while (t.signum() == 0 || t.compareTo(publicParameters.getQ()) >= 0);
+
+        AffinePoint pointR = publicParameters.getPointP().multiply(t, ellipticCurve);
+        byte[] encodedPointR = encodeHintPoint(pointR);
+        Complex hintPairing = computePairing(publicParameters, id).modPow(t, ellipticCurve.getFieldOrder());
+        byte[] hintKey = CanonicalUtils.canonical(ellipticCurve.getFieldOrder(),
+                CanonicalUtils.CanonicalOrdering.IMAGINARY_FIRST, hintPairing);
+        return ArrayUtils.addAll(encodedPointR, computeHintTag(hintKey, encodedPointR));
+    }
+
+    /**
+     * Method to compute the pairing e(P_pub, Q_ID) for an IBE identifier, using the public parameters only.
+     * This equals the pairing of P and the private key sQ_ID, so anyone guessing the identifier can compute it:
+     * the hint key is derived of it using the secret exponent t of the decryption hint.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG.
+     * @param id               The IBE identifier.
+     * @return The pairing.
+     * @throws IllegalArgumentException If the hash function of the {@link PublicParameters} is not supported.
+     */
+    static Complex computePairing(@NotNull PublicParameters publicParameters, @NotNull String id) throws IllegalArgumentException {
+        try {
+            TypeOneEllipticCurve ellipticCurve = publicParameters.getEllipticCurve();
+            AffinePoint pointQId = HashUtils.hashToPoint(ellipticCurve, ellipticCurve.getFieldOrder(), publicParameters.getQ(),
+                    id, MessageDigest.getInstance(publicParameters.getHashFunction()));
+            AffinePoint pointPPublic = publicParameters.getPointPpublic();
+            return hintPairingCache.get(new ImmutablePair<>(pointPPublic, pointQId), () -> TatePairingFactory.INSTANCE
+                    .typeOneTatePairing(ellipticCurve, publicParameters.getQ()).performPairing(pointPPublic, pointQId));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalArgumentException(e.getCause());
+        }
+    }
+
+    private static byte[] encodeHintPoint(@NotNull AffinePoint point) {
+        byte[] xArray = point.getX().toByteArray();
+        byte[] yArray = point.getY().toByteArray();
+        return ByteBuffer.allocate(4 * 2 + xArray.length + yArray.length)
+                .putInt(xArray.length).put(xArray).putInt(yArray.length).put(yArray).array();
+    }
+
+    static byte[] computeHintTag(byte[] hintKey, byte[] encodedPointR) {
+        return Arrays.copyOf(Hashing.hmacSha256(hintKey).hashBytes(encodedPointR).asBytes(), HINT_TAG_LENGTH);
+    }
+
+    /**
+     * Method to check if this {@link IBEDecryptableSegment} may be decryptable using a {@link PrivateKey}.
+     * This costs one pairing, which is cheaper than a failed decryption attempt.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG of the {@link PrivateKey}.
+     * @param privateKey       The {@link PrivateKey}.
+     * @return False if the decryption will fail; true otherwise, or if this segment has no decryption hint.
+     */
+    public boolean matchesDecryptionHint(@NotNull PublicParameters publicParameters, @NotNull PrivateKey privateKey) {
+        if (decryptionHint == null) return true;
+        ByteBuffer byteBuffer = ByteBuffer.wrap(decryptionHint);
+        byte[] xArray = new byte[byteBuffer.getInt()];
+        byteBuffer.get(xArray);
+        byte[] yArray = new byte[byteBuffer.getInt()];
+        byteBuffer.get(yArray);
+        AffinePoint pointR = new AffinePoint(new BigInteger(xArray), new BigInteger(yArray));
+
+        TypeOneEllipticCurve ellipticCurve = publicParameters.getEllipticCurve();
+        Complex pairing = TatePairingFactory.INSTANCE.typeOneTatePairing(ellipticCurve, publicParameters.getQ())
+                .performPairing(pointR, privateKey.getData());
+        return matchesDecryptionHint(CanonicalUtils.canonical(ellipticCurve.getFieldOrder(),
+                CanonicalUtils.CanonicalOrdering.IMAGINARY_FIRST, pairing));
+    }
+
+    boolean matchesDecryptionHint(byte[] hintKey) {
+        if (decryptionHint == null) return true;
+        int pointLength = decryptionHint.length - HINT_TAG_LENGTH;
+        return MessageDigest.isEqual(computeHintTag(hintKey, Arrays.copyOf(decryptionHint, pointLength)),
+                Arrays.copyOfRange(decryptionHint, pointLength, decryptionHint.length));
+    }
+
+    /**
+     * Method to convert the decrypted IBE part of a hybrid mode segment to the payload key.
+     *
+     * @param string The decrypted IBE part.
+     * @return The payload key.
+     * @throws IOException If the decrypted IBE part does not contain a payload key.
+     */
+    private static byte[] decodePayloadKey(@NotNull String string) throws IOException {
+        if (string.length() < 2 || string.charAt(0) != PLAINTEXT_VERSION_MARKER || string.charAt(1) != PLAINTEXT_VERSION_HYBRID)
+            throw new IOException("The decrypted segment does not contain a payload key.");
+        byte[] payloadKey;
+        try {
+            payloadKey = Base64.getDecoder().decode(string.substring(2));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+        if (payloadKey.length != PAYLOAD_KEY_LENGTH)
+            throw new IOException(String.format("Invalid payload key length (%d bytes).", payloadKey.length));
+        return payloadKey;
+    }
+
+    /**
+     * Method to encrypt / decrypt the payload of a hybrid mode segment using AES-GCM.
+     * The encrypted payload consists of the random nonce, followed by the ciphertext (including the tag).
+     *
+     * @param cipherMode The {@link Cipher} mode.
+     * @param payloadKey The payload key.
+     * @param element    The payload to encrypt, or the encrypted payload to decrypt.
+     * @return The encrypted / decrypted payload.
+     * @throws IllegalArgumentException If the payload could not be encrypted / decrypted (e.g. if it was tampered with).
+     */
+    private static byte[] applyPayloadCipher(int cipherMode, byte[] payloadKey, byte[] element) throws IllegalArgumentException {
+        try {
+            Cipher cipher = CipherEncryptedSegment.obtainCipher("AES/GCM/NoPadding");
+            SecretKeySpec secretKeySpec = new SecretKeySpec(payloadKey, "AES");
+            if (cipherMode == Cipher.ENCRYPT_MODE) {
+                byte[] nonce = new byte[PAYLOAD_NONCE_LENGTH];
+                secureRandom.nextBytes(nonce);
+                cipher.init(cipherMode, secretKeySpec, new GCMParameterSpec(PAYLOAD_TAG_LENGTH, nonce));
+                ByteBuffer byteBuffer = ByteBuffer.allocate(PAYLOAD_NONCE_LENGTH + cipher.getOutputSize(element.length));
+                byteBuffer.put(nonce);
+                cipher.doFinal(ByteBuffer.wrap(element), byteBuffer);
+                return byteBuffer.array();
+            }
+            if (element.length < PAYLOAD_NONCE_LENGTH) throw new IllegalArgumentException("Truncated payload.");
+            cipher.init(cipherMode, secretKeySpec, new GCMParameterSpec(PAYLOAD_TAG_LENGTH, element, 0, PAYLOAD_NONCE_LENGTH));
+            return cipher.doFinal(element, PAYLOAD_NONCE_LENGTH, element.length - PAYLOAD_NONCE_LENGTH);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
+            CipherEncryptedSegment.discardCipher("AES/GCM/NoPadding");
+            throw new IllegalArgumentException(e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException(e);
+        }
     }
 
     /**
@@ -225,7 +612,7 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
             throws IllegalArgumentException {
         try {
             // Construct the necessary part of the PKG to encrypt the String.
-            IbeClient ibeClient = componentFactory.obtainClient(publicParametersStringPair.getLeft());
+            IbeClient ibeClient = obtainClient(publicParametersStringPair.getLeft());
             // Actual encryption part.
             CipherTextTuple cipherTextTuple = ibeClient.encrypt(originalObject, publicParametersStringPair.getRight());
             return cipherTextTuple;
@@ -236,8 +623,25 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
 
     public @NotNull DecryptedObjectType decrypt(@NotNull IbeClient ibeClient, @NotNull PrivateKey privateKey) throws IllegalArgumentException {
         try {
-            String decryptedObjectAsString = ibeClient.decrypt(privateKey, encryptedSegment).get();
-            return convertStringToDecryptedObjectType(decryptedObjectAsString);
+            // Fails here for a wrong private key, before the (hybrid mode) payload is touched.
+            String decryptedObjectAsString = ibeClient.decrypt(privateKey, encryptedSegment).orElseThrow(
+                    () -> new IllegalArgumentException("The segment could not be decrypted using the provided private key."));
+            Serializable decryptedObject;
+            if (encryptedPayload == null) {
+                decryptedObject = decodePlaintext(decryptedObjectAsString);
+            } else {
+                byte[] payloadKey = decodePayloadKey(decryptedObjectAsString);
+                try {
+                    decryptedObject = decodePlaintextBytes(applyPayloadCipher(Cipher.DECRYPT_MODE, payloadKey, encryptedPayload));
+                } finally {
+                    Arrays.fill(payloadKey, (byte) 0);
+                }
+            }
+
+            // The segment was created by encrypting a DecryptedObjectType, which both encodings decode to the same class.
+            @SuppressWarnings("unchecked")
+            DecryptedObjectType originalObject = (DecryptedObjectType) decryptedObject;
+            return originalObject;
         } catch (Exception e) {
             throw new IllegalArgumentException(e);
         }
@@ -245,7 +649,7 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
 
     public @NotNull DecryptedObjectType decrypt(@NotNull PublicParameters publicParameters, @NotNull PrivateKey privateKey) throws IllegalArgumentException {
         try {
-            IbeClient ibeClient = componentFactory.obtainClient(publicParameters);
+            IbeClient ibeClient = obtainClient(publicParameters);
             return decrypt(ibeClient, privateKey);
         } catch (Exception e) {
             throw new IllegalArgumentException(e);
@@ -255,8 +659,7 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
     public @NotNull DecryptedObjectType decrypt(@NotNull PublicParameters publicParameters, @NotNull BigInteger masterSecret,
                                                 @NotNull String id) throws IllegalArgumentException {
         try {
-            PrivateKeyGenerator privateKeyGenerator = componentFactory.obtainPrivateKeyGenerator(publicParameters, masterSecret);
-            PrivateKey privateKey = privateKeyGenerator.extract(id);
+            PrivateKey privateKey = IBEPrivateKeyCache.extract(publicParameters, masterSecret, id);
             return decrypt(publicParameters, privateKey);
         } catch (Exception e) {
             throw new IllegalArgumentException(e);
@@ -290,12 +693,16 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         IBEDecryptableSegment<?> that = (IBEDecryptableSegment<?>) o;
-        return encryptedSegment.equals(that.encryptedSegment);
+        return encryptedSegment.equals(that.encryptedSegment) && Arrays.equals(encryptedPayload, that.encryptedPayload)
+                && Arrays.equals(decryptionHint, that.decryptionHint);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(encryptedSegment);
+        int result = Objects.hash(encryptedSegment);
+        result = 31 * result + Arrays.hashCode(encryptedPayload);
+        result = 31 * result + Arrays.hashCode(decryptionHint);
+        return result;
     }
 
     @Override
@@ -309,12 +716,29 @@ public class IBEDecryptableSegment<DecryptedObjectType extends Serializable>
         byte[] v = encryptedSegment.getCipherV();
         byte[] w = encryptedSegment.getCipherW();
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(xArray.length + yArray.length + v.length + w.length + 4 * 3);
-        for (byte[] array : new byte[][]{xArray, yArray, v}) {
+        if (encryptedPayload == null) {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(xArray.length + yArray.length + v.length + w.length + 4 * 3);
+            for (byte[] array : new byte[][]{xArray, yArray, v}) {
+                byteBuffer.putInt(array.length);
+                byteBuffer.put(array);
+            }
+            byteBuffer.put(w);
+            return byteBuffer.array();
+        }
+
+        int hintLength = (decryptionHint == null) ? 0 : decryptionHint.length;
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4 + hintLength + xArray.length + yArray.length + v.length + w.length + 4 * 4
+                + encryptedPayload.length);
+        if (decryptionHint == null) byteBuffer.putInt(HYBRID_SERIALIZATION_MARKER);
+        else {
+            byteBuffer.putInt(HYBRID_WITH_HINT_SERIALIZATION_MARKER);
+            byteBuffer.put(decryptionHint);
+        }
+        for (byte[] array : new byte[][]{xArray, yArray, v, w}) {
             byteBuffer.putInt(array.length);
             byteBuffer.put(array);
         }
-        byteBuffer.put(w);
+        byteBuffer.put(encryptedPayload);
 
         return byteBuffer.array();
     }
@@ -0,0 +1,162 @@
+package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.hash.HashCode;
+import cryptid.ellipticcurve.point.affine.AffinePoint;
+import cryptid.ibe.domain.PrivateKey;
+import cryptid.ibe.domain.PublicParameters;
+import cryptid.ibe.exception.ComponentConstructionException;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Class representing a cache of extracted IBE {@link PrivateKey}s, per issuer (PKG) and per IBE identifier.
+ * An issuer delegating several policies under the same namespace extracts the keys for the same identifiers
+ * over and over; with this cache, each key is only extracted once. The issuers are told apart by the fingerprint
+ * of their {@link PublicParameters} (cf. {@link IBEDecryptableSegment#fingerprint(PublicParameters)}).
+ * <p>
+ * The cached keys are kept in an encoded form, which is overwritten with zeros when the key is evicted from the cache.
+ * This only limits how long the cache itself holds on to the keys: the {@link PrivateKey} instances returned by
+ * this cache are new instances, consisting of immutable {@link BigInteger}s which can't be overwritten, and they
+ * remain in memory until they are garbage collected.
+ */
+public final class IBEPrivateKeyCache {
+
+    /**
+     * The maximum amount of issuers for which extracted keys are cached.
+     */
+    private final static int MAXIMUM_AMOUNT_OF_ISSUERS = 64;
+
+    /**
+     * The maximum amount of extracted keys which are cached per issuer.
+     */
+    private final static int MAXIMUM_AMOUNT_OF_KEYS_PER_ISSUER = 1024;
+
+    private final static RemovalListener<String, byte[]> keyRemovalListener = notification -> {
+        byte[] encodedPrivateKey = notification.getValue();
+        synchronized (encodedPrivateKey) {
+            Arrays.fill(encodedPrivateKey, (byte) 0);
+        }
+    };
+    private final static RemovalListener<HashCode, Cache<String, byte[]>> issuerRemovalListener =
+            notification -> notification.getValue().invalidateAll();
+
+    private final static IBEPrivateKeyCache instance =
+            new IBEPrivateKeyCache(MAXIMUM_AMOUNT_OF_ISSUERS, MAXIMUM_AMOUNT_OF_KEYS_PER_ISSUER);
+
+    private final int maximumAmountOfKeysPerIssuer;
+    private final Cache<HashCode, Cache<String, byte[]>> cache;
+
+    /**
+     * Constructor for the {@link IBEPrivateKeyCache} class.
+     *
+     * @param maximumAmountOfIssuers       The maximum amount of issuers for which extracted keys are cached.
+     * @param maximumAmountOfKeysPerIssuer The maximum amount of extracted keys which are cached per issuer.
+     */
+    IBEPrivateKeyCache(int maximumAmountOfIssuers, int maximumAmountOfKeysPerIssuer) {
+        this.maximumAmountOfKeysPerIssuer = maximumAmountOfKeysPerIssuer;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumAmountOfIssuers)
+                .removalListener(issuerRemovalListener)
+                .build();
+    }
+
+    /**
+     * Method to obtain the IBE {@link PrivateKey} for an identifier, which is only extracted if it isn't cached yet.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG of the issuer.
+     * @param masterSecret     The master secret of the PKG of the issuer.
+     * @param id               The IBE identifier.
+     * @return The {@link PrivateKey}.
+     * @throws ComponentConstructionException If the PKG could not be constructed.
+     */
+    public static @NotNull PrivateKey extract(@NotNull PublicParameters publicParameters, @NotNull BigInteger masterSecret,
+                                              @NotNull String id) throws ComponentConstructionException {
+        return instance.obtain(publicParameters, masterSecret, id);
+    }
+
+    /**
+     * Method to remove all cached keys, overwriting them with zeros.
+     */
+    public static void clear() {
+        instance.cache.invalidateAll();
+    }
+
+    /**
+     * Method to obtain the IBE {@link PrivateKey} for an identifier from this cache, extracting it if needed.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG of the issuer.
+     * @param masterSecret     The master secret of the PKG of the issuer.
+     * @param id               The IBE identifier.
+     * @return The {@link PrivateKey}.
+     * @throws ComponentConstructionException If the PKG could not be constructed.
+     */
+    @NotNull PrivateKey obtain(@NotNull PublicParameters publicParameters, @NotNull BigInteger masterSecret,
+                               @NotNull String id) throws ComponentConstructionException {
+        try {
+            Cache<String, byte[]> issuerCache = cache.get(IBEDecryptableSegment.fingerprint(publicParameters),
+                    () -> CacheBuilder.newBuilder()
+                            .maximumSize(maximumAmountOfKeysPerIssuer)
+                            .removalListener(keyRemovalListener)
+                            .build());
+            byte[] encodedPrivateKey = issuerCache.get(id,
+                    () -> encode(IBEDecryptableSegment.obtainPKG(publicParameters, masterSecret).extract(id)));
+            PrivateKey privateKey = decode(encodedPrivateKey);
+            // The key was evicted (and overwritten) right after we obtained it from the cache.
+            return (privateKey != null) ? privateKey : IBEDecryptableSegment.obtainPKG(publicParameters, masterSecret).extract(id);
+        } catch (ExecutionException e) {
+            throw new ComponentConstructionException(e.getCause());
+        }
+    }
+
+    /**
+     * Method to obtain the encoded form of a cached key, without copying it.
+     *
+     * @param publicParameters The {@link PublicParameters} of the PKG of the issuer.
+     * @param id               The IBE identifier.
+     * @return The encoded key, or null if it isn't cached.
+     */
+    byte[] getEncodedKey(@NotNull PublicParameters publicParameters, @NotNull String id) {
+        Cache<String, byte[]> issuerCache = cache.getIfPresent(IBEDecryptableSegment.fingerprint(publicParameters));
+        return (issuerCache != null) ? issuerCache.getIfPresent(id) : null;
+    }
+
+    private static byte[] encode(@NotNull PrivateKey privateKey) {
+        byte[] x = privateKey.getData().getX().toByteArray();
+        byte[] y = privateKey.getData().getY().toByteArray();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(4 + x.length + y.length);
+        byteBuffer.putInt(x.length);
+        byteBuffer.put(x);
+        byteBuffer.put(y);
+        Arrays.fill(x, (byte) 0);
+        Arrays.fill(y, (byte) 0);
+        return byteBuffer.array();
+    }
+
+    /**
+     * @return The decoded {@link PrivateKey}, or null if the encoded key was already overwritten.
+     */
+    private static PrivateKey decode(byte[] encodedPrivateKey) {
+        byte[] x, y;
+        // Don't read the key while it is being overwritten after an eviction.
+        synchronized (encodedPrivateKey) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(encodedPrivateKey);
+            int xLength = byteBuffer.getInt();
+            if (xLength == 0) return null;
+            x = new byte[xLength];
+            byteBuffer.get(x);
+            y = new byte[byteBuffer.remaining()];
+            byteBuffer.get(y);
+        }
+        PrivateKey privateKey = new PrivateKey(new AffinePoint(new BigInteger(x), new BigInteger(y)));
+        Arrays.fill(x, (byte) 0);
+        Arrays.fill(y, (byte) 0);
+        return privateKey;
+    }
+}
@@ -0,0 +1,148 @@
+package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
+
+import cryptid.ibe.domain.PublicParameters;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Class representing a pool of pre-generated key material.
+ * EC {@link KeyPair}s (and optionally IBE setups) are generated in the background, up to a configurable depth,
+ * so that attestation issuance and the generation of entity identifiers can take them instead of generating them inline.
+ * If a pool is empty, the key material is generated inline.
+ * <p>
+ * Each piece of key material is only handed out once. The background generation runs on a bounded amount of
+ * low-priority daemon threads.
+ */
+public final class KeyMaterialPool {
+
+    private final static Logger logger = Logger.getLogger(KeyMaterialPool.class.getName());
+
+    private final static int DEFAULT_EC_KEY_PAIR_DEPTH = 32;
+    /**
+     * IBE setups are expensive to generate and are only needed when new entities are registered,
+     * so they are not pre-generated by default.
+     */
+    private final static int DEFAULT_IBE_SETUP_DEPTH = 0;
+    private final static int AMOUNT_OF_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private final static ThreadPoolExecutor executor;
+    private final static Pool<KeyPair> ecKeyPairPool;
+    private final static Pool<Pair<PublicParameters, BigInteger>> ibeSetupPool;
+
+    static {
+        var threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(AMOUNT_OF_THREADS, AMOUNT_OF_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            var thread = new Thread(runnable, "key-material-pool-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        ecKeyPairPool = new Pool<>(ECCipherEncryptedSegment::generateKeyPair, DEFAULT_EC_KEY_PAIR_DEPTH);
+        ibeSetupPool = new Pool<>(IBEDecryptableSegment::generatePKG, DEFAULT_IBE_SETUP_DEPTH);
+    }
+
+    private KeyMaterialPool() {
+    }
+
+    /**
+     * Method to take a pre-generated EC {@link KeyPair}, cf. {@link ECCipherEncryptedSegment#generateKeyPair()}.
+     *
+     * @return The {@link KeyPair}.
+     */
+    public static @NotNull KeyPair takeECKeyPair() {
+        return ecKeyPairPool.take();
+    }
+
+    /**
+     * Method to take a pre-generated IBE setup, cf. {@link IBEDecryptableSegment#generatePKG()}.
+     *
+     * @return A {@link Pair}, containing the {@link PublicParameters} and the master secret of the PKG.
+     */
+    public static @NotNull Pair<PublicParameters, BigInteger> takeIBESetup() {
+        return ibeSetupPool.take();
+    }
+
+    /**
+     * Method to set the amount of EC {@link KeyPair}s which are pre-generated.
+     *
+     * @param depth The amount; zero to disable the pre-generation.
+     * @throws IllegalArgumentException If a negative amount is provided.
+     */
+    public static void setECKeyPairDepth(int depth) throws IllegalArgumentException {
+        ecKeyPairPool.setDepth(depth);
+    }
+
+    /**
+     * Method to set the amount of IBE setups which are pre-generated.
+     *
+     * @param depth The amount; zero to disable the pre-generation.
+     * @throws IllegalArgumentException If a negative amount is provided.
+     */
+    public static void setIBESetupDepth(int depth) throws IllegalArgumentException {
+        ibeSetupPool.setDepth(depth);
+    }
+
+    /**
+     * Class representing a pool for one type of key material.
+     *
+     * @param <T> The type of the key material.
+     */
+    private final static class Pool<T> {
+
+        private final Supplier<T> generator;
+        private final Queue<T> available = new ConcurrentLinkedQueue<>();
+        /**
+         * The amount of available elements, plus the amount of elements of which the generation is scheduled.
+         */
+        private final AtomicInteger reserved = new AtomicInteger();
+        private volatile int depth;
+
+        private Pool(@NotNull Supplier<T> generator, int depth) {
+            this.generator = generator;
+            setDepth(depth);
+        }
+
+        private void setDepth(int depth) throws IllegalArgumentException {
+            if (depth < 0) throw new IllegalArgumentException(String.format("Invalid pool depth (%s).", depth));
+            this.depth = depth;
+            refill();
+        }
+
+        private @NotNull T take() {
+            T element = available.poll();
+            if (element != null) reserved.decrementAndGet();
+            refill();
+            return (element != null) ? element : generator.get();
+        }
+
+        private void refill() {
+            int currentlyReserved;
+            while ((currentlyReserved = reserved.get()) < depth) {
+                if (!reserved.compareAndSet(currentlyReserved, currentlyReserved + 1)) continue;
+                try {
+                    executor.execute(() -> {
+                        try {
+                            available.add(generator.get());
+                        } catch (RuntimeException e) {
+                            reserved.decrementAndGet();
+                            logger.warning(String.format("Key material could not be pre-generated (reason: %s).", e));
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    reserved.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+}
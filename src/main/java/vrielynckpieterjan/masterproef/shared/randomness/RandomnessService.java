@@ -0,0 +1,175 @@
+package vrielynckpieterjan.masterproef.shared.randomness;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.prng.BasicEntropySourceProvider;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+
+/**
+ * Class representing the central source of randomness, used to generate keys, secrets and identifiers.
+ * <p>
+ * Each thread uses its own SP 800-90A Hash_DRBG (SHA-256) instance, seeded from the non-blocking entropy source
+ * of the operating system, so the threads neither block when the entropy pool of the operating system runs low,
+ * nor contend on shared state.
+ */
+public final class RandomnessService {
+
+    private final static int SECURITY_STRENGTH = 256;
+    private final static char[] ALPHANUMERIC_CHARACTERS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    /**
+     * Random bytes below this bound are mapped uniformly on the alphanumeric characters; the others are rejected.
+     */
+    private final static int ALPHANUMERIC_REJECTION_BOUND = 256 - 256 % ALPHANUMERIC_CHARACTERS.length;
+
+    private final static SecureRandom entropySource = obtainEntropySource();
+    private final static ThreadLocal<SecureRandom> drbgInstances = ThreadLocal.withInitial(() -> {
+        byte[] nonce = ByteBuffer.allocate(16).putLong(Thread.currentThread().getId()).putLong(System.nanoTime()).array();
+        return new SP800SecureRandomBuilder(new BasicEntropySourceProvider(entropySource, false))
+                .setSecurityStrength(SECURITY_STRENGTH)
+                .setEntropyBitsRequired(SECURITY_STRENGTH)
+                .setPersonalizationString(Thread.currentThread().getName().getBytes(StandardCharsets.UTF_8))
+                .buildHash(new SHA256Digest(), nonce, false);
+    });
+    private final static SecureRandom secureRandom = new ThreadLocalSecureRandom();
+
+    private RandomnessService() {
+    }
+
+    private static SecureRandom obtainEntropySource() {
+        try {
+            return SecureRandom.getInstance("NativePRNGNonBlocking");
+        } catch (NoSuchAlgorithmException ignored) {
+            return new SecureRandom(); // Platforms without /dev/urandom; their default source doesn't block.
+        }
+    }
+
+    /**
+     * Method to obtain a {@link SecureRandom} instance, which can be shared between threads.
+     * Each call is handled by the DRBG instance of the calling thread.
+     *
+     * @return The {@link SecureRandom} instance.
+     */
+    public static @NotNull SecureRandom getSecureRandom() {
+        return secureRandom;
+    }
+
+    /**
+     * Method to fill a byte array with random bytes.
+     *
+     * @param bytes The byte array.
+     */
+    public static void nextBytes(byte[] bytes) {
+        drbgInstances.get().nextBytes(bytes);
+    }
+
+    /**
+     * Method to generate random bytes.
+     *
+     * @param length The amount of bytes.
+     * @return The random bytes.
+     */
+    public static byte[] generateBytes(int length) {
+        byte[] bytes = new byte[length];
+        nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Method to generate a random alphanumeric String.
+     *
+     * @param length The length of the String.
+     * @return The random String, of which each character is uniformly chosen from [A-Za-z0-9].
+     */
+    public static @NotNull String generateAlphanumericString(int length) {
+        char[] characters = new char[length];
+        byte[] bytes = new byte[length + length / 8 + 1];
+        int i = 0;
+        while (i < length) {
+            nextBytes(bytes);
+            for (int j = 0; j < bytes.length && i < length; j++) {
+                int value = Byte.toUnsignedInt(bytes[j]);
+                if (value < ALPHANUMERIC_REJECTION_BOUND)
+                    characters[i++] = ALPHANUMERIC_CHARACTERS[value % ALPHANUMERIC_CHARACTERS.length];
+            }
+        }
+        return new String(characters);
+    }
+
+    /**
+     * {@link SecureRandom} delegating to the DRBG instance of the calling thread.
+     * The (synchronized) default implementations of {@link SecureRandom} are bypassed.
+     * Its state lives in the DRBG instances of the threads using it, so it can't be serialized.
+     */
+    private final static class ThreadLocalSecureRandom extends SecureRandom {
+
+        private final static long serialVersionUID = 1L;
+
+        private ThreadLocalSecureRandom() {
+            super(new ThreadLocalSecureRandomSpi(), null);
+        }
+
+        private void writeObject(ObjectOutputStream objectOutputStream) throws IOException {
+            throw new NotSerializableException(ThreadLocalSecureRandom.class.getName());
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "Hash_DRBG";
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes) {
+            drbgInstances.get().nextBytes(bytes);
+        }
+
+        @Override
+        public byte[] generateSeed(int numBytes) {
+            return drbgInstances.get().generateSeed(numBytes);
+        }
+
+        @Override
+        public void setSeed(byte[] seed) {
+            drbgInstances.get().setSeed(seed);
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            // Called with zero by the constructor of Random, before the instance is initialized.
+            if (seed != 0L) drbgInstances.get().setSeed(seed);
+        }
+    }
+
+    private final static class ThreadLocalSecureRandomSpi extends SecureRandomSpi {
+
+        private final static long serialVersionUID = 1L;
+
+        private void writeObject(ObjectOutputStream objectOutputStream) throws IOException {
+            throw new NotSerializableException(ThreadLocalSecureRandomSpi.class.getName());
+        }
+
+        @Override
+        protected void engineSetSeed(byte[] seed) {
+            drbgInstances.get().setSeed(seed);
+        }
+
+        @Override
+        protected void engineNextBytes(byte[] bytes) {
+            drbgInstances.get().nextBytes(bytes);
+        }
+
+        @Override
+        protected byte[] engineGenerateSeed(int numBytes) {
+            return drbgInstances.get().generateSeed(numBytes);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package vrielynckpieterjan.masterproef.storagelayer;
 
-import org.apache.commons.lang3.RandomStringUtils;
 import org.jetbrains.annotations.NotNull;
+import vrielynckpieterjan.masterproef.shared.randomness.RandomnessService;
 import vrielynckpieterjan.masterproef.shared.serialization.Exportable;
 
 import java.nio.ByteBuffer;
@@ -31,7 +31,7 @@ public class StorageElementIdentifier implements Exportable {
      * @param length The provided length.
      */
     public StorageElementIdentifier(int length) {
-        this(RandomStringUtils.randomAlphanumeric(length));
+        this(RandomnessService.generateAlphanumericString(length));
     }
 
     /**
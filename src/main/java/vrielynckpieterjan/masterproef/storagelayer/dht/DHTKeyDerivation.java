@@ -0,0 +1,69 @@
+package vrielynckpieterjan.masterproef.storagelayer.dht;
+
+import com.google.common.hash.Hashing;
+import kademlia.node.KademliaId;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Enum representing the ways in which a {@link DHTStorageLayer} derives the Kademlia keys of stored elements
+ * and the node IDs of its DHT nodes from their identifiers.
+ */
+public enum DHTKeyDerivation {
+
+    /**
+     * The first 20 bytes of the (repeated) identifier.
+     * Most identifiers are hexadecimal strings, so these keys only cover a small part of the key space.
+     */
+    LEGACY,
+
+    /**
+     * The first 160 bits of the SHA-256 digest of the full identifier, spread uniformly over the key space.
+     */
+    DIGEST,
+
+    /**
+     * Keys are derived as for {@link #DIGEST}, but elements are also retrieved using their {@link #LEGACY} keys.
+     * This allows to migrate a DHT of which the nodes still stored elements using {@link #LEGACY} keys:
+     * elements are read from both keys, and written back using their {@link #DIGEST} key.
+     */
+    DUAL_READ;
+
+    private final static int KEY_LENGTH = KademliaId.ID_LENGTH / 8;
+
+    /**
+     * Method to derive the Kademlia key for an identifier.
+     *
+     * @param identifier The identifier.
+     * @return The key.
+     */
+    @NotNull
+    public KademliaId deriveKey(@NotNull String identifier) {
+        if (this == LEGACY) return new KademliaId(adjustLengthStringForDHTIdentifiers(identifier));
+
+        byte[] digest = Hashing.sha256().hashString(identifier, StandardCharsets.UTF_8).asBytes();
+        return new KademliaId(Arrays.copyOf(digest, KEY_LENGTH));
+    }
+
+    /**
+     * Method to check if elements should also be retrieved using their {@link #LEGACY} keys.
+     *
+     * @return True if the {@link #LEGACY} keys should be read as well, false otherwise.
+     */
+    public boolean readsLegacyKeys() {
+        return this == DUAL_READ;
+    }
+
+    /**
+     * Method to adjust the length of a provided String to 20 bytes.
+     *
+     * @param originalString The provided String, which may be shorter or longer than 20 bytes.
+     * @return A repeated version of the provided String, from which the first 20 bytes are taken as a substring.
+     */
+    private static String adjustLengthStringForDHTIdentifiers(@NotNull String originalString) {
+        var copy = originalString.repeat((int) Math.ceil(20.0 / (double) originalString.length()));
+        return copy.substring(0, 20);
+    }
+}
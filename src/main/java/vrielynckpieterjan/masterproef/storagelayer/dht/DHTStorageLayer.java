@@ -5,6 +5,7 @@ import kademlia.dht.GetParameter;
 import kademlia.dht.KadContent;
 import kademlia.exceptions.ContentNotFoundException;
 import kademlia.node.KademliaId;
+import kademlia.node.Node;
 import org.apache.commons.lang3.SerializationUtils;
 import org.jetbrains.annotations.NotNull;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
@@ -14,7 +15,10 @@ import vrielynckpieterjan.masterproef.storagelayer.StorageLayer;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -24,7 +28,14 @@ public class DHTStorageLayer implements StorageLayer {
 
     private final static Logger logger = Logger.getLogger(DHTStorageLayer.class.getName());
 
+    /**
+     * The amount of nodes that should confirm storing a {@link StorageElement} before the put(StorageElement) method returns.
+     * The remaining replicas are stored in the background.
+     */
+    private final static int WRITE_QUORUM = 1;
+
     private final JKademliaNode node;
+    private final DHTKeyDerivation keyDerivation;
 
     /**
      * Constructor for the {@link DHTStorageLayer} class.
@@ -34,10 +45,7 @@ public class DHTStorageLayer implements StorageLayer {
      * @throws IOException If the boot process for the DHT failed.
      */
     public DHTStorageLayer(@NotNull PublicEntityIdentifier publicEntityIdentifier, int port) throws IOException {
-        node = new JKademliaNode("",
-                new KademliaId(publicEntityIdentifier.getNamespaceServiceProviderEmailAddressUserConcatenation().substring(0, 20)),
-                port);
-        logger.info(String.format("DHTStorageLayer (%s) initialized and running on port %s.", this, port));
+        this(publicEntityIdentifier, port, DHTKeyDerivation.DIGEST);
     }
 
     /**
@@ -46,50 +54,114 @@ public class DHTStorageLayer implements StorageLayer {
      * @param publicEntityIdentifier The {@link PublicEntityIdentifier} to identify this {@link JKademliaNode} with.
      * @param port                   The port on which the local part of the DHT should run.
      * @param otherStorageLayers     The other {@link DHTStorageLayer} instances to bootstrap with.
+     *                               These are contacted concurrently; the boot process continues as soon as one of them responds.
      * @throws IOException If the boot process for the DHT failed.
      */
     public DHTStorageLayer(@NotNull PublicEntityIdentifier publicEntityIdentifier, int port, DHTStorageLayer... otherStorageLayers)
             throws IOException {
-        this(publicEntityIdentifier, port);
-        for (var storageLayer : otherStorageLayers) {
-            assert (storageLayer != null);
-            node.bootstrap(storageLayer.node.getNode());
-            logger.info(String.format("DHTStorageLayer (%s) bootstrapped using DHTStorageLayer (%s).", this, storageLayer));
-        }
+        this(publicEntityIdentifier, port, DHTKeyDerivation.DIGEST, otherStorageLayers);
     }
 
     /**
-     * Method to adjust the length of a provided String to 20 bytes.
+     * Constructor for the {@link DHTStorageLayer} class.
      *
-     * @param originalString The provided String, which may be shorter or longer than 20 bytes.
-     * @return A repeated version of the provided String, from which the first 20 bytes are taken as a substring.
+     * @param publicEntityIdentifier The {@link PublicEntityIdentifier} to identify this {@link JKademliaNode} with.
+     * @param port                   The port on which the local part of the DHT should run.
+     * @param keyDerivation          The way in which the node ID and the keys of the stored elements are derived.
+     * @param otherStorageLayers     The other {@link DHTStorageLayer} instances to bootstrap with.
+     *                               These are contacted concurrently; the boot process continues as soon as one of them responds.
+     * @throws IOException If the boot process for the DHT failed.
      */
-    private static String adjustLengthStringForDHTIdentifiers(@NotNull String originalString) {
-        var copy = originalString.repeat((int) Math.ceil(20.0 / (double) originalString.length()));
-        return copy.substring(0, 20);
+    public DHTStorageLayer(@NotNull PublicEntityIdentifier publicEntityIdentifier, int port, @NotNull DHTKeyDerivation keyDerivation,
+                           DHTStorageLayer... otherStorageLayers) throws IOException {
+        this.keyDerivation = keyDerivation;
+        node = new JKademliaNode("",
+                keyDerivation.deriveKey(publicEntityIdentifier.getNamespaceServiceProviderEmailAddressUserConcatenation()),
+                port);
+        logger.info(String.format("DHTStorageLayer (%s) initialized and running on port %s.", this, port));
+        if (otherStorageLayers.length == 0) return;
+
+        var bootstrapNodes = new ArrayList<Node>(otherStorageLayers.length);
+        for (var storageLayer : otherStorageLayers) {
+            assert (storageLayer != null);
+            bootstrapNodes.add(storageLayer.node.getNode());
+        }
+        node.bootstrap(bootstrapNodes);
+        logger.info(String.format("DHTStorageLayer (%s) bootstrapped using DHTStorageLayers %s.", this, Arrays.toString(otherStorageLayers)));
     }
 
     @Override
     public void put(@NotNull StorageElement newElement) throws IOException {
-        var retrievedElements = retrieve(newElement.getStorageLayerIdentifier());
+        // The stored elements are read again from the network, so elements added by others in the meantime aren't overwritten.
+        var identifier = newElement.getStorageLayerIdentifier().getIdentifier();
+        var key = keyDerivation.deriveKey(identifier);
+        var currentContainer = retrieveContainer(key, true);
+        var retrievedElements = currentContainer == null ? new HashSet<StorageElement>() : currentContainer.storedElements;
+        if (keyDerivation.readsLegacyKeys())
+            retrievedElements.addAll(retrieve(DHTKeyDerivation.LEGACY.deriveKey(identifier), true));
         retrievedElements.add(newElement);
 
-        var elementContainer = new DHTStorageElementContainer(retrievedElements);
-        node.put(elementContainer);
+        // The nodes storing the container only replace it by a newer version, so the version has to exceed the one read.
+        var version = Math.max(System.currentTimeMillis(), currentContainer == null ? 0 : currentContainer.version + 1);
+        var elementContainer = new DHTStorageElementContainer(key, retrievedElements, version);
+        try {
+            node.putAsync(elementContainer, WRITE_QUORUM).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
     }
 
     @Override
     public HashSet<StorageElement> retrieve(@NotNull StorageElementIdentifier identifier) throws IOException {
-        var getParameter = new GetParameter(new KademliaId(adjustLengthStringForDHTIdentifiers(identifier.getIdentifier())),
-                DHTStorageElementContainer.class.getTypeName());
+        return retrieve(identifier, false);
+    }
+
+    /**
+     * Method to retrieve the {@link StorageElement}s stored using a {@link StorageElementIdentifier}.
+     *
+     * @param identifier The {@link StorageElementIdentifier}.
+     * @param latest     Whether the results of recent lookups should be ignored.
+     * @return The stored {@link StorageElement}s, or an empty {@link HashSet} if none were found.
+     */
+    private HashSet<StorageElement> retrieve(@NotNull StorageElementIdentifier identifier, boolean latest) {
+        var retrievedElements = retrieve(keyDerivation.deriveKey(identifier.getIdentifier()), latest);
+        if (keyDerivation.readsLegacyKeys())
+            retrievedElements.addAll(retrieve(DHTKeyDerivation.LEGACY.deriveKey(identifier.getIdentifier()), latest));
+        return retrievedElements;
+    }
+
+    /**
+     * Method to retrieve the {@link StorageElement}s stored using a Kademlia key.
+     *
+     * @param key    The key.
+     * @param latest Whether the results of recent lookups should be ignored.
+     * @return The stored {@link StorageElement}s, or an empty {@link HashSet} if none were found.
+     */
+    private HashSet<StorageElement> retrieve(@NotNull KademliaId key, boolean latest) {
+        var elementContainer = retrieveContainer(key, latest);
+        return elementContainer == null ? new HashSet<>() : elementContainer.storedElements;
+    }
+
+    /**
+     * Method to retrieve the {@link DHTStorageElementContainer} stored using a Kademlia key.
+     *
+     * @param key    The key.
+     * @param latest Whether the results of recent lookups should be ignored.
+     * @return The stored {@link DHTStorageElementContainer}, or null if none was found.
+     */
+    private DHTStorageElementContainer retrieveContainer(@NotNull KademliaId key, boolean latest) {
+        var getParameter = new GetParameter(key, DHTStorageElementContainer.class.getTypeName());
         try {
-            var retrievedEntry = node.get(getParameter);
+            var retrievedEntry = latest ? node.getLatest(getParameter) : node.get(getParameter);
             var content = retrievedEntry.getContent();
             var elementContainer = SerializationUtils.deserialize(content);
             if (!(elementContainer instanceof DHTStorageElementContainer)) throw new ContentNotFoundException();
-            return ((DHTStorageElementContainer) elementContainer).storedElements;
+            return (DHTStorageElementContainer) elementContainer;
         } catch (Exception e) {
-            return new HashSet<>();
+            return null;
         }
     }
 
@@ -104,17 +176,25 @@ public class DHTStorageLayer implements StorageLayer {
      */
     static class DHTStorageElementContainer implements KadContent, Serializable {
 
+        /**
+         * The key is only needed to store the container, so it is not serialized along with the elements.
+         */
+        private final transient KademliaId key;
         private final HashSet<StorageElement> storedElements;
+        /**
+         * The version of the container, which only grows with every put; nodes storing the container keep the highest one.
+         */
+        private final long version;
 
-        DHTStorageElementContainer(@NotNull HashSet<StorageElement> storedElements) {
+        DHTStorageElementContainer(@NotNull KademliaId key, @NotNull HashSet<StorageElement> storedElements, long version) {
+            this.key = key;
             this.storedElements = storedElements;
+            this.version = version;
         }
 
         @Override
         public KademliaId getKey() {
-            if (storedElements.size() == 0) return null;
-            else return new KademliaId(adjustLengthStringForDHTIdentifiers(
-                    storedElements.iterator().next().getStorageLayerIdentifier().getIdentifier()));
+            return key;
         }
 
         @Override
@@ -129,7 +209,7 @@ public class DHTStorageLayer implements StorageLayer {
 
         @Override
         public long getLastUpdatedTimestamp() {
-            return 0;
+            return version;
         }
 
         @Override
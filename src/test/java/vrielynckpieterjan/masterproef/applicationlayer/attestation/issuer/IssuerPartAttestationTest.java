@@ -10,7 +10,12 @@ import vrielynckpieterjan.masterproef.applicationlayer.revocation.RevocationSecr
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.EntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PrivateEntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
+import vrielynckpieterjan.masterproef.encryptionlayer.schemes.ECCipherEncryptedSegment;
 
+import java.security.KeyPair;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class IssuerPartAttestationTest {
@@ -41,4 +46,16 @@ class IssuerPartAttestationTest {
         assertTrue(deserializedIssuerPartAttestation.hasValidSignature(receiverIdentifiers.getLeft(), issuerIdentifiers.getRight(),
                 rTreePolicy));
     }
-}
\ No newline at end of file
+
+    @Test
+    void haveValidSignatures() {
+        KeyPair empiricalECKeyPair = ECCipherEncryptedSegment.generateKeyPair();
+        IssuerPartAttestation otherIssuerPartAttestation = new IssuerPartAttestation(issuerIdentifiers.getLeft(),
+                issuerIdentifiers.getRight(), receiverIdentifiers.getRight(),
+                revocationCommitment, rTreePolicy, empiricalECKeyPair);
+        assertTrue(IssuerPartAttestation.haveValidSignatures(List.of(otherIssuerPartAttestation, otherIssuerPartAttestation),
+                List.of(empiricalECKeyPair.getPrivate(), empiricalECKeyPair.getPrivate())));
+        assertFalse(IssuerPartAttestation.haveValidSignatures(List.of(otherIssuerPartAttestation),
+                List.of(ECCipherEncryptedSegment.generateKeyPair().getPrivate())));
+    }
+}
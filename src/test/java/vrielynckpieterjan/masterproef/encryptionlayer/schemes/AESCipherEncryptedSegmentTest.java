@@ -5,7 +5,12 @@ import org.junit.jupiter.api.Test;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.EntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class AESCipherEncryptedSegmentTest {
 
@@ -37,4 +42,64 @@ class AESCipherEncryptedSegmentTest {
         assertEquals(decryptedSegment.getIBEIdentifier(), publicEntityIdentifier.getIBEIdentifier());
         assertEquals(decryptedSegment, publicEntityIdentifier);
     }
-}
\ No newline at end of file
+
+    @Test
+    void byteArrayKeyEncrypt() throws Exception {
+        String data = "Lorem ipsum dolor sit amet.";
+        byte[] key = AESCipherEncryptedSegment.generateAESKeyBytes();
+        AESCipherEncryptedSegment<String> aesCipherEncryptedSegment = new AESCipherEncryptedSegment<>(data, key);
+        assertEquals(data, aesCipherEncryptedSegment.decrypt(key));
+        assertEquals(data, aesCipherEncryptedSegment.decrypt(AESCipherEncryptedSegment.encodeAESKey(key)));
+
+        AESCipherEncryptedSegment<String> deserialized = AESCipherEncryptedSegment.deserialize(
+                ByteBuffer.wrap(aesCipherEncryptedSegment.serialize()));
+        assertEquals(data, deserialized.decrypt(key));
+
+        assertThrows(IllegalArgumentException.class, () -> aesCipherEncryptedSegment.decrypt(
+                AESCipherEncryptedSegment.generateAESKeyBytes()));
+        byte[] tampered = aesCipherEncryptedSegment.serialize().clone();
+        tampered[tampered.length / 2] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> AESCipherEncryptedSegment.deserialize(
+                ByteBuffer.wrap(tampered)).decrypt(key));
+    }
+
+    @Test
+    void tamperedBlockAlignedSegmentDecrypt() throws Exception {
+        // The length of the segment is a multiple of the AES block size, like a segment of the previous version.
+        byte[] key = AESCipherEncryptedSegment.generateAESKeyBytes();
+        AESCipherEncryptedSegment<byte[]> aesCipherEncryptedSegment = null;
+        for (int i = 0; aesCipherEncryptedSegment == null || aesCipherEncryptedSegment.serialize().length % 16 != 0; i++)
+            aesCipherEncryptedSegment = new AESCipherEncryptedSegment<>(new byte[i], key);
+        byte[] tampered = aesCipherEncryptedSegment.serialize().clone();
+        tampered[tampered.length - 1] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> AESCipherEncryptedSegment.deserialize(
+                ByteBuffer.wrap(tampered)).decrypt(key));
+    }
+
+    @Test
+    void stringKeyConversion() {
+        String data = "Lorem ipsum dolor sit amet.";
+        byte[] key = AESCipherEncryptedSegment.generateAESKeyBytes();
+        String unprefixedKey = AESCipherEncryptedSegment.encodeAESKey(key).substring("aes256:".length());
+
+        // Without the prefix, a String is never decoded as a 256-bit key.
+        AESCipherEncryptedSegment<String> aesCipherEncryptedSegment = new AESCipherEncryptedSegment<>(data, unprefixedKey);
+        assertEquals(data, aesCipherEncryptedSegment.decrypt(unprefixedKey));
+        assertThrows(IllegalArgumentException.class, () -> aesCipherEncryptedSegment.decrypt(key));
+
+        assertThrows(IllegalArgumentException.class, () -> new AESCipherEncryptedSegment<>(data, "aes256:tooShort"));
+    }
+
+    @Test
+    void legacySegmentDecrypt() throws Exception {
+        String data = "Lorem ipsum dolor sit amet.";
+        String key = "magicalKeymagicalKeymagicalKeyma";
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "AES"));
+        byte[] legacySegment = cipher.doFinal(SerializationUtils.serialize(data));
+
+        AESCipherEncryptedSegment<String> aesCipherEncryptedSegment = AESCipherEncryptedSegment.deserialize(
+                ByteBuffer.wrap(legacySegment));
+        assertEquals(data, aesCipherEncryptedSegment.decrypt("magicalKey"));
+    }
+}
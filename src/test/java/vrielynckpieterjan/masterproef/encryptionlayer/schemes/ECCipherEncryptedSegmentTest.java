@@ -5,9 +5,10 @@ import org.junit.jupiter.api.Test;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.EntityIdentifier;
 import vrielynckpieterjan.masterproef.encryptionlayer.entities.PublicEntityIdentifier;
 
+import java.nio.ByteBuffer;
 import java.security.KeyPair;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class ECCipherEncryptedSegmentTest {
 
@@ -39,4 +40,32 @@ class ECCipherEncryptedSegmentTest {
         PublicEntityIdentifier decryptedSegment = ECCipherEncryptedSegment.decrypt(keyPair.getPrivate());
         assertEquals(decryptedSegment, publicEntityIdentifier);
     }
-}
\ No newline at end of file
+
+    @Test
+    void keyAgreementEncrypt() throws Exception {
+        KeyPair keyPair = ECCipherEncryptedSegment.generateKeyPair();
+        ECDHKeyAgreement keyAgreement = new ECDHKeyAgreement(keyPair.getPublic());
+        ECCipherEncryptedSegment<String> first = new ECCipherEncryptedSegment<>("first", keyAgreement, "first");
+        ECCipherEncryptedSegment<String> second = ECCipherEncryptedSegment.deserialize(ByteBuffer.wrap(
+                new ECCipherEncryptedSegment<>("second", keyAgreement, "second").serialize()));
+
+        assertEquals("first", first.decrypt(keyPair.getPrivate()));
+        assertEquals("second", second.decrypt(keyPair.getPrivate()));
+        ECDHKeyAgreement receiverKeyAgreement = first.agreeOnKey(keyPair.getPrivate());
+        assertNotNull(receiverKeyAgreement);
+        assertEquals("first", first.decrypt(receiverKeyAgreement));
+        assertEquals("second", second.decrypt(receiverKeyAgreement));
+
+        KeyPair otherKeyPair = ECCipherEncryptedSegment.generateKeyPair();
+        assertThrows(IllegalArgumentException.class, () -> first.decrypt(otherKeyPair.getPrivate()));
+        assertThrows(IllegalArgumentException.class, () -> second.decrypt(new ECDHKeyAgreement(keyPair.getPublic())));
+    }
+
+    @Test
+    void keysPartOfKeypair() {
+        KeyPair keyPair = ECCipherEncryptedSegment.generateKeyPair();
+        KeyPair otherKeyPair = ECCipherEncryptedSegment.generateKeyPair();
+        assertTrue(ECCipherEncryptedSegment.keysPartOfKeypair(keyPair.getPrivate(), keyPair.getPublic()));
+        assertFalse(ECCipherEncryptedSegment.keysPartOfKeypair(keyPair.getPrivate(), otherKeyPair.getPublic()));
+    }
+}
@@ -5,16 +5,26 @@ import cryptid.ibe.IdentityBasedEncryption;
 import cryptid.ibe.domain.CipherTextTuple;
 import cryptid.ibe.domain.PublicParameters;
 import cryptid.ibe.domain.SecurityLevel;
+import cryptid.ibe.exception.ComponentConstructionException;
 import cryptid.ibe.exception.SetupException;
+import cryptid.ibe.util.CanonicalUtils;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.Test;
+import vrielynckpieterjan.masterproef.applicationlayer.attestation.issuer.AESEncryptionInformationSegmentAttestation;
+import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.PolicyRight;
+import vrielynckpieterjan.masterproef.applicationlayer.attestation.policy.RTreePolicy;
+import vrielynckpieterjan.masterproef.encryptionlayer.entities.EntityIdentifier;
+import vrielynckpieterjan.masterproef.shared.serialization.ExportableUtils;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class IBEDecryptableSegmentTest {
 
@@ -36,6 +46,88 @@ class IBEDecryptableSegmentTest {
         assertEquals(data, decrypted);
     }
 
+    @Test
+    void plaintextEncoding() throws IOException, ClassNotFoundException, ComponentConstructionException {
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        String identity = "WRITE://A/B";
+
+        byte[] bytes = new byte[]{0, 1, 2, (byte) 0xFF};
+        IBEDecryptableSegment<byte[]> bytesSegment = new IBEDecryptableSegment<>(bytes, new ImmutablePair<>(pkg.getLeft(), identity));
+        assertArrayEquals(bytes, bytesSegment.decrypt(pkg.getLeft(), pkg.getRight(), identity));
+
+        var receiver = EntityIdentifier.generateEntityIdentifierPair("receiver");
+        var aesKeys = new AESEncryptionInformationSegmentAttestation(new RTreePolicy(PolicyRight.WRITE, "A", "B"),
+                new ImmutablePair<>("first key", "second key"), receiver.getRight());
+        byte[] encoded = IBEDecryptableSegment.encodePlaintextBytes(aesKeys);
+        assertTrue(encoded.length < SerializationUtils.serialize(aesKeys).length);
+        assertEquals(aesKeys, IBEDecryptableSegment.decodePlaintextBytes(encoded));
+
+        // Segments encrypted using the legacy encoding should still be decryptable.
+        CipherTextTuple legacyCipherText = IBEDecryptableSegment.obtainClient(pkg.getLeft())
+                .encrypt(IBEDecryptableSegment.convertSerializableToString(aesKeys), identity);
+        IBEDecryptableSegment<AESEncryptionInformationSegmentAttestation> legacySegment = new IBEDecryptableSegment<>(legacyCipherText);
+        assertEquals(aesKeys, legacySegment.decrypt(pkg.getLeft(), pkg.getRight(), identity));
+    }
+
+    @Test
+    void hybridMode() throws IOException {
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        String identity = "WRITE://A/B";
+        byte[] data = new byte[16384];
+        new Random().nextBytes(data);
+
+        IBEDecryptableSegment<byte[]> ibeDecryptableSegment = new IBEDecryptableSegment<>(data, new ImmutablePair<>(pkg.getLeft(), identity));
+        IBEDecryptableSegment<byte[]> deserialized = ExportableUtils.deserialize(ibeDecryptableSegment.serialize(), IBEDecryptableSegment.class);
+        assertEquals(ibeDecryptableSegment, deserialized);
+        assertArrayEquals(data, deserialized.decrypt(pkg.getLeft(), pkg.getRight(), identity));
+        assertThrows(IllegalArgumentException.class, () -> deserialized.decrypt(pkg.getLeft(), pkg.getRight(), "WRITE://A/C"));
+
+        byte[] tampered = ibeDecryptableSegment.serialize();
+        tampered[tampered.length - 1] ^= 1;
+        IBEDecryptableSegment<byte[]> tamperedSegment = ExportableUtils.deserialize(tampered, IBEDecryptableSegment.class);
+        assertThrows(IllegalArgumentException.class, () -> tamperedSegment.decrypt(pkg.getLeft(), pkg.getRight(), identity));
+    }
+
+    @Test
+    void decryptionHint() throws IOException, ComponentConstructionException {
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        String identity = "WRITE://A/B";
+        var privateKey = IBEPrivateKeyCache.extract(pkg.getLeft(), pkg.getRight(), identity);
+        var otherPrivateKey = IBEPrivateKeyCache.extract(pkg.getLeft(), pkg.getRight(), "WRITE://A/C");
+
+        IBEDecryptableSegment<String> ibeDecryptableSegment = new IBEDecryptableSegment<>("data", new ImmutablePair<>(pkg.getLeft(), identity));
+        IBEDecryptableSegment<String> deserialized = ExportableUtils.deserialize(ibeDecryptableSegment.serialize(), IBEDecryptableSegment.class);
+        assertEquals(ibeDecryptableSegment, deserialized);
+        assertTrue(deserialized.matchesDecryptionHint(pkg.getLeft(), privateKey));
+        assertFalse(deserialized.matchesDecryptionHint(pkg.getLeft(), otherPrivateKey));
+        assertEquals("data", deserialized.decrypt(pkg.getLeft(), privateKey));
+    }
+
+    @Test
+    void decryptionHintRequiresPrivateKey() {
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        String identity = "WRITE://A/B";
+        IBEDecryptableSegment<String> ibeDecryptableSegment = new IBEDecryptableSegment<>("data", new ImmutablePair<>(pkg.getLeft(), identity));
+
+        // Anyone guessing the identifier can compute e(P_pub, Q_ID), but not the hint key derived of it.
+        var fieldOrder = pkg.getLeft().getEllipticCurve().getFieldOrder();
+        byte[] publicPairing = CanonicalUtils.canonical(fieldOrder, CanonicalUtils.CanonicalOrdering.IMAGINARY_FIRST,
+                IBEDecryptableSegment.computePairing(pkg.getLeft(), identity));
+        assertFalse(ibeDecryptableSegment.matchesDecryptionHint(publicPairing));
+
+        // Two segments for the same identifier can't be linked by their hints.
+        IBEDecryptableSegment<String> otherSegment = new IBEDecryptableSegment<>("data", new ImmutablePair<>(pkg.getLeft(), identity));
+        assertFalse(Arrays.equals(ibeDecryptableSegment.serialize(), otherSegment.serialize()));
+    }
+
+    @Test
+    void componentCache() throws ComponentConstructionException {
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        assertSame(IBEDecryptableSegment.obtainClient(pkg.getLeft()), IBEDecryptableSegment.obtainClient(pkg.getLeft()));
+        assertSame(IBEDecryptableSegment.obtainPKG(pkg.getLeft(), pkg.getRight()),
+                IBEDecryptableSegment.obtainPKG(pkg.getLeft(), pkg.getRight()));
+    }
+
     @Test
     void speedPrivateKeyGenerationTest() throws SetupException {
         IdentityBasedEncryption ibe = CryptID.setupBonehFranklin(SecurityLevel.LOWEST);
@@ -0,0 +1,55 @@
+package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
+
+import cryptid.ibe.domain.PrivateKey;
+import cryptid.ibe.domain.PublicParameters;
+import cryptid.ibe.exception.ComponentConstructionException;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IBEPrivateKeyCacheTest {
+
+    @Test
+    void extract() throws ComponentConstructionException {
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        String identity = "WRITE://A/B";
+        PrivateKey extractedPrivateKey = IBEDecryptableSegment.obtainPKG(pkg.getLeft(), pkg.getRight()).extract(identity);
+
+        assertEquals(extractedPrivateKey, IBEPrivateKeyCache.extract(pkg.getLeft(), pkg.getRight(), identity));
+        assertEquals(extractedPrivateKey, IBEPrivateKeyCache.extract(pkg.getLeft(), pkg.getRight(), identity));
+        assertNotEquals(extractedPrivateKey, IBEPrivateKeyCache.extract(pkg.getLeft(), pkg.getRight(), "READ://A/B"));
+
+        IBEPrivateKeyCache.clear();
+        assertEquals(extractedPrivateKey, IBEPrivateKeyCache.extract(pkg.getLeft(), pkg.getRight(), identity));
+    }
+
+    @Test
+    void evictedKeysAreOverwritten() throws ComponentConstructionException {
+        var cache = new IBEPrivateKeyCache(1, 2);
+        Pair<PublicParameters, BigInteger> pkg = IBEDecryptableSegment.generatePKG();
+        Pair<PublicParameters, BigInteger> otherPkg = IBEDecryptableSegment.generatePKG();
+
+        PrivateKey privateKey = cache.obtain(pkg.getLeft(), pkg.getRight(), "WRITE://A/B");
+        byte[] encodedPrivateKey = cache.getEncodedKey(pkg.getLeft(), "WRITE://A/B");
+        assertNotNull(encodedPrivateKey);
+        assertFalse(Arrays.equals(new byte[encodedPrivateKey.length], encodedPrivateKey));
+
+        // The least recently used key of an issuer is evicted.
+        cache.obtain(pkg.getLeft(), pkg.getRight(), "WRITE://A/C");
+        cache.obtain(pkg.getLeft(), pkg.getRight(), "WRITE://A/D");
+        assertNull(cache.getEncodedKey(pkg.getLeft(), "WRITE://A/B"));
+        assertArrayEquals(new byte[encodedPrivateKey.length], encodedPrivateKey);
+
+        // Evicting an issuer evicts all of its keys.
+        byte[] otherEncodedPrivateKey = cache.getEncodedKey(pkg.getLeft(), "WRITE://A/D");
+        cache.obtain(otherPkg.getLeft(), otherPkg.getRight(), "WRITE://A/B");
+        assertNull(cache.getEncodedKey(pkg.getLeft(), "WRITE://A/D"));
+        assertArrayEquals(new byte[otherEncodedPrivateKey.length], otherEncodedPrivateKey);
+
+        assertEquals(privateKey, cache.obtain(pkg.getLeft(), pkg.getRight(), "WRITE://A/B"));
+    }
+}
@@ -0,0 +1,30 @@
+package vrielynckpieterjan.masterproef.encryptionlayer.schemes;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyMaterialPoolTest {
+
+    @Test
+    void takeECKeyPair() {
+        Set<String> encodedPublicKeys = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            KeyPair keyPair = KeyMaterialPool.takeECKeyPair();
+            assertTrue(ECCipherEncryptedSegment.keysPartOfKeypair(keyPair.getPrivate(), keyPair.getPublic()));
+            assertTrue(encodedPublicKeys.add(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded())));
+        }
+    }
+
+    @Test
+    void setDepth() {
+        assertThrows(IllegalArgumentException.class, () -> KeyMaterialPool.setECKeyPairDepth(-1));
+        assertThrows(IllegalArgumentException.class, () -> KeyMaterialPool.setIBESetupDepth(-1));
+    }
+}
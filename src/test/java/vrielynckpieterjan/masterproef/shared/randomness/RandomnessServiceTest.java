@@ -0,0 +1,35 @@
+package vrielynckpieterjan.masterproef.shared.randomness;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomnessServiceTest {
+
+    @Test
+    void generateAlphanumericString() {
+        String generated = RandomnessService.generateAlphanumericString(512);
+        assertEquals(512, generated.length());
+        assertTrue(generated.matches("[A-Za-z0-9]+"));
+        assertNotEquals(generated, RandomnessService.generateAlphanumericString(512));
+    }
+
+    @Test
+    void getSecureRandom() {
+        SecureRandom secureRandom = RandomnessService.getSecureRandom();
+        Set<String> generated = ConcurrentHashMap.newKeySet();
+        IntStream.range(0, 64).parallel().forEach(i -> {
+            byte[] bytes = new byte[32];
+            secureRandom.nextBytes(bytes);
+            generated.add(Arrays.toString(bytes));
+        });
+        assertEquals(64, generated.size());
+        assertFalse(Arrays.equals(RandomnessService.generateBytes(32), RandomnessService.generateBytes(32)));
+    }
+}
@@ -0,0 +1,31 @@
+package vrielynckpieterjan.masterproef.storagelayer.dht;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DHTKeyDerivationTest {
+
+    @Test
+    void deriveKey() {
+        var identifier = "a".repeat(20) + "b";
+        var otherIdentifier = "a".repeat(20) + "c";
+
+        assertEquals(DHTKeyDerivation.LEGACY.deriveKey(identifier), DHTKeyDerivation.LEGACY.deriveKey(otherIdentifier));
+        assertNotEquals(DHTKeyDerivation.DIGEST.deriveKey(identifier), DHTKeyDerivation.DIGEST.deriveKey(otherIdentifier));
+        assertEquals(DHTKeyDerivation.DIGEST.deriveKey(identifier), DHTKeyDerivation.DUAL_READ.deriveKey(identifier));
+        assertEquals(DHTKeyDerivation.LEGACY.deriveKey("abcd"), DHTKeyDerivation.LEGACY.deriveKey("abcdabcdabcdabcdabcd"));
+    }
+
+    @Test
+    void simulateLoad() {
+        var nodeIdentifiers = List.of("nodeOne", "nodeTwo", "nodeThree");
+        var elementIdentifiers = List.of("elementOne", "elementTwo", "elementThree", "elementFour");
+
+        var load = DHTKeyDistributionBenchmark.simulateLoad(DHTKeyDerivation.DIGEST, nodeIdentifiers, elementIdentifiers, 2);
+        assertEquals(elementIdentifiers.size() * 2, Arrays.stream(load).sum());
+    }
+}
@@ -0,0 +1,96 @@
+package vrielynckpieterjan.masterproef.storagelayer.dht;
+
+import com.google.common.hash.Hashing;
+import kademlia.node.KademliaId;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark comparing how evenly the elements of a {@link DHTStorageLayer} are spread over the nodes of a simulated
+ * DHT cluster, for each {@link DHTKeyDerivation}.
+ * <p>
+ * Like in the actual DHT, every element is stored on the K nodes of which the IDs are closest (XOR distance) to the
+ * key of the element. Node identifiers are SHA-512 hex strings, like the namespace concatenations of the entities;
+ * element identifiers are a mix of those and random alphanumeric {@link vrielynckpieterjan.masterproef.storagelayer.StorageElementIdentifier}s.
+ * <p>
+ * Arguments: [number of nodes] [number of elements] [K] [seed]
+ */
+public class DHTKeyDistributionBenchmark {
+
+    private final static int DEFAULT_NUMBER_OF_NODES = 200;
+    private final static int DEFAULT_NUMBER_OF_ELEMENTS = 20000;
+    private final static int DEFAULT_K = 5;
+
+    public static void main(String[] args) {
+        int numberOfNodes = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NUMBER_OF_NODES;
+        int numberOfElements = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_NUMBER_OF_ELEMENTS;
+        int k = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_K;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : 0L;
+
+        var random = new Random(seed);
+        var nodeIdentifiers = new ArrayList<String>(numberOfNodes);
+        for (int i = 0; i < numberOfNodes; i++) nodeIdentifiers.add(randomHexIdentifier(random));
+        var elementIdentifiers = new ArrayList<String>(numberOfElements);
+        for (int i = 0; i < numberOfElements; i++)
+            elementIdentifiers.add((i % 2 == 0) ? randomHexIdentifier(random) :
+                    RandomStringUtils.random(128, 0, 0, true, true, null, random));
+
+        System.out.printf("%d nodes, %d elements, K = %d; ideal load per node: %.1f elements%n",
+                numberOfNodes, numberOfElements, k, (double) numberOfElements * k / numberOfNodes);
+        for (var keyDerivation : new DHTKeyDerivation[]{DHTKeyDerivation.LEGACY, DHTKeyDerivation.DIGEST}) {
+            long[] load = simulateLoad(keyDerivation, nodeIdentifiers, elementIdentifiers, k);
+            printLoad(keyDerivation, load);
+        }
+    }
+
+    /**
+     * Method to compute how many elements each node of the simulated cluster stores.
+     *
+     * @param keyDerivation      The {@link DHTKeyDerivation} used for the node IDs and the keys of the elements.
+     * @param nodeIdentifiers    The identifiers of the nodes.
+     * @param elementIdentifiers The identifiers of the elements.
+     * @param k                  The amount of nodes each element is stored on.
+     * @return The amount of elements stored on each node.
+     */
+    @NotNull
+    static long[] simulateLoad(@NotNull DHTKeyDerivation keyDerivation, @NotNull List<String> nodeIdentifiers,
+                               @NotNull List<String> elementIdentifiers, int k) {
+        var nodeIds = nodeIdentifiers.stream().map(id -> keyDerivation.deriveKey(id).getInt()).toArray(BigInteger[]::new);
+        long[] load = new long[nodeIds.length];
+        for (var elementIdentifier : elementIdentifiers) {
+            BigInteger key = keyDerivation.deriveKey(elementIdentifier).getInt();
+            IntStream.range(0, nodeIds.length)
+                    .boxed()
+                    .sorted(Comparator.comparing(i -> nodeIds[i].xor(key)))
+                    .limit(k)
+                    .forEach(i -> load[i]++);
+        }
+        return load;
+    }
+
+    private static void printLoad(@NotNull DHTKeyDerivation keyDerivation, long[] load) {
+        var sorted = Arrays.copyOf(load, load.length);
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(load).average().orElse(0);
+        double variance = Arrays.stream(load).mapToDouble(l -> (l - mean) * (l - mean)).average().orElse(0);
+        long idle = Arrays.stream(load).filter(l -> l == 0).count();
+
+        System.out.printf("%-7s max %6d (%.1fx mean), p99 %6d, median %6d, stddev %8.1f, idle nodes %d%n",
+                keyDerivation, sorted[sorted.length - 1], sorted[sorted.length - 1] / mean,
+                sorted[(int) Math.min(sorted.length - 1, Math.ceil(0.99 * sorted.length) - 1)],
+                sorted[sorted.length / 2], Math.sqrt(variance), idle);
+    }
+
+    private static String randomHexIdentifier(@NotNull Random random) {
+        return Hashing.sha512().hashLong(random.nextLong()).toString();
+    }
+}
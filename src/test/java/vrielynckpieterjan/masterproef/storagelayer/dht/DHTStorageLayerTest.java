@@ -37,4 +37,40 @@ class DHTStorageLayerTest {
         assertEquals(1, retrieved.size());
         retrieved.forEach(storageElement -> assertEquals(revocationCommitment, storageElement.getStorageLayerIdentifier()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void bootstrapWithUnresponsiveStorageLayer() throws IOException {
+        var userThree = EntityIdentifier.generateEntityIdentifierPair("testThree");
+        var userFour = EntityIdentifier.generateEntityIdentifierPair("testFour");
+        var unresponsiveStorageLayer = new DHTStorageLayer(userThree.getRight(), 5880);
+        unresponsiveStorageLayer.shutdown();
+
+        var revocationSecret = new RevocationSecret();
+        var revocationCommitment = new RevocationCommitment(revocationSecret);
+        var revocationObject = new RevocationObject(revocationCommitment, revocationSecret);
+        dhtStorageLayerOne.put(revocationObject);
+
+        var dhtStorageLayerFour = new DHTStorageLayer(userFour.getRight(), 5881, unresponsiveStorageLayer, dhtStorageLayerOne);
+        var retrieved = dhtStorageLayerFour.retrieve(revocationCommitment);
+        assertEquals(1, retrieved.size());
+        dhtStorageLayerFour.shutdown();
+    }
+
+    @Test
+    void retrieveDualRead() throws IOException {
+        var userFive = EntityIdentifier.generateEntityIdentifierPair("testFive");
+        var userSix = EntityIdentifier.generateEntityIdentifierPair("testSix");
+        var legacyStorageLayer = new DHTStorageLayer(userFive.getRight(), 5882, DHTKeyDerivation.LEGACY);
+        var dualReadStorageLayer = new DHTStorageLayer(userSix.getRight(), 5883, DHTKeyDerivation.DUAL_READ, legacyStorageLayer);
+
+        var revocationSecret = new RevocationSecret();
+        var revocationCommitment = new RevocationCommitment(revocationSecret);
+        var revocationObject = new RevocationObject(revocationCommitment, revocationSecret);
+        legacyStorageLayer.put(revocationObject);
+
+        var retrieved = dualReadStorageLayer.retrieve(revocationCommitment);
+        assertEquals(1, retrieved.size());
+        legacyStorageLayer.shutdown();
+        dualReadStorageLayer.shutdown();
+    }
+}